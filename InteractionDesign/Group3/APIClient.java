@@ -3,14 +3,29 @@ package InteractionDesign.Group3;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URL;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.stream.JsonReader;
 
@@ -18,13 +33,134 @@ import com.google.gson.stream.JsonReader;
  * Provides an interface for fetching weather data and location search suggestions.
  * Weather data from the openweathermap API. (https://openweathermap.org/)
  * Search suggestions from a local file
+ * Every request goes through a RequestScheduler, which keeps us within the
+ * API's rate limit and merges duplicate requests, and a CircuitBreaker, which
+ * refuses requests straight away while the API is failing or slow.
+ * With more than one provider, a request which the first provider hasn't
+ * started answering within its usual latency (by default, its 95th
+ * percentile) is hedged: sent to the next provider as well. The first good
+ * answer is used and the other request is cancelled.
  */
 public class APIClient {
 
-	// The part of the URL corresponding to the API key
-	private final String APPID = "&APPID=dcf195ce911b00f98dcd3f9f077cb234";
-	// The start of every URL call to the API
-	private final String baseURL = "http://api.openweathermap.org/data/2.5/";
+	// The openweathermap API key
+	private static final String APPID = "dcf195ce911b00f98dcd3f9f077cb234";
+	// The start of every URL call to the openweathermap API
+	private static final String OWM_URL = "http://api.openweathermap.org/data/2.5/";
+	
+	// Where requests go, in order of preference
+	private final List<WeatherProvider> mProviders;
+	
+	// Hedge delay until a provider has enough latency samples, in milliseconds
+	private static final long DEFAULT_HEDGE_DELAY = 1000;
+	private static final int MIN_SAMPLES = 20;
+	private volatile double mHedgePercentile = 0.95;
+	private final AtomicLong mHedged = new AtomicLong();
+	private final ExecutorService mHedgers;
+	
+	// Rate limits and prioritises requests
+	private final RequestScheduler mScheduler;
+	// Stops us waiting on an API which is down
+	private final CircuitBreaker mBreaker;
+	
+	/**
+	 * Constructs a client limited to 60 requests per minute, the
+	 * openweathermap free plan.
+	 */
+	public APIClient() {
+		this(new RequestScheduler(60, 60, 8));
+	}
+	
+	/**
+	 * Constructs a client which schedules requests with the given scheduler.
+	 * Clients sharing a scheduler share its rate limit.
+	 * Requests go to openweathermap, unless the weatherapp.api.url property
+	 * gives another openweathermap-compatible API, eg. an UpstreamSimulator.
+	 * The weatherapp.api.key property overrides the API key.
+	 *
+	 * @param	scheduler	the request scheduler
+	 */
+	public APIClient(RequestScheduler scheduler) {
+		this(Collections.singletonList(new WeatherProvider("primary", System.getProperty("weatherapp.api.url", OWM_URL),
+				System.getProperty("weatherapp.api.key", APPID))), scheduler, new CircuitBreaker(20, 5, 0.5, 3000, 30000));
+	}
+	
+	/**
+	 * Constructs a client for an openweathermap-compatible API at another
+	 * address, eg. a local stub for testing.
+	 *
+	 * @param	url			the start of every URL, eg. "http://localhost:8080/data/2.5/"
+	 * @param	scheduler	the request scheduler
+	 * @param	breaker		the circuit breaker
+	 */
+	public APIClient(String url, RequestScheduler scheduler, CircuitBreaker breaker) {
+		this(Collections.singletonList(new WeatherProvider("primary", url, APPID)), scheduler, breaker);
+	}
+	
+	/**
+	 * Constructs a client which hedges slow requests across several
+	 * openweathermap-compatible providers.
+	 *
+	 * @param	providers	where requests go, in order of preference
+	 * @param	scheduler	the request scheduler
+	 * @param	breaker		the circuit breaker
+	 */
+	public APIClient(List<WeatherProvider> providers, RequestScheduler scheduler, CircuitBreaker breaker) {
+		mProviders = Collections.unmodifiableList(new ArrayList<>(providers));
+		mScheduler = scheduler;
+		mBreaker = breaker;
+		mHedgers = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "api-hedge");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+	
+	/**
+	 * Gets the providers requests go to, for their latency statistics.
+	 *
+	 * @return	providers, in order of preference
+	 */
+	public List<WeatherProvider> getProviders() {
+		return mProviders;
+	}
+	
+	/**
+	 * Sets how slow a provider must be, relative to its recent requests,
+	 * before a request is hedged to the next provider.
+	 *
+	 * @param	p	the latency percentile, between 0 and 1
+	 */
+	public void setHedgePercentile(double p) {
+		mHedgePercentile = p;
+	}
+	
+	/**
+	 * Gets the number of requests which were hedged to another provider.
+	 *
+	 * @return	number of hedged requests
+	 */
+	public long getHedged() {
+		return mHedged.get();
+	}
+	
+	/**
+	 * Gets the circuit breaker requests go through, for its state.
+	 *
+	 * @return	the circuit breaker
+	 */
+	public CircuitBreaker getBreaker() {
+		return mBreaker;
+	}
+	
+	/**
+	 * Gets the scheduler requests go through, for its metrics.
+	 *
+	 * @return	the request scheduler
+	 */
+	public RequestScheduler getScheduler() {
+		return mScheduler;
+	}
 
 	/**
 	 * Gets the current weather data at a particular city, from the city name.
@@ -34,8 +170,21 @@ public class APIClient {
 	 * @throws	IOException	if the API request fails
 	 */
 	public WeatherData currentWeatherAtCity (String location) throws IOException {
-		String subURL = "weather?q=" + location;
-		JsonObject response = query(subURL);
+		return currentWeatherAtCity(location, Priority.INTERACTIVE);
+	}
+	
+	/**
+	 * Gets the current weather data at a particular city, from the city name,
+	 * queued at the given priority.
+	 *
+	 * @param	location	the name of a city, and its ISO 3166 country code, separated by a comma eg. "London, GB"
+	 * @param	priority	how urgently the data are needed
+	 * @return	details of the current weather in that location
+	 * @throws	IOException	if the API request fails
+	 */
+	public WeatherData currentWeatherAtCity (String location, Priority priority) throws IOException {
+		String subURL = "weather?q=" + encode(location);
+		JsonObject response = query(subURL, priority);
 		return new WeatherData(response);
 	}
 
@@ -48,8 +197,21 @@ public class APIClient {
 	 * @throws	IOException	if the API request fails
 	 */
 	public WeatherData currentWeatherAtCity (int cityID) throws IOException {
+		return currentWeatherAtCity(cityID, Priority.INTERACTIVE);
+	}
+	
+	/**
+	 * Gets the current weather data at a particular city, from the city ID,
+	 * queued at the given priority.
+	 *
+	 * @param	cityID		the city ID
+	 * @param	priority	how urgently the data are needed
+	 * @return	details of the current weather in that location
+	 * @throws	IOException	if the API request fails
+	 */
+	public WeatherData currentWeatherAtCity (int cityID, Priority priority) throws IOException {
 		String subURL = "weather?id=" + cityID;
-		JsonObject response = query(subURL);
+		JsonObject response = query(subURL, priority);
 		return new WeatherData(response);
 	}
 	
@@ -62,14 +224,9 @@ public class APIClient {
 	 * @throws	IOException	if the API request fails
 	 */
 	public List<WeatherForecast> forecastWeatherAtCity (String location) throws IOException {
-		String subURL = "forecast?q=" + location;
-		JsonObject response = query(subURL);
-		List<WeatherForecast> forecasts = new ArrayList<>();
-		JsonArray JSONlist = response.getAsJsonArray("list");
-		for (int i = 0; i < JSONlist.size(); ++i) {
-			forecasts.add(new WeatherForecast(JSONlist.get(i).getAsJsonObject()));
-		}
-		return forecasts;
+		String subURL = "forecast?q=" + encode(location);
+		JsonObject response = query(subURL, Priority.INTERACTIVE);
+		return parseForecasts(response);
 	}
 	
 	/**
@@ -82,27 +239,350 @@ public class APIClient {
 	 */
 	public List<WeatherForecast> forecastWeatherAtCity (int cityID) throws IOException {
 		String subURL = "forecast?id=" + cityID;
-		JsonObject response = query(subURL);
+		JsonObject response = query(subURL, Priority.INTERACTIVE);
+		return parseForecasts(response);
+	}
+	
+	/**
+	 * Streams the 5 day weather forecast for a particular city, from the city name.
+	 * Each entry is passed to the handler as soon as it has been decoded, so
+	 * the caller can work on the forecast while the rest of it downloads.
+	 *
+	 * @param	location	the name of a city, and its ISO 3166 country code, separated by a comma eg. "London, GB"
+	 * @param	handler		receives the city's coordinates and each forecast entry
+	 * @return	time spent waiting on the network, in nanoseconds
+	 * @throws	IOException	if the API request fails
+	 */
+	public long forecastWeatherAtCity (String location, ForecastHandler handler) throws IOException {
+		return forecastWeatherAtCity(location, handler, Priority.INTERACTIVE);
+	}
+	
+	/**
+	 * Streams the 5 day weather forecast for a particular city, from the city
+	 * name, queued at the given priority.
+	 * The handler is called on a worker thread, but always before this returns.
+	 *
+	 * @param	location	the name of a city, and its ISO 3166 country code, separated by a comma eg. "London, GB"
+	 * @param	handler		receives the city's coordinates and each forecast entry
+	 * @param	priority	how urgently the data are needed
+	 * @return	time spent waiting on the network, in nanoseconds
+	 * @throws	IOException	if the API request fails
+	 */
+	public long forecastWeatherAtCity (String location, ForecastHandler handler, Priority priority) throws IOException {
+		String subURL = "forecast?q=" + encode(location);
+		return stream(subURL, handler, priority);
+	}
+	
+	/**
+	 * Streams the 5 day weather forecast for a particular city, from the city ID.
+	 * Each entry is passed to the handler as soon as it has been decoded.
+	 *
+	 * @param	cityID	the city ID
+	 * @param	handler	receives the city's coordinates and each forecast entry
+	 * @return	time spent waiting on the network, in nanoseconds
+	 * @throws	IOException	if the API request fails
+	 */
+	public long forecastWeatherAtCity (int cityID, ForecastHandler handler) throws IOException {
+		return forecastWeatherAtCity(cityID, handler, Priority.INTERACTIVE);
+	}
+	
+	/**
+	 * Streams the 5 day weather forecast for a particular city, from the city
+	 * ID, queued at the given priority.
+	 *
+	 * @param	cityID		the city ID
+	 * @param	handler		receives the city's coordinates and each forecast entry
+	 * @param	priority	how urgently the data are needed
+	 * @return	time spent waiting on the network, in nanoseconds
+	 * @throws	IOException	if the API request fails
+	 */
+	public long forecastWeatherAtCity (int cityID, ForecastHandler handler, Priority priority) throws IOException {
+		String subURL = "forecast?id=" + cityID;
+		return stream(subURL, handler, priority);
+	}
+	
+	// Builds the list of forecasts from a forecast response
+	// The city's coordinates are attached to every entry
+	private List<WeatherForecast> parseForecasts(JsonObject response) {
+		JsonObject coord = null;
+		if (response.has("city"))
+			coord = response.getAsJsonObject("city").getAsJsonObject("coord");
 		List<WeatherForecast> forecasts = new ArrayList<>();
 		JsonArray JSONlist = response.getAsJsonArray("list");
 		for (int i = 0; i < JSONlist.size(); ++i) {
-			forecasts.add(new WeatherForecast(JSONlist.get(i).getAsJsonObject()));
+			forecasts.add(new WeatherForecast(JSONlist.get(i).getAsJsonObject(), coord));
 		}
 		return forecasts;
 	}
 	
 	// Queries the API for weather data corresponding to the URL argument
 	// Returns a JsonObject that holds the weather data
-	private JsonObject query(String subURL) throws IOException {
+	// Identical queries waiting at the same time share one request
+	private JsonObject query(String subURL, Priority priority) throws IOException {
+		long permit = mBreaker.acquire();
+		if (permit < 0)
+			throw new IOException("Weather service unavailable");
+		return await(mScheduler.submit(subURL, priority, () -> guarded(permit, () -> fetch(subURL))));
+	}
+	
+	// Streams a forecast response into the handler, once the scheduler allows
+	// Each stream has its own handler, so these are never merged
+	private long stream(String subURL, ForecastHandler handler, Priority priority) throws IOException {
+		long permit = mBreaker.acquire();
+		if (permit < 0)
+			throw new IOException("Weather service unavailable");
+		return await(mScheduler.submit(null, priority, () -> guarded(permit, () -> fetchStream(subURL, handler))));
+	}
+	
+	// Makes a call, reporting its outcome and latency to the circuit breaker
+	// Not found (eg. an unknown city) means the API is working
+	private <T> T guarded(long permit, Callable<T> call) throws Exception {
+		long t = System.nanoTime();
+		try {
+			T result = call.call();
+			mBreaker.record(permit, true, System.nanoTime() - t);
+			return result;
+		} catch (Exception e) {
+			mBreaker.record(permit, e instanceof FileNotFoundException, System.nanoTime() - t);
+			throw e;
+		}
+	}
+	
+	// Opens a request on the first provider, hedging it to the next one
+	// whenever the latest hasn't started answering within its hedge delay
+	// If a provider fails, the next one is tried straight away
+	private InputStream open(String subURL) throws IOException {
+		if (mProviders.size() == 1)
+			return mProviders.get(0).open(subURL, null);
+		CompletionService<Attempt> done = new ExecutorCompletionService<>(mHedgers);
+		List<Attempt> attempts = new ArrayList<>();
+		Attempt winner = null;
+		IOException failure = null;
+		int running = 0;
+		long deadline = 0;
+		try {
+			while (true) {
+				if (running == 0) {
+					if (attempts.size() == mProviders.size())
+						throw failure;
+					deadline = start(subURL, attempts, done);
+					running++;
+				}
+				Future<Attempt> f;
+				if (attempts.size() < mProviders.size()) {
+					f = done.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (f == null) {
+						mHedged.incrementAndGet();
+						deadline = start(subURL, attempts, done);
+						running++;
+						continue;
+					}
+				} else {
+					f = done.take();
+				}
+				running--;
+				try {
+					winner = f.get();
+					winner.mProvider.won();
+					return winner.mStream;
+				} catch (ExecutionException e) {
+					// Not found is an answer, which the others would give too
+					if (e.getCause() instanceof FileNotFoundException)
+						throw (FileNotFoundException) e.getCause();
+					failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the API");
+		} finally {
+			for (Attempt a : attempts) {
+				if (a != winner)
+					a.cancel();
+			}
+		}
+	}
+	
+	// Starts a request on the next provider
+	// Returns when to hedge it, as System.nanoTime
+	private long start(String subURL, List<Attempt> attempts, CompletionService<Attempt> done) {
+		WeatherProvider p = mProviders.get(attempts.size());
+		Attempt a = new Attempt(p, subURL);
+		attempts.add(a);
+		done.submit(a);
+		long delay = DEFAULT_HEDGE_DELAY;
+		if (p.getSamples() >= MIN_SAMPLES)
+			delay = Math.max(1, p.getPercentile(mHedgePercentile));
+		return a.mStart + delay * 1000000;
+	}
+	
+	// One provider's try at a hedged request
+	private static class Attempt implements Callable<Attempt> {
+		final WeatherProvider mProvider;
+		final String mSubURL;
+		final long mStart = System.nanoTime();
+		HttpURLConnection mConn;
+		InputStream mStream;
+		boolean mCancelled = false;
+		
+		Attempt(WeatherProvider provider, String subURL) {
+			mProvider = provider;
+			mSubURL = subURL;
+		}
+		
+		@Override
+		public Attempt call() throws IOException {
+			InputStream in = mProvider.open(mSubURL, conn -> {
+				synchronized (this) {
+					mConn = conn;
+				}
+			});
+			synchronized (this) {
+				if (mCancelled) {
+					in.close();
+					throw new IOException("Cancelled");
+				}
+				mStream = in;
+			}
+			return this;
+		}
+		
+		// Stops the request, or closes the response if it has already arrived
+		synchronized void cancel() {
+			if (mCancelled)
+				return;
+			mCancelled = true;
+			if (mStream != null) {
+				try {
+					mStream.close();
+				} catch (IOException e) {
+					// Nothing more to do
+				}
+			} else {
+				mProvider.cancelled(System.nanoTime() - mStart);
+				if (mConn != null)
+					mConn.disconnect();
+			}
+		}
+	}
+	
+	// Escapes a location for use in a query string
+	private static String encode(String location) {
+		try {
+			return URLEncoder.encode(location, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	// Waits for a scheduled request, unwrapping its exception
+	private static <T> T await(Future<T> f) throws IOException {
+		try {
+			return f.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the API");
+		}
+	}
+	
+	// Makes the request straight away
+	private JsonObject fetch(String subURL) throws IOException {
 		BufferedReader reader = null;
 		try {
 			JsonParser parser = new JsonParser();
-			URL url = new URL(baseURL + subURL + APPID);
-			reader = new BufferedReader(new InputStreamReader(url.openStream()));
+			reader = new BufferedReader(new InputStreamReader(open(subURL)));
 			return parser.parse(reader).getAsJsonObject();
 		} finally {
 			if (reader != null)
 				reader.close();
 		}
 	}
+	
+	// Decodes a forecast response incrementally, passing pieces to the handler
+	// Only one entry of the list is held as a tree at a time
+	// Returns the time spent blocked on the network, in nanoseconds
+	private long fetchStream(String subURL, ForecastHandler handler) throws IOException {
+		JsonReader reader = null;
+		try {
+			JsonParser parser = new JsonParser();
+			long t1 = System.nanoTime();
+			TimedInputStream in = new TimedInputStream(open(subURL));
+			long connect = System.nanoTime() - t1;
+			reader = new JsonReader(new BufferedReader(new InputStreamReader(in)));
+			
+			boolean hasList = false;
+			String message = "";
+			
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (name.equals("list")) {
+					hasList = true;
+					reader.beginArray();
+					while (reader.hasNext()) {
+						handler.entry(new WeatherForecast(parser.parse(reader).getAsJsonObject()));
+					}
+					reader.endArray();
+				} else if (name.equals("city")) {
+					JsonObject city = parser.parse(reader).getAsJsonObject();
+					if (city.has("coord")) {
+						JsonObject coord = city.getAsJsonObject("coord");
+						handler.city(coord.get("lat").getAsDouble(), coord.get("lon").getAsDouble());
+					}
+				} else if (name.equals("message")) {
+					message = parser.parse(reader).getAsString();
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			
+			if (! hasList)
+				throw new IOException("No forecast in response " + message);
+			
+			return connect + in.getWaitTime();
+		} catch (JsonParseException | IllegalStateException e) {
+			throw new IOException("Invalid forecast response: " + e.getMessage());
+		} finally {
+			if (reader != null)
+				reader.close();
+		}
+	}
+	
+	// Counts the time spent blocked in reads, to separate network from decoding
+	private static class TimedInputStream extends FilterInputStream {
+		private long mWaitTime = 0;
+		
+		TimedInputStream(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			long t = System.nanoTime();
+			int b = super.read();
+			mWaitTime += System.nanoTime() - t;
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			long t = System.nanoTime();
+			int n = super.read(b, off, len);
+			mWaitTime += System.nanoTime() - t;
+			return n;
+		}
+		
+		long getWaitTime() {
+			return mWaitTime;
+		}
+	}
 }
@@ -0,0 +1,93 @@
+package InteractionDesign.Group3;
+
+import java.time.LocalDateTime;
+
+/**
+ * One forecast slot read back from the forecast archive: what was predicted
+ * for a particular time, and when the prediction was made.
+ */
+public class ArchivedForecast {
+	private final String mLocation;
+	private final LocalDateTime mIssued;
+	private final LocalDateTime mTarget;
+	private final int mTemp;				// In Celcius
+	private final Icon mIcon;
+	private final WeatherData.ConditionCode mCode;
+
+	/**
+	 * Instantiates ArchivedForecast with the parameters given
+	 *
+	 * @param	location	the location the forecast was for
+	 * @param	issued		when the forecast was fetched
+	 * @param	target		the time the forecast was for
+	 * @param	temp		the forecast temperature, in degrees Celcius
+	 * @param	icon		the forecast weather icon
+	 * @param	code		the condition code from the API
+	 */
+	public ArchivedForecast(String location, LocalDateTime issued, LocalDateTime target, int temp, Icon icon, WeatherData.ConditionCode code) {
+		mLocation = location;
+		mIssued = issued;
+		mTarget = target;
+		mTemp = temp;
+		mIcon = icon;
+		mCode = code;
+	}
+
+	/**
+	 * Gets the location the forecast was for.
+	 *
+	 * @return	location string
+	 */
+	public String getLocation() {
+		return mLocation;
+	}
+
+	/**
+	 * Gets the time the forecast was fetched, to the minute.
+	 *
+	 * @return	issue time
+	 */
+	public LocalDateTime getIssued() {
+		return mIssued;
+	}
+
+	/**
+	 * Gets the time the forecast was for, to the minute.
+	 *
+	 * @return	target time
+	 */
+	public LocalDateTime getTarget() {
+		return mTarget;
+	}
+
+	/**
+	 * Gets the forecast temperature, in degrees Celcius.
+	 *
+	 * @return	the temperature
+	 */
+	public int getTemp() {
+		return mTemp;
+	}
+
+	/**
+	 * Gets the forecast weather icon.
+	 *
+	 * @return	the icon
+	 */
+	public Icon getIcon() {
+		return mIcon;
+	}
+
+	/**
+	 * Gets the condition code the API gave.
+	 *
+	 * @return	condition code
+	 */
+	public WeatherData.ConditionCode getConditionCode() {
+		return mCode;
+	}
+
+	public String toString() {
+		return mLocation + "," + mIssued + "," + mTarget + "," + mTemp + "," + mIcon + "," + mCode;
+	}
+}
@@ -0,0 +1,103 @@
+package InteractionDesign.Group3;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class used for testing purposes only.
+ * Runs a morning push job's worth of commute queries through the batch API,
+ * against a local stub API, and reports throughput: once with no snapshots
+ * cached, then again once they are. For comparison, also evaluates the same
+ * queries one at a time on one thread.
+ */
+public class BatchBenchmark {
+	private static final int LOCATIONS = 200;
+	private static final int QUERIES = 50000;
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws APIException, CacheException, IOException {
+		StubServer stub = new StubServer(0);
+		stub.start();
+
+		Path dir = Files.createTempDirectory("weatherapp");
+		Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+		APIClient client = new APIClient(stub.getURL(), new RequestScheduler(1000, 60000, 16),
+				new CircuitBreaker(20, 5, 0.5, 3000, 30000));
+
+		WeatherCache cache = new WeatherCache(client, dir.toString());
+
+		List<CommuteQuery> queries = makeQueries();
+
+		for (int n = 0; n < RUNS; n++) {
+			AtomicLong ok = new AtomicLong();
+			AtomicLong failed = new AtomicLong();
+
+			long t1 = System.nanoTime();
+
+			cache.getItems(queries, r -> {
+				if (r.getError() == null)
+					ok.incrementAndGet();
+				else
+					failed.incrementAndGet();
+			});
+
+			long t2 = System.nanoTime();
+
+			System.out.println((n == 0 ? "Cold" : "Warm") + ": " + ok.get() + " ok, " + failed.get() + " failed in "
+					+ (t2 - t1) / 1000000 + "ms (" + (long) (QUERIES / ((t2 - t1) / 1e9)) + " queries/s)");
+		}
+
+		// One at a time, as calling getItems per query would (without the network)
+
+		long t1 = System.nanoTime();
+
+		for (CommuteQuery q : queries) {
+			Snapshot s = cache.getSnapshot(q.getLocation()).join();
+			s.recommend(s.getIndex().range(q.getStart(), q.getFin()));
+		}
+
+		long t2 = System.nanoTime();
+
+		System.out.println("Serial: " + (t2 - t1) / 1000000 + "ms (" + (long) (QUERIES / ((t2 - t1) / 1e9)) + " queries/s)");
+		System.out.println("Stub received " + stub.getRequests() + " requests");
+
+		stub.stop();
+	}
+
+	// Users spread over the first cities in the list, leaving between 6am and
+	// 10am tomorrow on the half hour, for 30 to 60 minutes
+	private static List<CommuteQuery> makeQueries() throws IOException {
+		List<String> cities = new ArrayList<>();
+
+		try (BufferedReader br = new BufferedReader(new FileReader("data/cityList.txt"))) {
+			String line;
+
+			while (cities.size() < LOCATIONS && (line = br.readLine()) != null)
+				cities.add(line);
+		}
+
+		Random random = new Random(1);
+		LocalDateTime morning = LocalDate.now().plusDays(1).atTime(6, 0);
+		List<CommuteQuery> queries = new ArrayList<>();
+
+		for (int i = 0; i < QUERIES; i++) {
+			LocalDateTime start = morning.plusMinutes(30 * random.nextInt(9));
+			LocalDateTime fin = start.plusMinutes(30 + 15 * random.nextInt(3));
+
+			queries.add(new CommuteQuery("user" + i, cities.get(random.nextInt(cities.size())), start, fin));
+		}
+
+		return queries;
+	}
+}
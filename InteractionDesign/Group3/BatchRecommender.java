@@ -0,0 +1,127 @@
+package InteractionDesign.Group3;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Recommends items for many commutes at once, eg. for a morning push job.
+ * Queries are grouped by location, so each location's snapshot is looked up
+ * (or fetched) once. Each group is evaluated as soon as its snapshot is
+ * ready, split across a fork/join pool if it is large, and results are passed
+ * out as they are worked out rather than collected first.
+ */
+public class BatchRecommender {
+	// Groups no bigger than this are evaluated on one thread
+	private static final int THRESHOLD = 512;
+
+	private final Function<String, CompletableFuture<Snapshot>> mSnapshots;
+	private final ForkJoinPool mPool;
+
+	/**
+	 * Constructs a recommender.
+	 *
+	 * @param	snapshots	gets the snapshot for a location, eg. WeatherCache::getSnapshot
+	 * @param	pool		the pool to evaluate queries on
+	 */
+	public BatchRecommender(Function<String, CompletableFuture<Snapshot>> snapshots, ForkJoinPool pool) {
+		mSnapshots = snapshots;
+		mPool = pool;
+	}
+
+	/**
+	 * Recommends items for every query, and waits until all are done.
+	 * Results arrive in no particular order, on the pool's threads, so the
+	 * consumer must be thread safe. A location whose weather can't be fetched
+	 * gives a failed result for each of its queries. If evaluating a query or
+	 * the consumer throws, the exception is thrown (wrapped in a
+	 * CompletionException) once every location is done.
+	 *
+	 * @param	queries	the commutes
+	 * @param	results	receives a result for each query
+	 */
+	public void run(List<CommuteQuery> queries, Consumer<CommuteResult> results) {
+		Map<String, List<CommuteQuery>> groups = new LinkedHashMap<>();
+
+		for (CommuteQuery q : queries)
+			groups.computeIfAbsent(q.getLocation(), l -> new ArrayList<>()).add(q);
+
+		List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+		for (Map.Entry<String, List<CommuteQuery>> group : groups.entrySet()) {
+			List<CommuteQuery> qs = group.getValue();
+
+			// Only a failed fetch gives failed results, so no query is answered twice
+			pending.add(mSnapshots.apply(group.getKey())
+					.handle((s, e) -> {
+						if (e != null) {
+							String error = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+
+							for (CommuteQuery q : qs)
+								results.accept(new CommuteResult(q, error));
+						}
+
+						return s;
+					})
+					.thenAcceptAsync(s -> {
+						if (s != null)
+							new Evaluate(s, qs, 0, qs.size(), results).invoke();
+					}, mPool));
+		}
+
+		CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+	}
+
+	// Evaluates part of one location's queries, splitting it if large
+	private static class Evaluate extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Snapshot mSnapshot;
+		private final List<CommuteQuery> mQueries;
+		private final int mFrom;
+		private final int mTo;
+		private final Consumer<CommuteResult> mResults;
+
+		Evaluate(Snapshot snapshot, List<CommuteQuery> queries, int from, int to, Consumer<CommuteResult> results) {
+			mSnapshot = snapshot;
+			mQueries = queries;
+			mFrom = from;
+			mTo = to;
+			mResults = results;
+		}
+
+		@Override
+		protected void compute() {
+			if (mTo - mFrom > THRESHOLD) {
+				int mid = (mFrom + mTo) >>> 1;
+
+				invokeAll(new Evaluate(mSnapshot, mQueries, mFrom, mid, mResults),
+						new Evaluate(mSnapshot, mQueries, mid, mTo, mResults));
+
+				return;
+			}
+
+			// Many users share a commute window, so only work each one out once
+			Map<List<LocalDateTime>, List<Item>> windows = new HashMap<>();
+
+			for (int i = mFrom; i < mTo; i++) {
+				CommuteQuery q = mQueries.get(i);
+
+				List<Item> items = windows.computeIfAbsent(Arrays.asList(q.getStart(), q.getFin()),
+						w -> Collections.unmodifiableList(mSnapshot.recommend(mSnapshot.getIndex().range(w.get(0), w.get(1)))));
+
+				mResults.accept(new CommuteResult(q, items));
+			}
+		}
+	}
+}
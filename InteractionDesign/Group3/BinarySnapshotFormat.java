@@ -0,0 +1,228 @@
+package InteractionDesign.Group3;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes snapshots in a compact binary format, for sending to
+ * clients. A 5 day forecast takes about a fifth of the space of the cache
+ * file's text format (see SnapshotFormat), and less than the text gzipped.
+ *
+ * The layout, in big-endian order:
+ *	version (byte), location (modified UTF-8)
+ *	last updated, sunrise, sunset (times), latitude, longitude (doubles)
+ *	summary: time, temperature (short), icon (byte), label (byte)
+ *	warnings (byte, bit per warning by ordinal)
+ *	labels (byte count, then modified UTF-8 each)
+ *	first slot's minute (int), days (byte count), then for each day its
+ *	slot count (byte), and for each slot its minutes since the one before
+ *	(unsigned short), temperature (short), icon (byte) and label (byte)
+ * Times are seconds (as if UTC, long) then nanoseconds (int), with
+ * nanoseconds of -1 for null. Icons are ordinals; labels are indexes into
+ * the list of labels, which each appear once. Slot times are kept to the
+ * minute.
+ */
+public class BinarySnapshotFormat {
+	/**
+	 * The version written, which is the first byte of every encoding
+	 */
+	public static final int VERSION = 1;
+
+	private static final Icon[] ICONS = Icon.values();
+	private static final Warning[] WARNINGS = Warning.values();
+
+	/**
+	 * Encodes a snapshot.
+	 *
+	 * @param	s	the snapshot
+	 * @return	the encoding
+	 */
+	public static byte[] write(Snapshot s) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			out.writeUTF(s.getLocation());
+
+			writeTime(out, s.getLastUpdated());
+			writeTime(out, s.getSunrise());
+			writeTime(out, s.getSunset());
+			out.writeDouble(s.getLatitude());
+			out.writeDouble(s.getLongitude());
+
+			// Labels repeat for every slot of a day, so are sent once
+			List<String> labels = new ArrayList<>();
+
+			Record summary = s.getSummary();
+			writeTime(out, summary.getTimeStamp());
+			out.writeShort(summary.getTemp());
+			out.writeByte(summary.getIcon().ordinal());
+			out.writeByte(label(labels, summary.getLabel()));
+
+			int mask = 0;
+
+			for (Warning w : s.getWarnings())
+				mask |= 1 << w.ordinal();
+
+			out.writeByte(mask);
+
+			List<List<Record>> week = s.getThisWeek();
+
+			for (List<Record> day : week) {
+				for (Record r : day)
+					label(labels, r.getLabel());
+			}
+
+			out.writeByte(labels.size());
+
+			for (String label : labels)
+				out.writeUTF(label);
+
+			long previous = first(week);
+			out.writeInt((int) previous);
+			out.writeByte(week.size());
+
+			for (List<Record> day : week) {
+				out.writeByte(day.size());
+
+				for (Record r : day) {
+					long minute = r.getTimeStamp().toEpochSecond(ZoneOffset.UTC) / 60;
+
+					out.writeShort((int) (minute - previous));
+					out.writeShort(r.getTemp());
+					out.writeByte(r.getIcon().ordinal());
+					out.writeByte(labels.indexOf(r.getLabel()));
+
+					previous = minute;
+				}
+			}
+
+		} catch (IOException e) {
+			// Writing to memory can't fail
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodes a snapshot.
+	 *
+	 * @param	bytes	the encoding, as written by write
+	 * @param	zone	the time zone of the snapshot's times, ie. of the cache's clock
+	 * @return	the snapshot
+	 * @throws	CacheException	if the bytes aren't a valid snapshot of this version
+	 */
+	public static Snapshot read(byte[] bytes, ZoneId zone) throws CacheException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			if (in.readUnsignedByte() != VERSION)
+				throw new CacheException("Unknown snapshot version");
+
+			String location = in.readUTF();
+
+			LocalDateTime lastUpdated = readTime(in);
+			LocalDateTime sunrise = readTime(in);
+			LocalDateTime sunset = readTime(in);
+			double lat = in.readDouble();
+			double lon = in.readDouble();
+
+			LocalDateTime summaryTime = readTime(in);
+			int summaryTemp = in.readShort();
+			Icon summaryIcon = ICONS[in.readUnsignedByte()];
+			int summaryLabel = in.readUnsignedByte();
+
+			int mask = in.readUnsignedByte();
+			List<Warning> warnings = new ArrayList<>();
+
+			for (Warning w : WARNINGS) {
+				if ((mask & (1 << w.ordinal())) != 0)
+					warnings.add(w);
+			}
+
+			String[] labels = new String[in.readUnsignedByte()];
+
+			for (int i = 0; i < labels.length; i++)
+				labels[i] = in.readUTF();
+
+			Record summary = new Record(summaryIcon, summaryTemp, summaryTime);
+			summary.setLabel(labels[summaryLabel]);
+
+			long minute = in.readInt();
+			int days = in.readUnsignedByte();
+
+			List<List<Record>> week = new ArrayList<>();
+
+			for (int d = 0; d < days; d++) {
+				int slots = in.readUnsignedByte();
+				List<Record> day = new ArrayList<>(slots);
+
+				for (int i = 0; i < slots; i++) {
+					minute += in.readUnsignedShort();
+
+					int temp = in.readShort();
+					Icon icon = ICONS[in.readUnsignedByte()];
+
+					Record r = new Record(icon, temp, LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC));
+					r.setLabel(labels[in.readUnsignedByte()]);
+
+					day.add(r);
+				}
+
+				week.add(day);
+			}
+
+			return new Snapshot(location, lastUpdated, summary, week, warnings, sunrise, sunset, lat, lon, zone);
+
+		} catch (IOException | ArrayIndexOutOfBoundsException | DateTimeException e) {
+			throw new CacheException("Invalid snapshot");
+		}
+	}
+
+	// Index of a label in the list, adding it if it's new
+	private static int label(List<String> labels, String label) {
+		int i = labels.indexOf(label);
+
+		if (i >= 0)
+			return i;
+
+		labels.add(label);
+
+		return labels.size() - 1;
+	}
+
+	// Minute of the first slot, or 0 if there are none
+	private static long first(List<List<Record>> week) {
+		for (List<Record> day : week) {
+			if (! day.isEmpty())
+				return day.get(0).getTimeStamp().toEpochSecond(ZoneOffset.UTC) / 60;
+		}
+
+		return 0;
+	}
+
+	private static void writeTime(DataOutputStream out, LocalDateTime t) throws IOException {
+		if (t == null) {
+			out.writeLong(0);
+			out.writeInt(-1);
+		} else {
+			out.writeLong(t.toEpochSecond(ZoneOffset.UTC));
+			out.writeInt(t.getNano());
+		}
+	}
+
+	private static LocalDateTime readTime(DataInputStream in) throws IOException {
+		long seconds = in.readLong();
+		int nanos = in.readInt();
+
+		return nanos < 0 ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+	}
+}
@@ -0,0 +1,101 @@
+package InteractionDesign.Group3;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * A class used for testing purposes only
+ * Runs the cache against a local stub API which is healthy, then slow, then
+ * down, then healthy again, and reports how long getters took and how often
+ * they served stale data in each phase. Once the API is healthy again, the
+ * half-open breaker is first probed by a change of location, whose refresh
+ * fetches the current weather and the forecast at once.
+ */
+public class BreakerTester {
+	private static final int CALLS = 100;
+
+	public static void main(String[] args) throws APIException, CacheException, IOException, InterruptedException {
+		StubServer stub = new StubServer(0);
+		stub.start();
+
+		// A data directory of our own, so the real cache file isn't touched
+		Path dir = Files.createTempDirectory("weatherapp");
+		Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+		CircuitBreaker breaker = new CircuitBreaker(20, 5, 0.5, 500, 2000);
+		APIClient client = new APIClient(stub.getURL(), new RequestScheduler(1000, 60000, 8), breaker);
+
+		WeatherCache cache = new WeatherCache(client, dir.toString());
+
+		// Refresh on every call, so each one depends on the API
+		cache.setMaxAge(Duration.ZERO);
+		cache.setLatencyBudget(200);
+
+		phase("Healthy", cache, breaker);
+
+		stub.setLatency(1500);
+		phase("Slow (1500ms)", cache, breaker);
+
+		stub.setLatency(0);
+		stub.setErrorRate(1);
+		phase("Down (HTTP 500)", cache, breaker);
+
+		stub.setErrorRate(0);
+
+		// Let the breaker cool down and probe
+		Thread.sleep(2500);
+		probe(cache, breaker);
+		phase("Recovered", cache, breaker);
+
+		System.out.println("Stub received " + stub.getRequests() + " requests, " + stub.getErrors() + " errors");
+
+		stub.stop();
+	}
+
+	// Both calls of a refresh with the summary should get through as probes
+	private static void probe(WeatherCache cache, CircuitBreaker breaker) {
+		System.out.println("Probe with a summary refresh");
+		System.out.println("  breaker before " + breaker.getState());
+
+		try {
+			cache.setLocation("London, GB");
+			System.out.println("  refreshed, breaker " + breaker.getState());
+
+		} catch (APIException | CacheException e) {
+			System.out.println("  FAILED: " + e.getMessage() + ", breaker " + breaker.getState());
+		}
+	}
+
+	private static void phase(String name, WeatherCache cache, CircuitBreaker breaker) throws APIException, CacheException, InterruptedException {
+		long[] times = new long[CALLS];
+		int stale = 0;
+		long trips = breaker.getTrips();
+		long rejected = breaker.getRejected();
+
+		for (int i = 0; i < CALLS; i++) {
+			long t1 = System.nanoTime();
+
+			cache.getThisWeek();
+
+			times[i] = System.nanoTime() - t1;
+
+			if (cache.isStale())
+				stale++;
+
+			Thread.sleep(20);
+		}
+
+		Arrays.sort(times);
+
+		System.out.println(name);
+		System.out.println("  p50 " + times[CALLS / 2] / 1000000 + "ms, p99 " + times[CALLS * 99 / 100] / 1000000
+				+ "ms, max " + times[CALLS - 1] / 1000000 + "ms");
+		System.out.println("  stale " + stale + "/" + CALLS + ", data age " + cache.getDataAge().toMillis() + "ms");
+		System.out.println("  breaker " + breaker.getState() + ", trips " + (breaker.getTrips() - trips)
+				+ ", rejected " + (breaker.getRejected() - rejected));
+	}
+}
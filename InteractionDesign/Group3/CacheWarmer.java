@@ -0,0 +1,183 @@
+package InteractionDesign.Group3;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Fetches the weather for a watch-list of locations in the background, so
+ * the first request for each one is served from the cache.
+ * At most a fixed number of locations are fetched at once, and fetches go
+ * through the API client's request scheduler at background priority, so
+ * warming never starves interactive requests or exceeds the quota.
+ */
+public class CacheWarmer {
+	private final List<String> mLocations;
+	private final Function<String, CompletableFuture<Snapshot>> mSnapshots;
+	private final Semaphore mSlots;
+
+	private final AtomicInteger mWarmed = new AtomicInteger();
+	private final AtomicInteger mFailed = new AtomicInteger();
+	private final CountDownLatch mDone;
+
+	private final long mStart;
+	private volatile long mFinish = -1;
+
+	/**
+	 * Reads a watch-list file: one location per line, in the form
+	 * "[city name], [ISO 3166 country code]". Blank lines and lines starting
+	 * with '#' are skipped.
+	 *
+	 * @param	file	path to the watch-list
+	 * @return	the locations, in file order
+	 * @throws	IOException	if the file can't be read
+	 */
+	public static List<String> readList(String file) throws IOException {
+		List<String> locations = new ArrayList<>();
+
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line;
+
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+
+				if (! line.isEmpty() && ! line.startsWith("#"))
+					locations.add(line);
+			}
+		}
+
+		return locations;
+	}
+
+	/**
+	 * Starts warming the cache, on a background thread.
+	 *
+	 * @param	locations	the locations to fetch
+	 * @param	snapshots	gets the snapshot for a location, eg. WeatherCache::getSnapshot
+	 * @param	parallelism	the most locations fetched at once
+	 */
+	public CacheWarmer(List<String> locations, Function<String, CompletableFuture<Snapshot>> snapshots, int parallelism) {
+		mLocations = Collections.unmodifiableList(new ArrayList<>(locations));
+		mSnapshots = snapshots;
+		mSlots = new Semaphore(parallelism);
+		mDone = new CountDownLatch(mLocations.size());
+		mStart = System.nanoTime();
+
+		Thread t = new Thread(this::warm, "cache-warmer");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Gets the number of locations on the watch-list.
+	 *
+	 * @return	number of locations
+	 */
+	public int getTotal() {
+		return mLocations.size();
+	}
+
+	/**
+	 * Gets the number of locations fetched so far.
+	 *
+	 * @return	number of locations in the cache
+	 */
+	public int getWarmed() {
+		return mWarmed.get();
+	}
+
+	/**
+	 * Gets the number of locations which couldn't be fetched.
+	 *
+	 * @return	number of failures
+	 */
+	public int getFailed() {
+		return mFailed.get();
+	}
+
+	/**
+	 * Gets how far warming has got, counting failures as done.
+	 *
+	 * @return	fraction between 0 and 1
+	 */
+	public double getProgress() {
+		return mLocations.isEmpty() ? 1 : (double) (mWarmed.get() + mFailed.get()) / mLocations.size();
+	}
+
+	/**
+	 * Tests whether every location has been tried.
+	 *
+	 * @return	true once warming has finished
+	 */
+	public boolean isReady() {
+		return mDone.getCount() == 0;
+	}
+
+	/**
+	 * Waits for warming to finish.
+	 *
+	 * @param	millis	the longest to wait, in milliseconds
+	 * @return	true if warming finished in time
+	 * @throws	InterruptedException	if interrupted while waiting
+	 */
+	public boolean awaitReady(long millis) throws InterruptedException {
+		return mDone.await(millis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Gets how long warming took.
+	 *
+	 * @return	time in milliseconds, or -1 if not finished
+	 */
+	public long getDuration() {
+		return mFinish < 0 ? -1 : (mFinish - mStart) / 1000000;
+	}
+
+	// Runs on the warmer's thread, starting a fetch whenever a slot is free
+	private void warm() {
+		// Report roughly every 10%
+		int step = Math.max(1, mLocations.size() / 10);
+
+		for (String location : mLocations) {
+			try {
+				mSlots.acquire();
+
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			mSnapshots.apply(location).whenComplete((s, e) -> {
+				(e == null ? mWarmed : mFailed).incrementAndGet();
+
+				if (e != null)
+					System.out.println("Failed to warm " + location + ": " + e.getMessage());
+
+				mSlots.release();
+				mDone.countDown();
+
+				long left = mDone.getCount();
+
+				if (left == 0) {
+					mFinish = System.nanoTime();
+					System.out.println("Cache warmed: " + mWarmed.get() + " locations, " + mFailed.get()
+							+ " failed, in " + getDuration() + "ms");
+
+				} else if ((mLocations.size() - left) % step == 0) {
+					System.out.println("Warming cache: " + (mLocations.size() - left) + "/" + mLocations.size());
+				}
+			});
+		}
+
+		if (mLocations.isEmpty())
+			mFinish = System.nanoTime();
+	}
+}
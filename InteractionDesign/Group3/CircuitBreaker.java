@@ -0,0 +1,206 @@
+package InteractionDesign.Group3;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A circuit breaker for calls to the API.
+ * While closed, calls go ahead and their outcomes are recorded. Calls which
+ * fail, or succeed but take longer than the latency threshold, count as
+ * failures. Once the failure rate over the recent window passes the
+ * threshold, the breaker opens and calls are refused straight away. After a
+ * cool-down, a few probe calls are let through (half-open): if one succeeds
+ * the breaker closes, and if one fails it opens again.
+ *
+ * Each call's permit is tagged with the generation of the state it was
+ * given in, and outcomes from an earlier state are ignored, so eg. a slow
+ * call made while closed can't close a breaker which has since opened.
+ */
+public class CircuitBreaker {
+	/**
+	 * The state of the breaker
+	 */
+	public static enum State {
+		CLOSED, OPEN, HALF_OPEN;
+	}
+
+	// A refresh with the summary makes two calls at once, which should both
+	// get through as probes
+	private static final int PROBES = 2;
+
+	private final boolean[] mWindow;		// Recent outcomes, true for failure
+	private final int mMinCalls;
+	private final double mFailureRate;
+	private final long mSlowCall;			// In nanoseconds
+	private final long mCoolDown;			// In nanoseconds
+	private final LongSupplier mTicker;		// Times the cool-down, in nanoseconds
+
+	private State mState = State.CLOSED;
+	private int mNext = 0;
+	private int mCalls = 0;
+	private int mFailures = 0;
+	private long mOpened;					// When it opened, or began probing
+	private int mProbes = 0;				// Probes let through and not yet recorded
+	private long mGeneration = 0;			// Changed with every change of state
+
+	private long mRejected = 0;
+	private long mTrips = 0;
+
+	/**
+	 * Constructs a closed breaker.
+	 *
+	 * @param	window		the number of recent calls considered
+	 * @param	minCalls	the fewest calls in the window before the breaker can open
+	 * @param	failureRate	the fraction of failed calls at which the breaker opens
+	 * @param	slowCall	calls taking longer than this count as failures, in milliseconds
+	 * @param	coolDown	how long the breaker stays open before probing, in milliseconds
+	 */
+	public CircuitBreaker(int window, int minCalls, double failureRate, long slowCall, long coolDown) {
+		this(window, minCalls, failureRate, slowCall, coolDown, System::nanoTime);
+	}
+
+	/**
+	 * Constructs a closed breaker whose cool-down is timed by a clock, eg. a
+	 * simulated one. Calls are still timed in real time.
+	 *
+	 * @param	window		the number of recent calls considered
+	 * @param	minCalls	the fewest calls in the window before the breaker can open
+	 * @param	failureRate	the fraction of failed calls at which the breaker opens
+	 * @param	slowCall	calls taking longer than this count as failures, in milliseconds
+	 * @param	coolDown	how long the breaker stays open before probing, in milliseconds
+	 * @param	clock		the clock
+	 */
+	public CircuitBreaker(int window, int minCalls, double failureRate, long slowCall, long coolDown, Clock clock) {
+		this(window, minCalls, failureRate, slowCall, coolDown, () -> TimeUnit.MILLISECONDS.toNanos(clock.millis()));
+	}
+
+	private CircuitBreaker(int window, int minCalls, double failureRate, long slowCall, long coolDown,
+			LongSupplier ticker) {
+		mTicker = ticker;
+		mWindow = new boolean[window];
+		mMinCalls = minCalls;
+		mFailureRate = failureRate;
+		mSlowCall = slowCall * 1000000;
+		mCoolDown = coolDown * 1000000;
+	}
+
+	/**
+	 * Asks whether a call may go ahead. When half-open, only a few callers
+	 * are allowed through as probes, and each must report back with record.
+	 * Probes which never report back (eg. cancelled before the call was
+	 * made) are given up on after another cool-down.
+	 *
+	 * @return	a permit to give to record, or -1 if the call may not be made
+	 */
+	public synchronized long acquire() {
+		long now = mTicker.getAsLong();
+
+		if (mState != State.CLOSED && now - mOpened >= mCoolDown) {
+			mState = State.HALF_OPEN;
+			mOpened = now;
+			mProbes = 0;
+			mGeneration++;
+		}
+
+		if (mState == State.CLOSED)
+			return mGeneration;
+
+		if (mState == State.HALF_OPEN && mProbes < PROBES) {
+			mProbes++;
+			return mGeneration;
+		}
+
+		mRejected++;
+
+		return -1;
+	}
+
+	/**
+	 * Records the outcome of a call which acquire let through. Outcomes of
+	 * calls let through before the state last changed are ignored.
+	 *
+	 * @param	permit	the permit acquire gave
+	 * @param	ok		false if the call failed
+	 * @param	nanos	how long the call took, in nanoseconds
+	 */
+	public synchronized void record(long permit, boolean ok, long nanos) {
+		if (permit != mGeneration)
+			return;
+
+		boolean failed = ! ok || nanos > mSlowCall;
+
+		if (mState == State.HALF_OPEN) {
+			if (failed) {
+				trip();
+			} else {
+				reset();
+			}
+
+			return;
+		}
+
+		if (mCalls == mWindow.length) {
+			if (mWindow[mNext])
+				mFailures--;
+		} else {
+			mCalls++;
+		}
+
+		mWindow[mNext] = failed;
+		mNext = (mNext + 1) % mWindow.length;
+
+		if (failed)
+			mFailures++;
+
+		if (mCalls >= mMinCalls && mFailures >= mFailureRate * mCalls)
+			trip();
+	}
+
+	/**
+	 * Gets the state of the breaker.
+	 *
+	 * @return	the state
+	 */
+	public synchronized State getState() {
+		if (mState == State.OPEN && mTicker.getAsLong() - mOpened >= mCoolDown)
+			return State.HALF_OPEN;
+
+		return mState;
+	}
+
+	/**
+	 * Gets the number of calls refused while open.
+	 *
+	 * @return	number of calls refused
+	 */
+	public synchronized long getRejected() {
+		return mRejected;
+	}
+
+	/**
+	 * Gets the number of times the breaker has opened.
+	 *
+	 * @return	number of trips
+	 */
+	public synchronized long getTrips() {
+		return mTrips;
+	}
+
+	private void trip() {
+		mState = State.OPEN;
+		mOpened = mTicker.getAsLong();
+		mProbes = 0;
+		mGeneration++;
+		mTrips++;
+	}
+
+	private void reset() {
+		mState = State.CLOSED;
+		mProbes = 0;
+		mGeneration++;
+		mCalls = 0;
+		mFailures = 0;
+		mNext = 0;
+	}
+}
@@ -0,0 +1,457 @@
+package InteractionDesign.Group3;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Finds the nearest known city to a point, in microseconds, so clients can
+ * give coordinates instead of a city name.
+ *
+ * Cities come from a list augmented with openweathermap city IDs and
+ * coordinates (see main). They are held in a k-d tree over points on the unit
+ * sphere, rather than over latitude and longitude, so distances are right
+ * near the poles and across the date line.
+ *
+ * Locations are still identified by "[city name], [ISO 3166 country code]",
+ * so everyone nearest the same city shares one cached snapshot. A city whose
+ * name is shared with another is identified by its ID instead (see
+ * getLocation), as its name would get the API's choice of city.
+ */
+public class CityIndex {
+	private static final double EARTH_RADIUS = 6371;		// In kilometres
+
+	/**
+	 * A city in the index.
+	 */
+	public static class City {
+		private final int mId;
+		private final String mName;
+		private final double mLatitude;
+		private final double mLongitude;
+
+		/**
+		 * Constructs a city.
+		 *
+		 * @param	id		the openweathermap city ID
+		 * @param	name	the city, in the form "[city name], [ISO 3166 country code]"
+		 * @param	lat		latitude in degrees
+		 * @param	lon		longitude in degrees
+		 */
+		public City(int id, String name, double lat, double lon) {
+			mId = id;
+			mName = name;
+			mLatitude = lat;
+			mLongitude = lon;
+		}
+
+		/**
+		 * Gets the openweathermap city ID.
+		 *
+		 * @return	city ID
+		 */
+		public int getId() {
+			return mId;
+		}
+
+		/**
+		 * Gets the name of the city.
+		 *
+		 * @return	the city, in the form "[city name], [ISO 3166 country code]"
+		 */
+		public String getName() {
+			return mName;
+		}
+
+		/**
+		 * Gets the latitude of the city.
+		 *
+		 * @return	latitude in degrees
+		 */
+		public double getLatitude() {
+			return mLatitude;
+		}
+
+		/**
+		 * Gets the longitude of the city.
+		 *
+		 * @return	longitude in degrees
+		 */
+		public double getLongitude() {
+			return mLongitude;
+		}
+
+		/**
+		 * Gets the distance from the city to a point, along the Earth's surface.
+		 *
+		 * @param	lat	latitude in degrees
+		 * @param	lon	longitude in degrees
+		 * @return	distance in kilometres
+		 */
+		public double distanceTo(double lat, double lon) {
+			double dLat = Math.toRadians(lat - mLatitude);
+			double dLon = Math.toRadians(lon - mLongitude);
+
+			double a = Math.pow(Math.sin(dLat / 2), 2)
+					+ Math.cos(Math.toRadians(mLatitude)) * Math.cos(Math.toRadians(lat)) * Math.pow(Math.sin(dLon / 2), 2);
+
+			return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+		}
+
+		/**
+		 * Gets the city's name and ID, for logging.
+		 *
+		 * @return	eg. "Cambridge, GB (2653941)"
+		 */
+		public String toString() {
+			return mName + " (" + mId + ")";
+		}
+	}
+
+	// Cities in tree order: each range's middle element is the root of its
+	// subtree, split on x, y, z in turn with depth
+	private final City[] mCities;
+	// Each city's point on the unit sphere, as x, y, z
+	private final double[] mPoints;
+
+	// Only names of one city
+	private final Map<String, City> mByName = new HashMap<>();
+	private final Map<Integer, City> mById = new HashMap<>();
+
+	// The best match so far, while searching
+	private static class Search {
+		int mBest = -1;
+		double mDistance = Double.MAX_VALUE;		// Squared, on the unit sphere
+	}
+
+	/**
+	 * Builds an index of cities.
+	 *
+	 * @param	cities	the cities
+	 */
+	public CityIndex(List<City> cities) {
+		int n = cities.size();
+
+		double[] points = new double[n * 3];
+
+		for (int i = 0; i < n; i++)
+			toPoint(cities.get(i).getLatitude(), cities.get(i).getLongitude(), points, i * 3);
+
+		int[] order = new int[n];
+
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+
+		build(order, points, 0, n, 0);
+
+		mCities = new City[n];
+		mPoints = new double[n * 3];
+
+		Set<String> shared = new HashSet<>();
+
+		for (int i = 0; i < n; i++) {
+			mCities[i] = cities.get(order[i]);
+			System.arraycopy(points, order[i] * 3, mPoints, i * 3, 3);
+
+			if (mByName.putIfAbsent(mCities[i].getName(), mCities[i]) != null)
+				shared.add(mCities[i].getName());
+
+			mById.put(mCities[i].getId(), mCities[i]);
+		}
+
+		mByName.keySet().removeAll(shared);
+	}
+
+	/**
+	 * Loads an index from a file written by main: one city per line, as ID,
+	 * latitude, longitude and "[city name], [ISO 3166 country code]",
+	 * separated by tabs.
+	 *
+	 * @param	file	the file
+	 * @return	the index
+	 * @throws	IOException	if the file can't be read, or a line is invalid
+	 */
+	public static CityIndex load(String file) throws IOException {
+		List<City> cities = new ArrayList<>();
+
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line;
+
+			while ((line = br.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				String[] fields = line.split("\t");
+
+				try {
+					cities.add(new City(Integer.parseInt(fields[0]), fields[3], Double.parseDouble(fields[1]),
+							Double.parseDouble(fields[2])));
+
+				} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					throw new IOException("Invalid city index line: " + line);
+				}
+			}
+		}
+
+		return new CityIndex(cities);
+	}
+
+	/**
+	 * Finds the city nearest a point.
+	 *
+	 * @param	lat	latitude in degrees
+	 * @param	lon	longitude in degrees
+	 * @return	the nearest city, or null if the index is empty
+	 */
+	public City nearest(double lat, double lon) {
+		double[] q = new double[3];
+		toPoint(lat, lon, q, 0);
+
+		Search s = new Search();
+		search(0, mCities.length, 0, q, s);
+
+		return s.mBest < 0 ? null : mCities[s.mBest];
+	}
+
+	/**
+	 * Finds a city by name.
+	 *
+	 * @param	name	the city, in the form "[city name], [ISO 3166 country code]"
+	 * @return	the city, or null if it isn't in the index or more than one city has the name
+	 */
+	public City get(String name) {
+		return mByName.get(name);
+	}
+
+	/**
+	 * Finds a city by openweathermap city ID.
+	 *
+	 * @param	id	the city ID
+	 * @return	the city, or null if it isn't in the index
+	 */
+	public City get(int id) {
+		return mById.get(id);
+	}
+
+	/**
+	 * Gets the location string identifying a city: its name, or if another
+	 * city in the index has the same name, its ID.
+	 *
+	 * @param	city	a city in the index
+	 * @return	location string, in the form "[city name], [ISO 3166 country code]", or the city ID
+	 */
+	public String getLocation(City city) {
+		return get(city.getName()) == city ? city.getName() : Integer.toString(city.getId());
+	}
+
+	/**
+	 * Parses a location string which is a city ID, as getLocation gives for
+	 * cities sharing a name.
+	 *
+	 * @param	location	location string
+	 * @return	the city ID, or -1 if the location isn't one
+	 */
+	public static int parseId(String location) {
+		if (location.isEmpty() || location.length() > 9 || ! location.chars().allMatch(Character::isDigit))
+			return -1;
+
+		return Integer.parseInt(location);
+	}
+
+	/**
+	 * Gets the number of cities in the index.
+	 *
+	 * @return	number of cities
+	 */
+	public int size() {
+		return mCities.length;
+	}
+
+	private void search(int lo, int hi, int depth, double[] q, Search s) {
+		if (lo >= hi)
+			return;
+
+		int mid = (lo + hi) >>> 1;
+		int axis = depth % 3;
+
+		double dx = q[0] - mPoints[mid * 3];
+		double dy = q[1] - mPoints[mid * 3 + 1];
+		double dz = q[2] - mPoints[mid * 3 + 2];
+		double d = dx * dx + dy * dy + dz * dz;
+
+		if (d < s.mDistance) {
+			s.mDistance = d;
+			s.mBest = mid;
+		}
+
+		double diff = q[axis] - mPoints[mid * 3 + axis];
+
+		// The side the point is on first; the other only if it could be closer
+		if (diff < 0) {
+			search(lo, mid, depth + 1, q, s);
+
+			if (diff * diff < s.mDistance)
+				search(mid + 1, hi, depth + 1, q, s);
+
+		} else {
+			search(mid + 1, hi, depth + 1, q, s);
+
+			if (diff * diff < s.mDistance)
+				search(lo, mid, depth + 1, q, s);
+		}
+	}
+
+	// Orders cities so each range's middle is the median on the range's axis
+	private static void build(int[] order, double[] points, int lo, int hi, int depth) {
+		if (hi - lo <= 1)
+			return;
+
+		int mid = (lo + hi) >>> 1;
+
+		select(order, points, lo, hi - 1, mid, depth % 3);
+
+		build(order, points, lo, mid, depth + 1);
+		build(order, points, mid + 1, hi, depth + 1);
+	}
+
+	// Quickselect: puts the k-th smallest on the axis at k, smaller before and larger after
+	private static void select(int[] order, double[] points, int lo, int hi, int k, int axis) {
+		while (lo < hi) {
+			double pivot = points[order[(lo + hi) >>> 1] * 3 + axis];
+			int i = lo;
+			int j = hi;
+
+			while (i <= j) {
+				while (points[order[i] * 3 + axis] < pivot)
+					i++;
+
+				while (points[order[j] * 3 + axis] > pivot)
+					j--;
+
+				if (i <= j) {
+					int t = order[i];
+					order[i] = order[j];
+					order[j] = t;
+					i++;
+					j--;
+				}
+			}
+
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private static void toPoint(double lat, double lon, double[] out, int at) {
+		double phi = Math.toRadians(lat);
+		double lambda = Math.toRadians(lon);
+
+		out[at] = Math.cos(phi) * Math.cos(lambda);
+		out[at + 1] = Math.cos(phi) * Math.sin(lambda);
+		out[at + 2] = Math.sin(phi);
+	}
+
+	/**
+	 * Makes the city index file, data/cityIndex.txt, from openweathermap's
+	 * city list (city.list.json, from http://bulk.openweathermap.org/sample/).
+	 * Only cities in data/cityList.txt are kept, so coordinates always give a
+	 * location the rest of the app knows.
+	 *
+	 * Usage: CityIndex [city.list.json] [output file, default data/cityIndex.txt]
+	 *
+	 * @param	args	as above
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: CityIndex [city.list.json] [output file]");
+			return;
+		}
+
+		String output = args.length > 1 ? args[1] : "data/cityIndex.txt";
+
+		Set<String> known = new HashSet<>();
+
+		if (new File("data/cityList.txt").isFile())
+			known.addAll(Files.readAllLines(Paths.get("data/cityList.txt")));
+
+		int read = 0;
+		int written = 0;
+
+		try (JsonReader in = new JsonReader(new InputStreamReader(new FileInputStream(args[0]), StandardCharsets.UTF_8));
+				BufferedWriter bw = new BufferedWriter(new FileWriter(output))) {
+			in.beginArray();
+
+			while (in.hasNext()) {
+				int id = 0;
+				String name = null;
+				String country = null;
+				double lat = Double.NaN;
+				double lon = Double.NaN;
+
+				in.beginObject();
+
+				while (in.hasNext()) {
+					switch (in.nextName()) {
+						case "id":		id = in.nextInt(); break;
+						case "name":	name = in.nextString(); break;
+						case "country":	country = in.nextString(); break;
+
+						case "coord":
+							in.beginObject();
+
+							while (in.hasNext()) {
+								String field = in.nextName();
+
+								if (field.equals("lat"))
+									lat = in.nextDouble();
+								else if (field.equals("lon"))
+									lon = in.nextDouble();
+								else
+									in.skipValue();
+							}
+
+							in.endObject();
+							break;
+
+						default:		in.skipValue();
+					}
+				}
+
+				in.endObject();
+				read++;
+
+				String location = name + ", " + country;
+
+				if (known.isEmpty() || known.contains(location)) {
+					bw.write(id + "\t" + lat + "\t" + lon + "\t" + location);
+					bw.newLine();
+					written++;
+				}
+			}
+
+			in.endArray();
+		}
+
+		System.out.println("Kept " + written + " of " + read + " cities in " + output);
+	}
+}
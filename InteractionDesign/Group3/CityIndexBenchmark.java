@@ -0,0 +1,86 @@
+package InteractionDesign.Group3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A class used for testing purposes only.
+ * Builds a city index over random points on the globe (about as many as
+ * openweathermap's city list), checks nearest-city lookups against a linear
+ * scan, and times both.
+ */
+public class CityIndexBenchmark {
+	private static final int CITIES = 200000;
+	private static final int CHECKS = 2000;
+	private static final int LOOKUPS = 1000000;
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+
+		List<CityIndex.City> cities = new ArrayList<>();
+
+		for (int i = 0; i < CITIES; i++)
+			cities.add(new CityIndex.City(i, "City " + i + ", XX", randomLat(random), random.nextDouble() * 360 - 180));
+
+		long t1 = System.nanoTime();
+
+		CityIndex index = new CityIndex(cities);
+
+		long t2 = System.nanoTime();
+
+		System.out.println("Built index of " + index.size() + " cities in " + (t2 - t1) / 1000000 + "ms");
+
+		// Includes the poles and both sides of the date line
+		int wrong = 0;
+		long scan = 0;
+
+		for (int i = 0; i < CHECKS; i++) {
+			double lat = i < 10 ? (i % 2 == 0 ? 90 : -90) : randomLat(random);
+			double lon = i < 20 ? (i % 2 == 0 ? 179.99 : -179.99) : random.nextDouble() * 360 - 180;
+
+			long t3 = System.nanoTime();
+
+			CityIndex.City best = null;
+
+			for (CityIndex.City c : cities) {
+				if (best == null || c.distanceTo(lat, lon) < best.distanceTo(lat, lon))
+					best = c;
+			}
+
+			scan += System.nanoTime() - t3;
+
+			CityIndex.City found = index.nearest(lat, lon);
+
+			// Ties are fine
+			if (found.getId() != best.getId() && found.distanceTo(lat, lon) > best.distanceTo(lat, lon) + 1e-9)
+				wrong++;
+		}
+
+		System.out.println("Checked " + CHECKS + " lookups against a linear scan: " + wrong + " wrong");
+
+		double[] lats = new double[LOOKUPS];
+		double[] lons = new double[LOOKUPS];
+
+		for (int i = 0; i < LOOKUPS; i++) {
+			lats[i] = randomLat(random);
+			lons[i] = random.nextDouble() * 360 - 180;
+		}
+
+		long sum = 0;
+		long t4 = System.nanoTime();
+
+		for (int i = 0; i < LOOKUPS; i++)
+			sum += index.nearest(lats[i], lons[i]).getId();
+
+		long t5 = System.nanoTime();
+
+		System.out.println("k-d tree: " + (t5 - t4) / LOOKUPS + "ns per lookup (" + sum % 10 + ")");
+		System.out.println("Linear scan: " + scan / CHECKS / 1000 + "us per lookup");
+	}
+
+	// Uniform over the sphere's surface, not over latitudes
+	private static double randomLat(Random random) {
+		return Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+	}
+}
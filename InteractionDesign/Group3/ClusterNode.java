@@ -0,0 +1,544 @@
+package InteractionDesign.Group3;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One node of a cluster of weather caches. Locations are shared between the
+ * nodes by consistent hashing, so each location is only fetched from the API
+ * by the node which owns it. Other nodes forward requests for it to the owner.
+ *
+ * Nodes talk over TCP on the loopback interface, one request per connection,
+ * in lines of text:
+ *	"PING [address]"	answered "PONG [every member's address]"
+ *	"GET [location]"	answered "OK" then the snapshot, or "ERR [message]"
+ *	"PUT" then a snapshot	hands a snapshot over to its new owner
+ *	"LEAVE [address]"	the node is shutting down
+ * Snapshots are sent in the cache file's format, see SnapshotFormat.
+ *
+ * Membership spreads by gossip: each node pings its seeds and every member it
+ * knows of once a second, and learns of the members they know. A node which
+ * misses 3 pings in a row is taken off the ring. When a node joins, the
+ * others hand over snapshots of the locations it now owns; a node leaving
+ * hands over its own.
+ */
+public class ClusterNode {
+	private static final long GOSSIP_INTERVAL = 1000;		// In milliseconds
+	private static final int MAX_MISSED = 3;
+	private static final int TIMEOUT = 2000;
+
+	private final WeatherCache mCache;
+	private final String mSelf;
+	private final List<String> mSeeds;
+	private final ServerSocket mServer;
+
+	private final HashRing mRing = new HashRing();
+	// Other members, and how many pings in a row each has missed
+	private final Map<String, Integer> mPeers = new ConcurrentHashMap<>();
+	// Locations served as owner, to hand over if they move to another node
+	private final Set<String> mOwned = ConcurrentHashMap.newKeySet();
+
+	private final ExecutorService mWorkers;
+	private final ScheduledExecutorService mGossip;
+	private volatile boolean mRunning = false;
+
+	private final AtomicLong mLocal = new AtomicLong();
+	private final AtomicLong mForwarded = new AtomicLong();
+	private final AtomicLong mServed = new AtomicLong();
+	private final AtomicLong mFallbacks = new AtomicLong();
+	private final AtomicLong mHandedOver = new AtomicLong();
+
+	/**
+	 * Constructs a node. Call start to join the cluster.
+	 *
+	 * @param	cache	the node's cache
+	 * @param	port	the port to listen on, or 0 for any free port
+	 * @param	seeds	addresses of nodes to join through, eg. "127.0.0.1:9001"
+	 * @throws	IOException	if the port can't be bound
+	 */
+	public ClusterNode(WeatherCache cache, int port, List<String> seeds) throws IOException {
+		mCache = cache;
+		mServer = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		mSelf = "127.0.0.1:" + mServer.getLocalPort();
+		mSeeds = new ArrayList<>(seeds);
+		mSeeds.remove(mSelf);
+
+		mRing.add(mSelf);
+
+		mWorkers = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "cluster");
+			t.setDaemon(true);
+			return t;
+		});
+
+		mGossip = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "gossip");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Starts serving other nodes, and joins the cluster through the seeds.
+	 */
+	public void start() {
+		mRunning = true;
+
+		mWorkers.execute(this::accept);
+		mGossip.scheduleWithFixedDelay(this::gossip, 0, GOSSIP_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Leaves the cluster: hands over the snapshots this node owns, tells the
+	 * other members, and stops serving.
+	 */
+	public void stop() {
+		mRunning = false;
+		mGossip.shutdownNow();
+
+		mRing.remove(mSelf);
+		handOver();
+
+		for (String peer : mPeers.keySet()) {
+			try {
+				exchange(peer, "LEAVE " + mSelf, null);
+
+			} catch (IOException e) {
+				// It will notice we've gone when we miss its pings
+			}
+		}
+
+		try {
+			mServer.close();
+
+		} catch (IOException e) {
+			// Nothing more to do
+		}
+	}
+
+	/**
+	 * Gets a snapshot of any location. If this node owns the location, it
+	 * comes from this node's cache. Otherwise the request is forwarded to the
+	 * owner, or served from this node's cache if the owner can't be reached.
+	 *
+	 * @param	query	location string, in any form WeatherCache.canonicalise accepts
+	 * @return	a future for the snapshot, failing with APIException if there is none
+	 */
+	public CompletableFuture<Snapshot> getSnapshot(String query) {
+		// Every node must agree on who owns a location
+		String location = mCache.canonicalise(query);
+		String owner = mRing.owner(location);
+
+		if (owner == null || owner.equals(mSelf)) {
+			mLocal.incrementAndGet();
+			mOwned.add(location);
+
+			return mCache.getSnapshot(location);
+		}
+
+		mForwarded.incrementAndGet();
+
+		CompletableFuture<Snapshot> f = new CompletableFuture<>();
+
+		mWorkers.execute(() -> {
+			try {
+				f.complete(forward(owner, location));
+
+			} catch (APIException e) {
+				// The owner couldn't get it either
+				f.completeExceptionally(e);
+
+			} catch (IOException | CacheException e) {
+				System.out.println("Node " + owner + " unreachable, serving " + location + " locally");
+				mFallbacks.incrementAndGet();
+
+				mCache.getSnapshot(location).whenComplete((s, x) -> {
+					if (x == null)
+						f.complete(s);
+					else
+						f.completeExceptionally(x);
+				});
+			}
+		});
+
+		return f;
+	}
+
+	/**
+	 * Gets the node which owns a location.
+	 *
+	 * @param	location	location string, in the form "[city name], [ISO 3166 country code]"
+	 * @return	the owner's address
+	 */
+	public String getOwner(String location) {
+		return mRing.owner(location);
+	}
+
+	/**
+	 * Gets this node's address, as other nodes know it.
+	 *
+	 * @return	the address, eg. "127.0.0.1:9001"
+	 */
+	public String getAddress() {
+		return mSelf;
+	}
+
+	/**
+	 * Gets the members of the cluster this node knows of, including itself.
+	 *
+	 * @return	the members' addresses
+	 */
+	public List<String> getMembers() {
+		return mRing.getNodes();
+	}
+
+	/**
+	 * Gets the number of requests served from this node's cache, as owner.
+	 *
+	 * @return	number of requests
+	 */
+	public long getLocal() {
+		return mLocal.get();
+	}
+
+	/**
+	 * Gets the number of requests forwarded to other nodes.
+	 *
+	 * @return	number of requests
+	 */
+	public long getForwarded() {
+		return mForwarded.get();
+	}
+
+	/**
+	 * Gets the number of requests other nodes forwarded to this one.
+	 *
+	 * @return	number of requests
+	 */
+	public long getServed() {
+		return mServed.get();
+	}
+
+	/**
+	 * Gets the number of forwarded requests served locally instead, because
+	 * the owner couldn't be reached.
+	 *
+	 * @return	number of requests
+	 */
+	public long getFallbacks() {
+		return mFallbacks.get();
+	}
+
+	/**
+	 * Gets the number of snapshots handed over to other nodes.
+	 *
+	 * @return	number of snapshots
+	 */
+	public long getHandedOver() {
+		return mHandedOver.get();
+	}
+
+	private Snapshot forward(String owner, String location) throws IOException, APIException, CacheException {
+		try (Socket socket = connect(owner)) {
+			BufferedWriter bw = writer(socket);
+			bw.write("GET " + location);
+			bw.newLine();
+			bw.flush();
+
+			BufferedReader br = reader(socket);
+			String status = br.readLine();
+
+			if (status == null)
+				throw new IOException("No response from " + owner);
+
+			if (status.startsWith("ERR "))
+				throw new APIException(status.substring(4));
+
+			return SnapshotFormat.read(br, mCache.getZone());
+		}
+	}
+
+	private void accept() {
+		while (mRunning) {
+			try {
+				Socket socket = mServer.accept();
+				mWorkers.execute(() -> serve(socket));
+
+			} catch (IOException e) {
+				if (mRunning)
+					System.out.println("Cluster accept failed: " + e.getMessage());
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket s = socket) {
+			s.setSoTimeout(TIMEOUT);
+
+			BufferedReader br = reader(s);
+			BufferedWriter bw = writer(s);
+
+			String line = br.readLine();
+
+			if (line == null)
+				return;
+
+			if (line.startsWith("PING ")) {
+				join(line.substring(5));
+
+				bw.write("PONG " + String.join(" ", mRing.getNodes()));
+
+			} else if (line.startsWith("GET ")) {
+				// Served here even if we don't think we own it, as views of
+				// the ring may briefly differ, and forwarding again could loop
+				String location = line.substring(4);
+				mServed.incrementAndGet();
+
+				if (mSelf.equals(mRing.owner(location)))
+					mOwned.add(location);
+
+				try {
+					Snapshot snapshot = mCache.getSnapshot(location).get();
+
+					bw.write("OK");
+					bw.newLine();
+					SnapshotFormat.write(snapshot, bw);
+
+				} catch (ExecutionException e) {
+					bw.write("ERR " + e.getCause().getMessage());
+				}
+
+			} else if (line.equals("PUT")) {
+				Snapshot snapshot = SnapshotFormat.read(br, mCache.getZone());
+
+				mCache.offer(snapshot);
+				mOwned.add(snapshot.getLocation());
+
+				bw.write("OK");
+
+			} else if (line.startsWith("LEAVE ")) {
+				leave(line.substring(6));
+
+				bw.write("OK");
+
+			} else {
+				bw.write("ERR Unknown request");
+			}
+
+			bw.newLine();
+			bw.flush();
+
+		} catch (IOException | CacheException e) {
+			System.out.println("Cluster request failed: " + e.getMessage());
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void gossip() {
+		Set<String> targets = new LinkedHashSet<>(mSeeds);
+		targets.addAll(mPeers.keySet());
+
+		for (String peer : targets) {
+			try {
+				String reply = exchange(peer, "PING " + mSelf, null);
+
+				join(peer);
+
+				for (String member : reply.substring(5).split(" ")) {
+					if (! member.equals(mSelf))
+						join(member);
+				}
+
+			} catch (IOException | RuntimeException e) {
+				Integer missed = mPeers.computeIfPresent(peer, (p, n) -> n + 1);
+
+				if (missed != null && missed >= MAX_MISSED)
+					leave(peer);
+			}
+		}
+	}
+
+	private void join(String peer) {
+		if (mPeers.put(peer, 0) == null && mRing.add(peer)) {
+			System.out.println("Node " + peer + " joined, members " + mRing.getNodes());
+
+			mWorkers.execute(this::handOver);
+		}
+	}
+
+	private void leave(String peer) {
+		if (mPeers.remove(peer) != null && mRing.remove(peer))
+			System.out.println("Node " + peer + " left, members " + mRing.getNodes());
+	}
+
+	// Sends snapshots of locations we no longer own to their new owners
+	private void handOver() {
+		for (String location : mOwned) {
+			String owner = mRing.owner(location);
+
+			if (owner == null || owner.equals(mSelf))
+				continue;
+
+			mOwned.remove(location);
+
+			Snapshot s = mCache.getStored(location);
+
+			if (s == null)
+				continue;
+
+			try {
+				exchange(owner, "PUT", s);
+				mHandedOver.incrementAndGet();
+
+			} catch (IOException e) {
+				// The new owner will fetch it instead
+			}
+		}
+	}
+
+	// Sends one request, with a snapshot if not null, and reads the reply line
+	private String exchange(String peer, String request, Snapshot snapshot) throws IOException {
+		try (Socket socket = connect(peer)) {
+			BufferedWriter bw = writer(socket);
+			bw.write(request);
+			bw.newLine();
+
+			if (snapshot != null)
+				SnapshotFormat.write(snapshot, bw);
+
+			bw.flush();
+
+			// The snapshot runs to the end of the input
+			if (snapshot != null)
+				socket.shutdownOutput();
+
+			String reply = reader(socket).readLine();
+
+			if (reply == null || reply.startsWith("ERR"))
+				throw new IOException("Bad reply from " + peer + ": " + reply);
+
+			return reply;
+		}
+	}
+
+	private static Socket connect(String peer) throws IOException {
+		int colon = peer.lastIndexOf(':');
+
+		Socket socket = new Socket();
+		socket.connect(new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))), TIMEOUT);
+		socket.setSoTimeout(TIMEOUT * 5);
+
+		return socket;
+	}
+
+	private static BufferedReader reader(Socket socket) throws IOException {
+		return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+	}
+
+	private static BufferedWriter writer(Socket socket) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Runs a node, for trying out a cluster with several processes on one
+	 * machine. Reads locations from standard input, one per line, and prints
+	 * where each was served from. "stats" prints the node's counters, and
+	 * "quit" (or the end of input) leaves the cluster.
+	 *
+	 * Usage: ClusterNode [port] [data directory] [--stub] [seed address]...
+	 * With --stub, the node fetches from its own local stub API.
+	 *
+	 * @param	args	as above
+	 */
+	public static void main(String[] args) throws APIException, CacheException, IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: ClusterNode [port] [data directory] [--stub] [seed address]...");
+			return;
+		}
+
+		List<String> rest = new ArrayList<>(Arrays.asList(args).subList(2, args.length));
+
+		StubServer stub = null;
+		APIClient client;
+
+		if (rest.remove("--stub")) {
+			stub = new StubServer(0);
+			stub.setLatency(100);
+			stub.start();
+
+			client = new APIClient(stub.getURL(), new RequestScheduler(60, 600, 8),
+					new CircuitBreaker(20, 5, 0.5, 3000, 30000));
+		} else {
+			client = new APIClient();
+		}
+
+		WeatherCache cache = new WeatherCache(client, args[1]);
+
+		ClusterNode node = new ClusterNode(cache, Integer.parseInt(args[0]), rest);
+		node.start();
+
+		System.out.println("Node " + node.getAddress() + " started");
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+
+		while ((line = in.readLine()) != null && ! line.equals("quit")) {
+			line = line.trim();
+
+			if (line.isEmpty())
+				continue;
+
+			if (line.equals("stats")) {
+				System.out.println("members " + node.getMembers() + ", local " + node.getLocal() + ", forwarded "
+						+ node.getForwarded() + ", served " + node.getServed() + ", fallbacks " + node.getFallbacks()
+						+ ", handed over " + node.getHandedOver()
+						+ (stub == null ? "" : ", API requests " + stub.getRequests()));
+				continue;
+			}
+
+			long t1 = System.nanoTime();
+
+			try {
+				Snapshot s = node.getSnapshot(line).get();
+
+				System.out.println(line + " from " + node.getOwner(line) + ": " + s.getSummary().getTemp() + " degrees, "
+						+ (System.nanoTime() - t1) / 1000000 + "ms");
+
+			} catch (ExecutionException e) {
+				System.out.println(line + " failed: " + e.getCause().getMessage());
+
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+
+		node.stop();
+
+		if (stub != null)
+			stub.stop();
+	}
+}
@@ -0,0 +1,68 @@
+package InteractionDesign.Group3;
+
+import java.time.LocalDateTime;
+
+/**
+ * One user's commute, for batch item recommendation.
+ */
+public class CommuteQuery {
+	private final String mUser;
+	private final String mLocation;
+	private final LocalDateTime mStart;
+	private final LocalDateTime mFin;
+
+	/**
+	 * Instantiates CommuteQuery with the parameters given
+	 *
+	 * @param	user		identifies the user, for matching up the result
+	 * @param	location	location string, in the form "[city name], [ISO 3166 country code]"
+	 * @param	start		the start of the commute
+	 * @param	fin			the end of the commute
+	 */
+	public CommuteQuery(String user, String location, LocalDateTime start, LocalDateTime fin) {
+		mUser = user;
+		mLocation = location;
+		mStart = start;
+		mFin = fin;
+	}
+
+	/**
+	 * Gets the user.
+	 *
+	 * @return	the user
+	 */
+	public String getUser() {
+		return mUser;
+	}
+
+	/**
+	 * Gets the location.
+	 *
+	 * @return	location string
+	 */
+	public String getLocation() {
+		return mLocation;
+	}
+
+	/**
+	 * Gets the start of the commute.
+	 *
+	 * @return	start time
+	 */
+	public LocalDateTime getStart() {
+		return mStart;
+	}
+
+	/**
+	 * Gets the end of the commute.
+	 *
+	 * @return	end time
+	 */
+	public LocalDateTime getFin() {
+		return mFin;
+	}
+
+	public String toString() {
+		return mUser + "," + mLocation + "," + mStart + "," + mFin;
+	}
+}
@@ -0,0 +1,68 @@
+package InteractionDesign.Group3;
+
+import java.util.List;
+
+/**
+ * The items recommended for one CommuteQuery, or why there are none.
+ */
+public class CommuteResult {
+	private final CommuteQuery mQuery;
+	private final List<Item> mItems;
+	private final String mError;
+
+	/**
+	 * Instantiates a successful result.
+	 *
+	 * @param	query	the query answered
+	 * @param	items	the items recommended
+	 */
+	public CommuteResult(CommuteQuery query, List<Item> items) {
+		mQuery = query;
+		mItems = items;
+		mError = null;
+	}
+
+	/**
+	 * Instantiates a failed result, eg. if the location's weather couldn't
+	 * be fetched.
+	 *
+	 * @param	query	the query which failed
+	 * @param	error	what went wrong
+	 */
+	public CommuteResult(CommuteQuery query, String error) {
+		mQuery = query;
+		mItems = null;
+		mError = error;
+	}
+
+	/**
+	 * Gets the query this answers.
+	 *
+	 * @return	the query
+	 */
+	public CommuteQuery getQuery() {
+		return mQuery;
+	}
+
+	/**
+	 * Gets the items recommended.
+	 *
+	 * @return	list of Items, or null if the query failed
+	 */
+	public List<Item> getItems() {
+		return mItems;
+	}
+
+	/**
+	 * Gets why the query failed.
+	 *
+	 * @return	error message, or null if the query succeeded
+	 */
+	public String getError() {
+		return mError;
+	}
+
+	public String toString() {
+		return mQuery + " " + (mError == null ? mItems : mError);
+	}
+}
@@ -0,0 +1,149 @@
+package InteractionDesign.Group3;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregated weather for one day of the forecast, as shown in the week view.
+ * These are worked out once per refresh, so reading them is constant time.
+ */
+public class DailySummary {
+	private final LocalDate mDate;
+	private final String mLabel;
+
+	private final int mMinTemp;			// In Celcius
+	private final int mMaxTemp;
+	private final double mMeanTemp;
+
+	private final Icon mIcon;
+	private final LocalDateTime mFirstRain;
+	private final List<Warning> mWarnings;
+
+	/**
+	 * Aggregates the forecast records for one day.
+	 *
+	 * @param	day			the day's records, ordered chronologically (must not be empty)
+	 * @param	warnings	the warnings which apply to that day
+	 */
+	public DailySummary(List<Record> day, List<Warning> warnings) {
+		Record first = day.get(0);
+
+		mDate = first.getTimeStamp().toLocalDate();
+		mLabel = first.getLabel();
+
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		int total = 0;
+
+		Map<Icon, Integer> counts = new EnumMap<>(Icon.class);
+		Icon icon = first.getIcon();
+		LocalDateTime firstRain = null;
+
+		for (Record r : day) {
+			min = Math.min(min, r.getTemp());
+			max = Math.max(max, r.getTemp());
+			total += r.getTemp();
+
+			// Most frequent icon, ties going to the earliest
+			int n = counts.merge(r.getIcon(), 1, Integer::sum);
+
+			if (n > counts.get(icon))
+				icon = r.getIcon();
+
+			if (firstRain == null && isRain(r.getIcon()))
+				firstRain = r.getTimeStamp();
+		}
+
+		mMinTemp = min;
+		mMaxTemp = max;
+		mMeanTemp = (double) total / day.size();
+
+		mIcon = icon;
+		mFirstRain = firstRain;
+		mWarnings = Collections.unmodifiableList(warnings);
+	}
+
+	/**
+	 * Gets the date this summary is for.
+	 *
+	 * @return	the date
+	 */
+	public LocalDate getDate() {
+		return mDate;
+	}
+
+	/**
+	 * Gets the label of the day. eg. "Today", "Tomorrow", "Wednesday" etc.
+	 *
+	 * @return	the label
+	 */
+	public String getLabel() {
+		return mLabel;
+	}
+
+	/**
+	 * Gets the lowest temperature forecast for the day, in degrees Celcius.
+	 *
+	 * @return	minimum temperature
+	 */
+	public int getMinTemp() {
+		return mMinTemp;
+	}
+
+	/**
+	 * Gets the highest temperature forecast for the day, in degrees Celcius.
+	 *
+	 * @return	maximum temperature
+	 */
+	public int getMaxTemp() {
+		return mMaxTemp;
+	}
+
+	/**
+	 * Gets the mean of the day's forecast temperatures, in degrees Celcius.
+	 *
+	 * @return	mean temperature
+	 */
+	public double getMeanTemp() {
+		return mMeanTemp;
+	}
+
+	/**
+	 * Gets the icon which appears most often in the day's forecast.
+	 *
+	 * @return	the dominant icon
+	 */
+	public Icon getIcon() {
+		return mIcon;
+	}
+
+	/**
+	 * Gets the time stamp of the first slot with rain, hail or thunderstorms.
+	 *
+	 * @return	time of the first rain, or null if no rain is forecast
+	 */
+	public LocalDateTime getFirstRain() {
+		return mFirstRain;
+	}
+
+	/**
+	 * Gets the weather warnings which apply to the day.
+	 *
+	 * @return	list of warnings
+	 */
+	public List<Warning> getWarnings() {
+		return mWarnings;
+	}
+
+	public String toString() {
+		return mLabel + "," + mIcon + "," + mMinTemp + "," + mMaxTemp + "," + mWarnings;
+	}
+
+	private static boolean isRain(Icon i) {
+		return i == Icon.LIGHT_RAIN || i == Icon.HEAVY_RAIN || i == Icon.HAIL || i == Icon.THUNDERSTORM;
+	}
+}
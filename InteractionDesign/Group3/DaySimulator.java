@@ -0,0 +1,245 @@
+package InteractionDesign.Group3;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A class used for testing purposes only.
+ * Simulates days of a WeatherCache's use in seconds, on a SimulatedClock
+ * moved on a minute at a time, against a local StubServer which makes up
+ * weather for the same clock. Each simulated minute, the user asks for the
+ * summary, the next 24 hours or their commute's items, more often around
+ * commuting times, and another location is looked up now and then. The
+ * user goes elsewhere at noon and comes back at 6pm, and the API fails for
+ * two hours on the afternoon of the second day.
+ *
+ * Simulated time stands still while API calls are in flight.
+ *
+ * Prints, for each simulated hour, the API calls made, the refreshes with
+ * their (real) latency, and the number of requests served stale data. Then
+ * restarts the cache from its files, and checks the snapshot loaded gives
+ * the same sun times as the one it saved.
+ *
+ * The clock is in India's time zone unless another is given, as hosts are
+ * usually in UTC, so anything going by the host's zone rather than the
+ * clock's shows up.
+ *
+ * Usage: DaySimulator [days, default 3] [time zone, default Asia/Kolkata]
+ */
+public class DaySimulator {
+	private static final String HOME = "Cambridge, GB";
+	private static final String AWAY = "London, GB";
+	private static final String[] OTHERS = {"Oxford, GB", "Leeds, GB", "Bristol, GB", "York, GB", "Bath, GB",
+			"Norwich, GB", "Exeter, GB", "Durham, GB"};
+
+	// Requests a minute by the hour of day, busiest around commutes
+	private static final double[] ACTIVITY = {0, 0, 0, 0, 0, 0.2, 1, 3, 3, 1, 0.5, 0.5, 1, 0.5, 0.5, 0.5, 1, 3, 3,
+			1, 0.5, 0.5, 0.2, 0};
+
+	private static final String ZONE = "Asia/Kolkata";
+
+	private static final LocalTime COMMUTE_START = LocalTime.of(8, 0);
+	private static final LocalTime COMMUTE_FIN = LocalTime.of(9, 0);
+
+	private static final long SETTLE_LIMIT = 5000;		// In real milliseconds
+
+	// Counts for the current simulated hour
+	private static long sRefreshes;
+	private static long sRefreshNanos;
+	private static long sMaxRefreshNanos;
+	private static long sStale;
+	private static long sFailed;
+
+	public static void main(String[] args) throws Exception {
+		int days = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		ZoneId zone = ZoneId.of(args.length > 1 ? args[1] : ZONE);
+
+		// From midnight in the clock's zone
+		SimulatedClock clock = new SimulatedClock(LocalDate.now(zone).atStartOfDay(zone).toInstant(), zone);
+
+		StubServer stub = new StubServer(0);
+		stub.setClock(clock);
+		stub.setLatency(20);
+		stub.start();
+
+		Path dir = Files.createTempDirectory("weatherapp");
+		Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+		APIClient client = new APIClient(stub.getURL(), new RequestScheduler(60, 60000, 4),
+				new CircuitBreaker(20, 5, 0.5, 3000, 30000, clock));
+
+		WeatherCache cache = new WeatherCache(client, dir.toString(), clock);
+		cache.setLatencyBudget(200);
+
+		Random random = new Random(1);
+
+		LocalDateTime start = LocalDateTime.now(clock);
+		LocalDateTime outage = start.plusDays(1).withHour(14);
+
+		long requests = stub.getRequests();
+		long t1 = System.nanoTime();
+
+		System.out.println("Simulating " + days + " days from " + start + " " + zone);
+
+		for (int hour = 0; hour < days * 24; hour++) {
+			LocalDateTime now = LocalDateTime.now(clock);
+
+			if (now.equals(outage))
+				stub.setErrorRate(1);
+			else if (now.equals(outage.plusHours(2)))
+				stub.setErrorRate(0);
+
+			if (now.getHour() == 12)
+				change(cache, AWAY);
+			else if (now.getHour() == 18)
+				change(cache, HOME);
+
+			for (int minute = 0; minute < 60; minute++) {
+				int n = poisson(random, ACTIVITY[now.getHour()]);
+
+				for (int i = 0; i < n; i++)
+					request(cache, clock, random);
+
+				// About 6 lookups an hour during the day
+				if (now.getHour() >= 7 && now.getHour() < 22 && random.nextInt(10) == 0)
+					lookUp(cache, clock, OTHERS[random.nextInt(OTHERS.length)]);
+
+				settle(stub, client);
+				clock.advance(Duration.ofMinutes(1));
+			}
+
+			long r = stub.getRequests();
+
+			System.out.println(String.format("Day %d %02d:00  API %3d  refreshes %2d (mean %3dms, max %4dms)  stale %3d"
+					+ "  failed %3d", hour / 24 + 1, now.getHour(), r - requests, sRefreshes,
+					sRefreshes == 0 ? 0 : sRefreshNanos / sRefreshes / 1000000, sMaxRefreshNanos / 1000000, sStale,
+					sFailed));
+
+			requests = r;
+			sRefreshes = 0;
+			sRefreshNanos = 0;
+			sMaxRefreshNanos = 0;
+			sStale = 0;
+			sFailed = 0;
+		}
+
+		long millis = (System.nanoTime() - t1) / 1000000;
+
+		System.out.println("Simulated " + days * 24 + " hours in " + millis + "ms, " + stub.getRequests() + " API calls");
+
+		// Fresh enough not to be refreshed, so the restart uses the cache file
+		cache.setLocation(HOME);
+		Snapshot saved = cache.getSnapshot(HOME).get();
+
+		WeatherCache restarted = new WeatherCache(client, dir.toString(), clock);
+		Snapshot loaded = restarted.getSnapshot(HOME).get();
+
+		LocalDate today = LocalDate.now(clock);
+
+		System.out.println("Snapshot loaded after a restart: sunrise " + loaded.getSolar().sunrise(today)
+				+ (loaded.getLastUpdated().equals(saved.getLastUpdated())
+						&& loaded.getSolar().sunrise(today).equals(saved.getSolar().sunrise(today)) ? ", as saved"
+						: ", but saved " + saved.getSolar().sunrise(today) + " at " + saved.getLastUpdated()));
+
+		stub.stop();
+		System.exit(0);
+	}
+
+	// One of the user's requests about their current location
+	private static void request(WeatherCache cache, SimulatedClock clock, Random random) {
+		long t1 = System.nanoTime();
+
+		try {
+			switch (random.nextInt(3)) {
+				case 0:		cache.getSummary(); break;
+				case 1:		cache.get24Hours(); break;
+				default:	cache.getItems(COMMUTE_START, COMMUTE_FIN);
+			}
+
+			if (cache.isStale())
+				sStale++;
+
+		} catch (APIException | CacheException e) {
+			sFailed++;
+		}
+
+		// The clock stands still while a minute's requests are made
+		if (LocalDateTime.now(clock).equals(cache.getLastUpdated()))
+			refreshed(System.nanoTime() - t1);
+	}
+
+	// Another location, which is fetched if not cached
+	private static void lookUp(WeatherCache cache, SimulatedClock clock, String location) {
+		long t1 = System.nanoTime();
+
+		CompletableFuture<Snapshot> f = cache.getSnapshot(location);
+		boolean cached = f.isDone();
+
+		try {
+			Snapshot s = f.get();
+
+			if (! cached && s.getLastUpdated().equals(LocalDateTime.now(clock)))
+				refreshed(System.nanoTime() - t1);
+
+			// Fell back to an old snapshot
+			if (s.getLastUpdated().plusHours(1).isBefore(LocalDateTime.now(clock)))
+				sStale++;
+
+		} catch (ExecutionException e) {
+			sFailed++;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void change(WeatherCache cache, String location) {
+		long t1 = System.nanoTime();
+
+		try {
+			cache.setLocation(location);
+			refreshed(System.nanoTime() - t1);
+
+		} catch (APIException | CacheException e) {
+			sFailed++;
+		}
+	}
+
+	// The stub answers in real time, so simulated time waits for calls in
+	// flight or queued; otherwise hours could pass during one call
+	private static void settle(StubServer stub, APIClient client) throws InterruptedException {
+		long deadline = System.nanoTime() + SETTLE_LIMIT * 1000000;
+
+		while ((stub.getInFlight() > 0 || client.getScheduler().getQueueDepth() > 0) && System.nanoTime() < deadline)
+			Thread.sleep(1);
+	}
+
+	private static void refreshed(long nanos) {
+		sRefreshes++;
+		sRefreshNanos += nanos;
+		sMaxRefreshNanos = Math.max(sMaxRefreshNanos, nanos);
+	}
+
+	// Number of requests in a minute, for a mean rate
+	private static int poisson(Random random, double mean) {
+		double limit = Math.exp(-mean);
+		double p = random.nextDouble();
+		int n = 0;
+
+		while (p > limit) {
+			p *= random.nextDouble();
+			n++;
+		}
+
+		return n;
+	}
+}
@@ -0,0 +1,131 @@
+package InteractionDesign.Group3;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+
+/**
+ * A snapshot encoded for sending to clients, see BinarySnapshotFormat,
+ * with an ETag which is a hash of the bytes. Encoded once per refresh, so
+ * serving it costs nothing but copying the bytes out, and a client which
+ * already has these bytes can be told so instead.
+ */
+public class EncodedSnapshot {
+	private final String mLocation;
+	private final LocalDateTime mLastUpdated;
+	private final byte[] mBytes;		// Never changed or handed out
+	private final String mETag;
+
+	/**
+	 * Encodes a snapshot.
+	 *
+	 * @param	s	the snapshot
+	 */
+	public EncodedSnapshot(Snapshot s) {
+		mLocation = s.getLocation();
+		mLastUpdated = s.getLastUpdated();
+		mBytes = BinarySnapshotFormat.write(s);
+		mETag = eTag(mBytes);
+	}
+
+	/**
+	 * Gets the location string.
+	 *
+	 * @return	location, in the form "[city name], [ISO 3166 country code]"
+	 */
+	public String getLocation() {
+		return mLocation;
+	}
+
+	/**
+	 * Gets the time stamp of the refresh which was encoded.
+	 *
+	 * @return	time stamp of the refresh
+	 */
+	public LocalDateTime getLastUpdated() {
+		return mLastUpdated;
+	}
+
+	/**
+	 * Gets the ETag: the first 8 bytes of the SHA-256 hash of the encoding,
+	 * in hex and in quotes as sent in HTTP headers.
+	 *
+	 * @return	the ETag
+	 */
+	public String getETag() {
+		return mETag;
+	}
+
+	/**
+	 * Gets the length of the encoding.
+	 *
+	 * @return	number of bytes
+	 */
+	public int getLength() {
+		return mBytes.length;
+	}
+
+	/**
+	 * Gets the encoding, without copying it.
+	 *
+	 * @return	a read-only buffer of the bytes
+	 */
+	public ByteBuffer getBytes() {
+		return ByteBuffer.wrap(mBytes).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Writes the encoding.
+	 *
+	 * @param	out	where to write it
+	 * @throws	IOException	if writing fails
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(mBytes);
+	}
+
+	/**
+	 * Tests whether a client already has this encoding, from the ETags it
+	 * sent in an If-None-Match header.
+	 *
+	 * @param	ifNoneMatch	the header, eg. "\"3f2a...\"", or null if there wasn't one
+	 * @return	true if one of the ETags (or "*") matches
+	 */
+	public boolean matches(String ifNoneMatch) {
+		if (ifNoneMatch == null)
+			return false;
+
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+
+			// Weak comparison, as If-None-Match uses
+			if (tag.startsWith("W/"))
+				tag = tag.substring(2);
+
+			if (tag.equals("*") || tag.equals(mETag))
+				return true;
+		}
+
+		return false;
+	}
+
+	private static String eTag(byte[] bytes) {
+		try {
+			byte[] d = MessageDigest.getInstance("SHA-256").digest(bytes);
+
+			StringBuilder sb = new StringBuilder("\"");
+
+			for (int i = 0; i < 8; i++)
+				sb.append(String.format("%02x", d[i]));
+
+			return sb.append('"').toString();
+
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
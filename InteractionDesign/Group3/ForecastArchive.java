@@ -0,0 +1,294 @@
+package InteractionDesign.Group3;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * An append-only archive of every forecast fetched, for analysing how
+ * forecasts drift and answering "what was predicted" queries.
+ *
+ * Rows are stored in fixed-size segment files, each laid out by column: all
+ * the location IDs, then all the issue times, and so on. Segments are read
+ * through memory-mapped buffers, so scans don't copy the archive into the
+ * heap, and each segment's header records its range of target times so that
+ * scans skip segments which can't match.
+ *
+ * Location strings are stored once, in locations.txt, and rows refer to them
+ * by line number. Times are stored to the minute.
+ */
+public class ForecastArchive {
+	/**
+	 * The number of rows in each segment file
+	 */
+	public static final int SEGMENT_ROWS = 1 << 16;
+
+	private static final int MAGIC = 0x57464131;	// "WFA1"
+
+	// Header: magic, row count, min target, max target (as minutes)
+	private static final int HEADER = 16;
+
+	// Column offsets. Rows are location (int), issued (int), target (int), temp (short), code (short), icon (byte)
+	private static final int LOCATION = HEADER;
+	private static final int ISSUED = LOCATION + 4 * SEGMENT_ROWS;
+	private static final int TARGET = ISSUED + 4 * SEGMENT_ROWS;
+	private static final int TEMP = TARGET + 4 * SEGMENT_ROWS;
+	private static final int CODE = TEMP + 2 * SEGMENT_ROWS;
+	private static final int ICON = CODE + 2 * SEGMENT_ROWS;
+	private static final int SEGMENT_SIZE = ICON + SEGMENT_ROWS;
+
+	private final File mDir;
+	private final File mLocationFile;
+
+	private final List<String> mLocations;
+	private final Map<String, Integer> mLocationIds;
+
+	private final List<MappedByteBuffer> mSegments;
+
+	/**
+	 * Opens the archive in a directory, creating it if necessary.
+	 *
+	 * @param	dir	the directory holding the archive
+	 * @throws	IOException	if the archive cannot be opened
+	 */
+	public ForecastArchive(String dir) throws IOException {
+		mDir = new File(dir);
+
+		if (! mDir.isDirectory() && ! mDir.mkdirs())
+			throw new IOException("Cannot create archive directory " + dir);
+
+		mLocationFile = new File(mDir, "locations.txt");
+		mLocations = new ArrayList<>();
+		mLocationIds = new HashMap<>();
+
+		if (mLocationFile.isFile()) {
+			try (BufferedReader br = new BufferedReader(new FileReader(mLocationFile))) {
+				String line;
+
+				while ((line = br.readLine()) != null) {
+					mLocationIds.put(line, mLocations.size());
+					mLocations.add(line);
+				}
+			}
+		}
+
+		mSegments = new ArrayList<>();
+
+		for (int i = 0; segmentFile(i).isFile(); i++) {
+			MappedByteBuffer seg = map(segmentFile(i));
+
+			if (seg.getInt(0) != MAGIC)
+				throw new IOException("Invalid archive segment " + segmentFile(i));
+
+			mSegments.add(seg);
+		}
+	}
+
+	/**
+	 * Appends a refreshed forecast to the archive.
+	 *
+	 * @param	location	the location the forecast is for
+	 * @param	issued		when the forecast was fetched
+	 * @param	slots		the forecast records, ordered chronologically
+	 * @param	codes		the condition code of each record
+	 * @throws	IOException	if writing to the archive fails
+	 */
+	public synchronized void append(String location, LocalDateTime issued, List<Record> slots, List<WeatherData.ConditionCode> codes) throws IOException {
+		int loc = locationId(location);
+		int iss = minutes(issued);
+
+		MappedByteBuffer seg = null;
+
+		for (int i = 0; i < slots.size(); i++) {
+			if (seg == null || seg.getInt(4) == SEGMENT_ROWS) {
+				if (seg != null)
+					seg.force();
+
+				seg = writableSegment();
+			}
+
+			Record r = slots.get(i);
+
+			int row = seg.getInt(4);
+			int target = minutes(r.getTimeStamp());
+
+			seg.putInt(LOCATION + 4 * row, loc);
+			seg.putInt(ISSUED + 4 * row, iss);
+			seg.putInt(TARGET + 4 * row, target);
+			seg.putShort(TEMP + 2 * row, (short) r.getTemp());
+			seg.putShort(CODE + 2 * row, (short) codes.get(i).getId());
+			seg.put(ICON + row, (byte) r.getIcon().ordinal());
+
+			if (row == 0 || target < seg.getInt(8))
+				seg.putInt(8, target);
+
+			if (row == 0 || target > seg.getInt(12))
+				seg.putInt(12, target);
+
+			// The count goes last, so a row is never visible half-written
+			seg.putInt(4, row + 1);
+		}
+
+		if (seg != null)
+			seg.force();
+	}
+
+	/**
+	 * Scans for archived forecasts for a location, with target times in a
+	 * range, passing each one to a consumer. Rows are visited in the order
+	 * they were archived.
+	 *
+	 * @param	location	the location
+	 * @param	from		the earliest target time (inclusive)
+	 * @param	to			the latest target time (exclusive)
+	 * @param	consumer	receives each matching forecast
+	 */
+	public synchronized void scan(String location, LocalDateTime from, LocalDateTime to, Consumer<ArchivedForecast> consumer) {
+		Integer loc = mLocationIds.get(location);
+
+		if (loc == null)
+			return;
+
+		int lo = minutes(from);
+		int hi = minutes(to);
+
+		Icon[] icons = Icon.values();
+
+		for (MappedByteBuffer seg : mSegments) {
+			int rows = seg.getInt(4);
+
+			// Skip segments whose targets are all out of range
+			if (rows == 0 || seg.getInt(12) < lo || seg.getInt(8) >= hi)
+				continue;
+
+			for (int row = 0; row < rows; row++) {
+				if (seg.getInt(LOCATION + 4 * row) != loc)
+					continue;
+
+				int target = seg.getInt(TARGET + 4 * row);
+
+				if (target < lo || target >= hi)
+					continue;
+
+				consumer.accept(new ArchivedForecast(location,
+						time(seg.getInt(ISSUED + 4 * row)),
+						time(target),
+						seg.getShort(TEMP + 2 * row),
+						icons[seg.get(ICON + row)],
+						WeatherData.ConditionCode.valueof(seg.getShort(CODE + 2 * row))));
+			}
+		}
+	}
+
+	/**
+	 * Gets archived forecasts for a location, with target times in a range.
+	 *
+	 * @param	location	the location
+	 * @param	from		the earliest target time (inclusive)
+	 * @param	to			the latest target time (exclusive)
+	 * @return	matching forecasts, in the order they were archived
+	 */
+	public List<ArchivedForecast> query(String location, LocalDateTime from, LocalDateTime to) {
+		List<ArchivedForecast> result = new ArrayList<>();
+
+		scan(location, from, to, result::add);
+
+		return result;
+	}
+
+	/**
+	 * Gets every prediction made for one forecast slot, oldest first.
+	 * Useful for seeing how the forecast for a time changed as it approached.
+	 *
+	 * @param	location	the location
+	 * @param	target		the time stamp of the forecast slot
+	 * @return	forecasts for that slot, in the order they were issued
+	 */
+	public List<ArchivedForecast> predictionsFor(String location, LocalDateTime target) {
+		return query(location, target, target.plusMinutes(1));
+	}
+
+	/**
+	 * Gets the total number of rows in the archive.
+	 *
+	 * @return	number of rows
+	 */
+	public synchronized long size() {
+		long n = 0;
+
+		for (MappedByteBuffer seg : mSegments)
+			n += seg.getInt(4);
+
+		return n;
+	}
+
+	// Gets the ID of a location, adding it to the location file if it is new
+	private int locationId(String location) throws IOException {
+		Integer id = mLocationIds.get(location);
+
+		if (id != null)
+			return id;
+
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(mLocationFile, true))) {
+			bw.write(location);
+			bw.newLine();
+		}
+
+		id = mLocations.size();
+		mLocations.add(location);
+		mLocationIds.put(location, id);
+
+		return id;
+	}
+
+	// The last segment, or a new one if it is full
+	private MappedByteBuffer writableSegment() throws IOException {
+		if (! mSegments.isEmpty()) {
+			MappedByteBuffer last = mSegments.get(mSegments.size() - 1);
+
+			if (last.getInt(4) < SEGMENT_ROWS)
+				return last;
+		}
+
+		MappedByteBuffer seg = map(segmentFile(mSegments.size()));
+		seg.putInt(0, MAGIC);
+		seg.putInt(4, 0);
+
+		mSegments.add(seg);
+
+		return seg;
+	}
+
+	private File segmentFile(int i) {
+		return new File(mDir, String.format("segment-%05d.dat", i));
+	}
+
+	// The mapping stays valid after the channel is closed
+	private static MappedByteBuffer map(File f) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(f, "rw");
+				FileChannel ch = raf.getChannel()) {
+			return ch.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+		}
+	}
+
+	private static int minutes(LocalDateTime t) {
+		return (int) (t.toEpochSecond(ZoneOffset.UTC) / 60);
+	}
+
+	private static LocalDateTime time(int minutes) {
+		return LocalDateTime.ofEpochSecond(minutes * 60L, 0, ZoneOffset.UTC);
+	}
+}
@@ -0,0 +1,23 @@
+package InteractionDesign.Group3;
+
+/**
+ * Receives a forecast response piece by piece, as it is decoded.
+ * Entries arrive in the order the API sends them. The city's coordinates may
+ * arrive before or after the entries, or not at all.
+ */
+public interface ForecastHandler {
+	/**
+	 * Called when the city's coordinates have been decoded.
+	 *
+	 * @param	lat	latitude in degrees
+	 * @param	lon	longitude in degrees
+	 */
+	void city(double lat, double lon);
+
+	/**
+	 * Called as each forecast entry is decoded.
+	 *
+	 * @param	wf	the forecast entry, without coordinates
+	 */
+	void entry(WeatherForecast wf);
+}
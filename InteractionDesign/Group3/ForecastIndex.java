@@ -0,0 +1,169 @@
+package InteractionDesign.Group3;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A time-sorted index over every slot of the 5 day forecast.
+ * Each record covers the 3 hours starting at its time stamp. Lookups by time
+ * range use binary search, so finding the slots for an interval is
+ * logarithmic in the length of the forecast, and ranges may span midnight or
+ * several days.
+ * The index is immutable; a new one is built on each refresh.
+ */
+public class ForecastIndex {
+	/**
+	 * The length of time each forecast record covers, in hours
+	 */
+	public static final int SLOT_HOURS = 3;
+
+	private final Record[] mSlots;
+	private final long[] mKeys;		// Time stamps as seconds, for cheap comparison
+
+	/**
+	 * Builds an index over a forecast, as returned by getThisWeek.
+	 *
+	 * @param	week	the forecast for each day
+	 */
+	public ForecastIndex(List<List<Record>> week) {
+		List<Record> all = new ArrayList<>();
+
+		for (List<Record> day : week)
+			all.addAll(day);
+
+		mSlots = all.toArray(new Record[all.size()]);
+		Arrays.sort(mSlots);
+
+		mKeys = new long[mSlots.length];
+
+		for (int i = 0; i < mSlots.length; i++)
+			mKeys[i] = key(mSlots[i].getTimeStamp());
+	}
+
+	/**
+	 * Gets the forecast slots which overlap an interval.
+	 * A slot overlaps if any part of its 3 hours falls between from
+	 * (inclusive) and to (exclusive). The list is ordered chronologically and
+	 * is empty if the interval lies outside the forecast.
+	 *
+	 * @param	from	the start of the interval
+	 * @param	to		the end of the interval
+	 * @return	the slots covering the interval
+	 */
+	public List<Record> range(LocalDateTime from, LocalDateTime to) {
+		int lo = search(key(from.minusHours(SLOT_HOURS)) + 1);
+		int hi = search(key(to));
+
+		return slots(lo, Math.max(lo, hi));
+	}
+
+	/**
+	 * Gets the first slots of the forecast.
+	 *
+	 * @param	n	the maximum number of slots to return
+	 * @return	up to n slots, ordered chronologically
+	 */
+	public List<Record> first(int n) {
+		return slots(0, Math.min(n, mSlots.length));
+	}
+
+	/**
+	 * Gets the lowest temperature forecast during an interval.
+	 *
+	 * @param	from	the start of the interval
+	 * @param	to		the end of the interval
+	 * @return	the lowest temperature, in degrees Celcius
+	 * @throws	IllegalArgumentException	if the interval lies outside the forecast
+	 */
+	public int minTemp(LocalDateTime from, LocalDateTime to) {
+		List<Record> slots = nonEmptyRange(from, to);
+
+		int min = Integer.MAX_VALUE;
+
+		for (Record r : slots)
+			min = Math.min(min, r.getTemp());
+
+		return min;
+	}
+
+	/**
+	 * Gets the highest temperature forecast during an interval.
+	 *
+	 * @param	from	the start of the interval
+	 * @param	to		the end of the interval
+	 * @return	the highest temperature, in degrees Celcius
+	 * @throws	IllegalArgumentException	if the interval lies outside the forecast
+	 */
+	public int maxTemp(LocalDateTime from, LocalDateTime to) {
+		List<Record> slots = nonEmptyRange(from, to);
+
+		int max = Integer.MIN_VALUE;
+
+		for (Record r : slots)
+			max = Math.max(max, r.getTemp());
+
+		return max;
+	}
+
+	/**
+	 * Gets the start of the first slot in the forecast, or null if it is empty.
+	 *
+	 * @return	start of the forecast horizon
+	 */
+	public LocalDateTime getStart() {
+		return mSlots.length == 0 ? null : mSlots[0].getTimeStamp();
+	}
+
+	/**
+	 * Gets the end of the last slot in the forecast, or null if it is empty.
+	 *
+	 * @return	end of the forecast horizon
+	 */
+	public LocalDateTime getEnd() {
+		return mSlots.length == 0 ? null : mSlots[mSlots.length - 1].getTimeStamp().plusHours(SLOT_HOURS);
+	}
+
+	/**
+	 * Gets the number of slots in the forecast.
+	 *
+	 * @return	number of slots
+	 */
+	public int size() {
+		return mSlots.length;
+	}
+
+	private List<Record> nonEmptyRange(LocalDateTime from, LocalDateTime to) {
+		List<Record> slots = range(from, to);
+
+		if (slots.isEmpty())
+			throw new IllegalArgumentException("No forecast between " + from + " and " + to);
+
+		return slots;
+	}
+
+	// Index of the first slot with a key at least k
+	private int search(long k) {
+		int i = Arrays.binarySearch(mKeys, k);
+
+		if (i < 0)
+			return -i - 1;
+
+		// Keys are unique, but walk back in case of duplicates
+		while (i > 0 && mKeys[i - 1] == k)
+			i--;
+
+		return i;
+	}
+
+	private List<Record> slots(int from, int to) {
+		return Collections.unmodifiableList(Arrays.asList(mSlots).subList(from, to));
+	}
+
+	private static long key(LocalDateTime t) {
+		return t.toEpochSecond(ZoneOffset.UTC);
+	}
+}
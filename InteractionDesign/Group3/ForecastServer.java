@@ -0,0 +1,242 @@
+package InteractionDesign.Group3;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a cache's snapshots to clients over HTTP, in the binary format of
+ * BinarySnapshotFormat:
+ *	"GET /forecast?q=[location]"	answered with the encoded snapshot
+ * Each answer carries the snapshot's ETag. A client which sends it back in
+ * If-None-Match is answered 304 Not Modified, with no body, until the
+ * location is refreshed. Nothing is serialised per request: every request
+ * for the same refresh is sent the same bytes.
+ */
+public class ForecastServer {
+	/**
+	 * The content type of the encoded snapshots
+	 */
+	public static final String CONTENT_TYPE = "application/x-weatherapp-snapshot";
+
+	private static final long TIMEOUT = 10000;		// In milliseconds
+
+	private final WeatherCache mCache;
+	private final HttpServer mServer;
+
+	private final AtomicLong mRequests = new AtomicLong();
+	private final AtomicLong mNotModified = new AtomicLong();
+	private final AtomicLong mBytesSent = new AtomicLong();
+
+	/**
+	 * Constructs a server listening on the loopback interface.
+	 * Call start before making requests.
+	 *
+	 * @param	cache	the cache to serve
+	 * @param	port	the port, or 0 for any free port
+	 * @throws	IOException	if the port can't be bound
+	 */
+	public ForecastServer(WeatherCache cache, int port) throws IOException {
+		mCache = cache;
+
+		mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		mServer.createContext("/forecast", this::handle);
+		mServer.setExecutor(Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "forecast-server");
+			t.setDaemon(true);
+			return t;
+		}));
+	}
+
+	/**
+	 * Starts serving requests.
+	 */
+	public void start() {
+		mServer.start();
+	}
+
+	/**
+	 * Stops serving requests.
+	 */
+	public void stop() {
+		mServer.stop(0);
+	}
+
+	/**
+	 * Gets the URL of the forecast endpoint, to add "?q=[location]" to.
+	 *
+	 * @return	URL of the endpoint
+	 */
+	public String getURL() {
+		return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/forecast";
+	}
+
+	/**
+	 * Gets the number of requests received.
+	 *
+	 * @return	number of requests
+	 */
+	public long getRequests() {
+		return mRequests.get();
+	}
+
+	/**
+	 * Gets the number of requests answered 304, as the client was up to date.
+	 *
+	 * @return	number of requests not sent a body
+	 */
+	public long getNotModified() {
+		return mNotModified.get();
+	}
+
+	/**
+	 * Gets the number of snapshot bytes sent, not counting headers.
+	 *
+	 * @return	number of bytes
+	 */
+	public long getBytesSent() {
+		return mBytesSent.get();
+	}
+
+	private void handle(HttpExchange ex) throws IOException {
+		mRequests.incrementAndGet();
+
+		if (! ex.getRequestMethod().equals("GET")) {
+			error(ex, 405, "Only GET is supported");
+			return;
+		}
+
+		String location = location(ex);
+
+		if (location == null) {
+			error(ex, 400, "No location given");
+			return;
+		}
+
+		EncodedSnapshot e;
+
+		try {
+			e = mCache.getEncoded(location).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+		} catch (ExecutionException x) {
+			error(ex, 502, x.getCause().getMessage());
+			return;
+
+		} catch (TimeoutException x) {
+			error(ex, 504, "Timed out waiting for the weather service");
+			return;
+
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+			error(ex, 503, "Shutting down");
+			return;
+		}
+
+		ex.getResponseHeaders().set("ETag", e.getETag());
+		// Clients may keep it, but must check it's still current
+		ex.getResponseHeaders().set("Cache-Control", "no-cache");
+
+		if (e.matches(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+			mNotModified.incrementAndGet();
+			ex.sendResponseHeaders(304, -1);
+			ex.close();
+			return;
+		}
+
+		ex.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		ex.sendResponseHeaders(200, e.getLength());
+
+		try (OutputStream out = ex.getResponseBody()) {
+			e.writeTo(out);
+		}
+
+		mBytesSent.addAndGet(e.getLength());
+	}
+
+	private static void error(HttpExchange ex, int status, String message) throws IOException {
+		byte[] bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+
+		ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		ex.sendResponseHeaders(status, bytes.length);
+
+		try (OutputStream out = ex.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	// The q parameter, or null if there isn't one
+	private static String location(HttpExchange ex) {
+		String query = ex.getRequestURI().getQuery();
+
+		if (query != null) {
+			for (String param : query.split("&")) {
+				if (param.startsWith("q=") && param.length() > 2)
+					return param.substring(2);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Runs a server until "quit" (or the end of input) is typed; "stats"
+	 * prints its counts.
+	 *
+	 * Usage: ForecastServer [port] [data directory] [--stub]
+	 * With --stub, the cache fetches from a local stub API.
+	 *
+	 * @param	args	as above
+	 */
+	public static void main(String[] args) throws APIException, CacheException, IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: ForecastServer [port] [data directory] [--stub]");
+			return;
+		}
+
+		StubServer stub = null;
+		APIClient client;
+
+		if (args.length > 2 && args[2].equals("--stub")) {
+			stub = new StubServer(0);
+			stub.setLatency(100);
+			stub.start();
+
+			client = new APIClient(stub.getURL(), new RequestScheduler(60, 600, 8),
+					new CircuitBreaker(20, 5, 0.5, 3000, 30000));
+		} else {
+			client = new APIClient();
+		}
+
+		WeatherCache cache = new WeatherCache(client, args[1]);
+
+		ForecastServer server = new ForecastServer(cache, Integer.parseInt(args[0]));
+		server.start();
+
+		System.out.println("Serving " + server.getURL() + "?q=[location]");
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+
+		while ((line = in.readLine()) != null && ! line.trim().equals("quit")) {
+			if (line.trim().equals("stats"))
+				System.out.println("requests " + server.getRequests() + ", not modified " + server.getNotModified()
+						+ ", bytes sent " + server.getBytesSent());
+		}
+
+		server.stop();
+
+		if (stub != null)
+			stub.stop();
+	}
+}
@@ -0,0 +1,164 @@
+package InteractionDesign.Group3;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Estimates how often each of any number of keys has been seen, in fixed
+ * memory: a count-min sketch. Each key increments one counter in each of 4
+ * rows, chosen by a different hash per row; its estimate is the smallest of
+ * the 4, which can only overestimate, and rarely by much while the sketch is
+ * wider than the number of popular keys.
+ *
+ * Once as many keys have been added as 10 times the width, every counter is
+ * halved, so keys popular long ago give way to keys popular now.
+ */
+public class FrequencySketch {
+	private static final int VERSION = 1;
+	private static final int DEPTH = 4;
+
+	private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+			0xD6E8FEB86659FD93L};
+
+	private final int mWidth;		// A power of 2
+	private final int[] mCounters;	// DEPTH rows of mWidth
+
+	private int mAdditions = 0;		// Since counters were last halved
+	private long mTotal = 0;		// Ever
+
+	/**
+	 * Constructs an empty sketch.
+	 *
+	 * @param	width	counters per row, rounded up to a power of 2; 4 bytes each
+	 */
+	public FrequencySketch(int width) {
+		mWidth = Integer.highestOneBit(Math.max(2, width) * 2 - 1);
+		mCounters = new int[DEPTH * mWidth];
+	}
+
+	/**
+	 * Loads a sketch saved by save.
+	 *
+	 * @param	file	the file
+	 * @return	the sketch
+	 * @throws	IOException	if the file can't be read, or wasn't saved by this version
+	 */
+	public static FrequencySketch load(String file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(Paths.get(file))))) {
+			if (in.readInt() != VERSION)
+				throw new IOException("Unknown frequency sketch version");
+
+			int width = in.readInt();
+
+			if (width < 2 || Integer.bitCount(width) != 1)
+				throw new IOException("Invalid frequency sketch");
+
+			FrequencySketch sketch = new FrequencySketch(width);
+			sketch.mAdditions = in.readInt();
+			sketch.mTotal = in.readLong();
+
+			for (int i = 0; i < sketch.mCounters.length; i++)
+				sketch.mCounters[i] = in.readInt();
+
+			return sketch;
+		}
+	}
+
+	/**
+	 * Saves the sketch, replacing the file in one step so it is never seen
+	 * half written.
+	 *
+	 * @param	file	the file
+	 * @throws	IOException	if the file can't be written
+	 */
+	public void save(String file) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + mCounters.length * 4);
+
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			synchronized (this) {
+				out.writeInt(VERSION);
+				out.writeInt(mWidth);
+				out.writeInt(mAdditions);
+				out.writeLong(mTotal);
+
+				for (int c : mCounters)
+					out.writeInt(c);
+			}
+		}
+
+		Path target = Paths.get(file);
+		Path tmp = Paths.get(file + ".tmp");
+
+		Files.write(tmp, bytes.toByteArray());
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Counts one sighting of a key.
+	 *
+	 * @param	key	the key
+	 */
+	public synchronized void increment(String key) {
+		int h = key.hashCode();
+
+		for (int row = 0; row < DEPTH; row++) {
+			int i = index(h, row);
+
+			if (mCounters[i] < Integer.MAX_VALUE)
+				mCounters[i]++;
+		}
+
+		mTotal++;
+
+		if (++mAdditions >= 10 * mWidth)
+			halve();
+	}
+
+	/**
+	 * Estimates how often a key has been seen, recent sightings counting most.
+	 *
+	 * @param	key	the key
+	 * @return	the estimate, which may be too high but never too low
+	 */
+	public synchronized int estimate(String key) {
+		int h = key.hashCode();
+		int min = Integer.MAX_VALUE;
+
+		for (int row = 0; row < DEPTH; row++)
+			min = Math.min(min, mCounters[index(h, row)]);
+
+		return min;
+	}
+
+	/**
+	 * Gets the number of sightings ever counted.
+	 *
+	 * @return	number of sightings
+	 */
+	public synchronized long getTotal() {
+		return mTotal;
+	}
+
+	private void halve() {
+		for (int i = 0; i < mCounters.length; i++)
+			mCounters[i] >>>= 1;
+
+		mAdditions /= 2;
+	}
+
+	// The key's counter in a row: the hash, seeded for the row and mixed
+	private int index(int h, int row) {
+		long x = (h ^ SEEDS[row]) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 31)) * 0x94D049BB133111EBL;
+		x ^= x >>> 31;
+
+		return row * mWidth + ((int) x & (mWidth - 1));
+	}
+}
@@ -0,0 +1,99 @@
+package InteractionDesign.Group3;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Assigns keys to nodes by consistent hashing. Each node is placed at many
+ * points around a ring of hashes, and a key belongs to the first node point
+ * at or after the key's hash. Adding or removing a node only moves the keys
+ * between its points and the points before them, about 1/n of all keys.
+ */
+public class HashRing {
+	// Points per node, so keys are spread evenly
+	private static final int VIRTUAL_NODES = 100;
+
+	private final TreeMap<Long, String> mRing = new TreeMap<>();
+	private final Set<String> mNodes = new LinkedHashSet<>();
+
+	/**
+	 * Adds a node, if it isn't already on the ring.
+	 *
+	 * @param	node	the node's name
+	 * @return	true if the node was added
+	 */
+	public synchronized boolean add(String node) {
+		if (! mNodes.add(node))
+			return false;
+
+		for (int i = 0; i < VIRTUAL_NODES; i++)
+			mRing.put(hash(node + "#" + i), node);
+
+		return true;
+	}
+
+	/**
+	 * Removes a node, if it is on the ring.
+	 *
+	 * @param	node	the node's name
+	 * @return	true if the node was removed
+	 */
+	public synchronized boolean remove(String node) {
+		if (! mNodes.remove(node))
+			return false;
+
+		for (int i = 0; i < VIRTUAL_NODES; i++)
+			mRing.remove(hash(node + "#" + i), node);
+
+		return true;
+	}
+
+	/**
+	 * Gets the node a key belongs to.
+	 *
+	 * @param	key	the key, eg. a location string
+	 * @return	the node's name, or null if the ring is empty
+	 */
+	public synchronized String owner(String key) {
+		if (mRing.isEmpty())
+			return null;
+
+		Map.Entry<Long, String> e = mRing.ceilingEntry(hash(key));
+
+		return e == null ? mRing.firstEntry().getValue() : e.getValue();
+	}
+
+	/**
+	 * Gets the nodes on the ring.
+	 *
+	 * @return	the nodes, in the order they were added
+	 */
+	public synchronized List<String> getNodes() {
+		return new ArrayList<>(mNodes);
+	}
+
+	// First 8 bytes of the MD5 hash, which spreads similar names well
+	private static long hash(String s) {
+		try {
+			byte[] d = MessageDigest.getInstance("MD5").digest(s.getBytes(StandardCharsets.UTF_8));
+
+			long h = 0;
+
+			for (int i = 0; i < 8; i++)
+				h = (h << 8) | (d[i] & 0xff);
+
+			return h;
+
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has MD5
+			throw new IllegalStateException(e);
+		}
+	}
+}
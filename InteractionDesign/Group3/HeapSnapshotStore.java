@@ -0,0 +1,28 @@
+package InteractionDesign.Group3;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps snapshots on the heap, as they are.
+ * Fastest to read, but every record is an object for the garbage collector
+ * to trace; see OffHeapSnapshotStore for thousands of locations.
+ */
+public class HeapSnapshotStore implements SnapshotStore {
+	private final Map<String, Snapshot> mSnapshots = new ConcurrentHashMap<>();
+
+	@Override
+	public Snapshot get(String location) {
+		return mSnapshots.get(location);
+	}
+
+	@Override
+	public void put(Snapshot s) {
+		mSnapshots.put(s.getLocation(), s);
+	}
+
+	@Override
+	public int size() {
+		return mSnapshots.size();
+	}
+}
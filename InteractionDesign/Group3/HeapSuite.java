@@ -0,0 +1,243 @@
+package InteractionDesign.Group3;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * A class used for testing purposes only.
+ * Measures the heap the core data structures retain, and how much each
+ * common call allocates, and fails if any has grown past its threshold:
+ *	suggester.retained		SearchSuggester over data/cityList.txt
+ *	snapshot.retained		WeatherCache, per stored location
+ *	getSuggestions.allocated	per call, on the calling thread
+ *	getItems.allocated		per call, on the calling thread
+ *	refresh.allocated		per refresh from a local stub API, on every
+ *				thread but the stub's
+ * Garbage collections during each run of calls are reported too, but not
+ * checked, as they depend on the size of the heap.
+ *
+ * Thresholds are kept in data/heapThresholds.properties, in bytes. With
+ * --record, the file is rewritten with a quarter's headroom over what was
+ * measured, which should be done whenever a change is meant to grow them.
+ * Exits with status 1 if a threshold is exceeded.
+ *
+ * Usage: HeapSuite [locations, default 1000] [--record]
+ */
+public class HeapSuite {
+	private static final String THRESHOLDS = "data/heapThresholds.properties";
+	private static final double HEADROOM = 1.25;
+
+	private static final int WARM_UP = 2000;
+	private static final int CALLS = 20000;
+	private static final int REFRESHES = 100;
+
+	private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// Kept reachable while their heap is measured
+	private static Object sKeep;
+
+	public static void main(String[] args) throws Exception {
+		int n = 1000;
+		boolean record = false;
+
+		for (String arg : args) {
+			if (arg.equals("--record"))
+				record = true;
+			else
+				n = Integer.parseInt(arg);
+		}
+
+		if (! THREADS.isThreadAllocatedMemorySupported()) {
+			System.out.println("This JVM can't measure allocation per thread");
+			System.exit(1);
+		}
+
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+
+		Map<String, Long> measured = new LinkedHashMap<>();
+
+		// Retained heap
+
+		long base = usedHeap();
+		SearchSuggester suggester = new SearchSuggester("data/cityList.txt");
+		sKeep = suggester;
+		measured.put("suggester.retained", usedHeap() - base);
+
+		StubServer stub = new StubServer(0);
+		stub.start();
+
+		Path dir = Files.createTempDirectory("weatherapp");
+		Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+		APIClient client = new APIClient(stub.getURL(), new RequestScheduler(1000, 600000, 8),
+				new CircuitBreaker(50, 20, 0.5, 1000, 5000));
+
+		WeatherCache cache = new WeatherCache(client, dir.toString());
+
+		base = usedHeap();
+
+		for (Snapshot s : SnapshotStoreBenchmark.makeSnapshots(n))
+			cache.offer(s);
+
+		measured.put("snapshot.retained", (usedHeap() - base) / n);
+
+		// Allocation per call
+
+		List<String> prefixes = prefixes(suggester.getCities());
+
+		measured.put("getSuggestions.allocated", allocated("getSuggestions", CALLS, false,
+				i -> suggester.getSuggestions(prefixes.get(i % prefixes.size()))));
+
+		cache.setLocation("Cambridge, GB");
+
+		LocalTime start = LocalTime.of(8, 0);
+		LocalTime fin = LocalTime.of(9, 0);
+
+		measured.put("getItems.allocated", allocated("getItems", CALLS, false, i -> cache.getItems(start, fin)));
+
+		// Every setLocation refreshes, moving between two locations
+		cache.setMaxAge(Duration.ZERO);
+
+		measured.put("refresh.allocated", allocated("refresh", REFRESHES, true,
+				i -> cache.setLocation(i % 2 == 0 ? "London, GB" : "Cambridge, GB")));
+
+		stub.stop();
+
+		// Compare with, or record, the thresholds
+
+		Properties thresholds = new Properties();
+
+		if (record) {
+			for (Map.Entry<String, Long> e : measured.entrySet())
+				thresholds.setProperty(e.getKey(), Long.toString((long) (e.getValue() * HEADROOM)));
+
+			try (OutputStream out = new FileOutputStream(THRESHOLDS)) {
+				thresholds.store(out, "HeapSuite thresholds, in bytes, recorded with " + n + " locations");
+			}
+
+			System.out.println("Recorded thresholds in " + THRESHOLDS);
+			System.exit(0);
+		}
+
+		try (InputStream in = new FileInputStream(THRESHOLDS)) {
+			thresholds.load(in);
+
+		} catch (IOException e) {
+			System.out.println("No thresholds in " + THRESHOLDS + ", run with --record to make them");
+			System.exit(1);
+		}
+
+		boolean failed = false;
+
+		for (Map.Entry<String, Long> e : measured.entrySet()) {
+			String t = thresholds.getProperty(e.getKey());
+			boolean ok = t == null || e.getValue() <= Long.parseLong(t.trim());
+
+			System.out.println(String.format("%-26s %10d bytes  threshold %10s  %s", e.getKey(), e.getValue(),
+					t == null ? "none" : t.trim(), ok ? "ok" : "FAILED"));
+
+			failed = failed || ! ok;
+		}
+
+		System.exit(failed ? 1 : 0);
+	}
+
+	// A call measured by allocated
+	private interface Call {
+		void run(int i) throws Exception;
+	}
+
+	// Bytes allocated per call, after warming up, by this thread only or
+	// by every thread but the stub's
+	private static long allocated(String name, int calls, boolean allThreads, Call call) throws Exception {
+		for (int i = 0; i < Math.min(WARM_UP, calls); i++)
+			call.run(i);
+
+		long[] gc1 = gcStats();
+		long before = allThreads ? allocatedByApp() : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long t1 = System.nanoTime();
+
+		for (int i = 0; i < calls; i++)
+			call.run(i);
+
+		long t2 = System.nanoTime();
+		long after = allThreads ? allocatedByApp() : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long[] gc2 = gcStats();
+
+		long perCall = (after - before) / calls;
+
+		System.out.println(name + ": " + perCall + " bytes allocated and " + (t2 - t1) / calls / 1000 + "us per call, "
+				+ (gc2[0] - gc1[0]) + " collections (" + (gc2[1] - gc1[1]) + "ms) in " + calls + " calls");
+
+		return perCall;
+	}
+
+	// Allocated by every live thread but the stub API's
+	// Threads which end in between are missed, but the pools keep theirs
+	private static long allocatedByApp() {
+		long total = 0;
+
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (! t.getName().startsWith("stub") && ! t.getName().equals("HTTP-Dispatcher")) {
+				long bytes = THREADS.getThreadAllocatedBytes(t.getId());
+
+				if (bytes > 0)
+					total += bytes;
+			}
+		}
+
+		return total;
+	}
+
+	// What a user types: the first 1 to 4 letters of random cities
+	private static List<String> prefixes(List<String> cities) {
+		Random random = new Random(1);
+		List<String> result = new ArrayList<>();
+
+		for (int i = 0; i < 1000; i++) {
+			String city = cities.get(random.nextInt(cities.size()));
+			result.add(city.substring(0, Math.min(city.length(), 1 + random.nextInt(4))));
+		}
+
+		return result;
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+
+		Runtime rt = Runtime.getRuntime();
+
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	// Collection count and time, over all collectors
+	private static long[] gcStats() {
+		long[] stats = new long[2];
+
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			stats[0] += gc.getCollectionCount();
+			stats[1] += gc.getCollectionTime();
+		}
+
+		return stats;
+	}
+}
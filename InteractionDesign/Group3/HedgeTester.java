@@ -0,0 +1,66 @@
+package InteractionDesign.Group3;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A class used for testing purposes only
+ * Runs requests against two local stub providers: a fast one with a long
+ * latency tail, and a slower but steady one. Compares request latency using
+ * only the first with hedging across both.
+ */
+public class HedgeTester {
+	private static final int REQUESTS = 300;
+	// Requests before measuring, so providers have latency statistics
+	private static final int WARM_UP = 50;
+
+	public static void main(String[] args) throws IOException {
+		StubServer fast = new StubServer(0);
+		fast.setLatency(40);
+		fast.setTailLatency(1500, 0.04);
+		fast.start();
+
+		StubServer steady = new StubServer(0);
+		steady.setLatency(120);
+		steady.start();
+
+		run("Fast only", Arrays.asList(new WeatherProvider("fast", fast.getURL(), null)));
+
+		run("Hedged", Arrays.asList(new WeatherProvider("fast", fast.getURL(), null),
+				new WeatherProvider("steady", steady.getURL(), null)));
+
+		fast.stop();
+		steady.stop();
+	}
+
+	private static void run(String name, List<WeatherProvider> providers) throws IOException {
+		APIClient client = new APIClient(providers, new RequestScheduler(1000, 60000, 8),
+				new CircuitBreaker(20, 5, 0.5, 3000, 30000));
+
+		for (int i = 0; i < WARM_UP; i++)
+			client.currentWeatherAtCity("Cambridge, GB");
+
+		long[] times = new long[REQUESTS];
+
+		for (int i = 0; i < REQUESTS; i++) {
+			long t1 = System.nanoTime();
+
+			client.currentWeatherAtCity("Cambridge, GB");
+
+			times[i] = System.nanoTime() - t1;
+		}
+
+		Arrays.sort(times);
+
+		System.out.println(name);
+		System.out.println("  p50 " + times[REQUESTS / 2] / 1000000 + "ms, p95 " + times[REQUESTS * 95 / 100] / 1000000
+				+ "ms, p99 " + times[REQUESTS * 99 / 100] / 1000000 + "ms, max " + times[REQUESTS - 1] / 1000000 + "ms");
+		System.out.println("  hedged " + client.getHedged());
+
+		for (WeatherProvider p : providers) {
+			System.out.println("  " + p.getName() + ": " + p.getRequests() + " requests, " + p.getWins() + " used, p95 "
+					+ p.getPercentile(0.95) + "ms");
+		}
+	}
+}
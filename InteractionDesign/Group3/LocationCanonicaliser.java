@@ -0,0 +1,119 @@
+package InteractionDesign.Group3;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the many ways of writing a location to one canonical location
+ * string from the city list, so equivalent queries share one cache entry and
+ * one API call. "Cambridge, GB", "cambridge,gb", "CAMBRIDGE GB" and, with a
+ * city index, Cambridge's openweathermap ID all resolve to "Cambridge, GB".
+ * The ID of a city sharing its name with another stays an ID.
+ * A city name alone resolves only if one city in the list has it, so
+ * "Springfield" isn't taken to be any particular Springfield.
+ *
+ * Every lookup is one hash of a normalised key.
+ */
+public class LocationCanonicaliser {
+	// Canonical locations, by key: lower case, without spaces, eg. "cambridge,gb"
+	private final Map<String, String> mByKey = new HashMap<>();
+	// Canonical locations, by key of the city name alone, for names of one city
+	private final Map<String, String> mByName = new HashMap<>();
+
+	// Resolves city IDs, or null if there is no city index
+	private volatile CityIndex mIndex;
+
+	/**
+	 * Constructs a canonicaliser for a list of cities.
+	 *
+	 * @param	cities	locations, in the form "[city name], [ISO 3166 country code]"
+	 */
+	public LocationCanonicaliser(Iterable<String> cities) {
+		Set<String> shared = new HashSet<>();
+
+		for (String city : cities) {
+			mByKey.putIfAbsent(key(city), city);
+
+			int comma = city.lastIndexOf(',');
+
+			if (comma > 0 && mByName.putIfAbsent(key(city.substring(0, comma)), city) != null)
+				shared.add(key(city.substring(0, comma)));
+		}
+
+		mByName.keySet().removeAll(shared);
+	}
+
+	/**
+	 * Sets the city index used to resolve openweathermap city IDs.
+	 *
+	 * @param	index	the index, or null to not resolve IDs
+	 */
+	public void setIndex(CityIndex index) {
+		mIndex = index;
+	}
+
+	/**
+	 * Gets the canonical form of a location.
+	 *
+	 * @param	location	a location as a user might write it, or a city ID
+	 * @return	the canonical location string, or if the location isn't known, the location with spaces tidied
+	 */
+	public String canonicalise(String location) {
+		String tidy = location.trim().replaceAll("\\s+", " ");
+		String key = key(tidy);
+
+		String canonical = mByKey.get(key);
+
+		if (canonical != null)
+			return canonical;
+
+		// "Cambridge GB"
+		int space = tidy.lastIndexOf(' ');
+
+		if (tidy.indexOf(',') < 0 && space > 0 && tidy.length() - space == 3) {
+			canonical = mByKey.get(key(tidy.substring(0, space)) + "," + key(tidy.substring(space + 1)));
+
+			if (canonical != null)
+				return canonical;
+		}
+
+		// "Cambridge", if there's only one
+		canonical = mByName.get(key);
+
+		if (canonical != null)
+			return canonical;
+
+		// "2653941"
+		CityIndex index = mIndex;
+
+		if (index != null && ! tidy.isEmpty() && tidy.chars().allMatch(Character::isDigit)) {
+			try {
+				CityIndex.City city = index.get(Integer.parseInt(tidy));
+
+				if (city != null)
+					return index.getLocation(city);
+
+			} catch (NumberFormatException e) {
+				// Too long to be an ID
+			}
+		}
+
+		return tidy;
+	}
+
+	// Case and spacing don't matter
+	private static String key(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+
+			if (! Character.isWhitespace(c))
+				sb.append(Character.toLowerCase(c));
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,255 @@
+package InteractionDesign.Group3;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps snapshots outside the heap, in direct ByteBuffers, so that caching
+ * thousands of locations doesn't add millions of objects for the garbage
+ * collector to trace.
+ *
+ * Each location has a fixed-size record, found by the location's ID, in
+ * segments of 1024 records. Storing a snapshot overwrites the location's
+ * record in place. Reading one builds a Snapshot from the record, so objects
+ * only exist while a caller is using them.
+ *
+ * Labels aren't stored: each slot stores which day of the forecast it is in,
+ * and the label is worked out from that as the refresh did. Only the first
+ * 48 forecast slots are kept (the API sends 40).
+ */
+public class OffHeapSnapshotStore implements SnapshotStore {
+	/**
+	 * The most forecast slots stored for a location
+	 */
+	public static final int MAX_SLOTS = 48;
+
+	private static final int SEGMENT_RECORDS = 1024;
+
+	// Record layout. Times are seconds (as if UTC) then nanoseconds, with
+	// nanoseconds of -1 for null
+	private static final int LAST_UPDATED = 0;
+	private static final int SUNRISE = 12;
+	private static final int SUNSET = 24;
+	private static final int LATITUDE = 36;
+	private static final int LONGITUDE = 44;
+	private static final int SUMMARY_TIME = 52;
+	private static final int SUMMARY_TEMP = 64;
+	private static final int SUMMARY_ICON = 66;
+	private static final int WARNINGS = 67;			// Bit per warning, by ordinal
+	private static final int DAYS = 68;
+	private static final int SLOT_COUNT = 69;
+	private static final int SLOTS = 72;
+
+	// Slot layout: time stamp (minutes), temperature, icon, day
+	private static final int SLOT_SIZE = 8;
+
+	private static final int RECORD_SIZE = SLOTS + MAX_SLOTS * SLOT_SIZE;
+
+	private static final Icon[] ICONS = Icon.values();
+	private static final Warning[] WARNING_VALUES = Warning.values();
+
+	private final Map<String, Integer> mIds = new ConcurrentHashMap<>();
+	private final List<ByteBuffer> mSegments = new ArrayList<>();
+
+	// Readers share; a writer waits until no record is being read
+	private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+
+	// Of the times stored, for snapshots read back
+	private final ZoneId mZone;
+
+	/**
+	 * Constructs an empty store.
+	 *
+	 * @param	zone	the time zone of the snapshots' times, ie. of the cache's clock
+	 */
+	public OffHeapSnapshotStore(ZoneId zone) {
+		mZone = zone;
+	}
+
+	@Override
+	public Snapshot get(String location) {
+		Integer id = mIds.get(location);
+
+		if (id == null)
+			return null;
+
+		LocalDateTime lastUpdated;
+		LocalDateTime sunrise;
+		LocalDateTime sunset;
+		double lat;
+		double lon;
+		Record summary;
+		List<Warning> warnings = new ArrayList<>();
+		List<List<Record>> week = new ArrayList<>();
+
+		mLock.readLock().lock();
+
+		try {
+			ByteBuffer seg = mSegments.get(id / SEGMENT_RECORDS);
+			int base = (id % SEGMENT_RECORDS) * RECORD_SIZE;
+
+			lastUpdated = getTime(seg, base + LAST_UPDATED);
+			sunrise = getTime(seg, base + SUNRISE);
+			sunset = getTime(seg, base + SUNSET);
+			lat = seg.getDouble(base + LATITUDE);
+			lon = seg.getDouble(base + LONGITUDE);
+
+			summary = new Record(ICONS[seg.get(base + SUMMARY_ICON)], seg.getShort(base + SUMMARY_TEMP),
+					getTime(seg, base + SUMMARY_TIME));
+			summary.setLabel("Current");
+
+			int mask = seg.get(base + WARNINGS);
+
+			for (Warning w : WARNING_VALUES) {
+				if ((mask & (1 << w.ordinal())) != 0)
+					warnings.add(w);
+			}
+
+			int days = seg.get(base + DAYS);
+
+			for (int d = 0; d < days; d++)
+				week.add(new ArrayList<>());
+
+			int slots = seg.get(base + SLOT_COUNT);
+
+			for (int i = 0; i < slots; i++) {
+				int at = base + SLOTS + i * SLOT_SIZE;
+
+				LocalDateTime t = LocalDateTime.ofEpochSecond(seg.getInt(at) * 60L, 0, ZoneOffset.UTC);
+				int day = seg.get(at + 7);
+
+				Record r = new Record(ICONS[seg.get(at + 6)], seg.getShort(at + 4), t);
+				r.setLabel(label(day, t));
+
+				week.get(day).add(r);
+			}
+
+		} finally {
+			mLock.readLock().unlock();
+		}
+
+		return new Snapshot(location, lastUpdated, summary, week, warnings, sunrise, sunset, lat, lon, mZone);
+	}
+
+	@Override
+	public void put(Snapshot s) {
+		mLock.writeLock().lock();
+
+		try {
+			Integer id = mIds.get(s.getLocation());
+
+			if (id == null) {
+				id = mIds.size();
+
+				if (id / SEGMENT_RECORDS == mSegments.size())
+					mSegments.add(ByteBuffer.allocateDirect(SEGMENT_RECORDS * RECORD_SIZE));
+			}
+
+			ByteBuffer seg = mSegments.get(id / SEGMENT_RECORDS);
+			int base = (id % SEGMENT_RECORDS) * RECORD_SIZE;
+
+			putTime(seg, base + LAST_UPDATED, s.getLastUpdated());
+			putTime(seg, base + SUNRISE, s.getSunrise());
+			putTime(seg, base + SUNSET, s.getSunset());
+			seg.putDouble(base + LATITUDE, s.getLatitude());
+			seg.putDouble(base + LONGITUDE, s.getLongitude());
+
+			Record summary = s.getSummary();
+			putTime(seg, base + SUMMARY_TIME, summary.getTimeStamp());
+			seg.putShort(base + SUMMARY_TEMP, (short) summary.getTemp());
+			seg.put(base + SUMMARY_ICON, (byte) summary.getIcon().ordinal());
+
+			int mask = 0;
+
+			for (Warning w : s.getWarnings())
+				mask |= 1 << w.ordinal();
+
+			seg.put(base + WARNINGS, (byte) mask);
+
+			List<List<Record>> week = s.getThisWeek();
+			int slots = 0;
+
+			for (int d = 0; d < week.size(); d++) {
+				for (Record r : week.get(d)) {
+					if (slots == MAX_SLOTS)
+						break;
+
+					int at = base + SLOTS + slots * SLOT_SIZE;
+
+					seg.putInt(at, (int) (r.getTimeStamp().toEpochSecond(ZoneOffset.UTC) / 60));
+					seg.putShort(at + 4, (short) r.getTemp());
+					seg.put(at + 6, (byte) r.getIcon().ordinal());
+					seg.put(at + 7, (byte) d);
+
+					slots++;
+				}
+			}
+
+			seg.put(base + DAYS, (byte) week.size());
+			seg.put(base + SLOT_COUNT, (byte) slots);
+
+			// Only visible to readers once written
+			mIds.put(s.getLocation(), id);
+
+		} finally {
+			mLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		return mIds.size();
+	}
+
+	/**
+	 * Gets the number of bytes allocated outside the heap.
+	 *
+	 * @return	bytes allocated
+	 */
+	public long getCapacity() {
+		mLock.readLock().lock();
+
+		try {
+			return (long) mSegments.size() * SEGMENT_RECORDS * RECORD_SIZE;
+
+		} finally {
+			mLock.readLock().unlock();
+		}
+	}
+
+	// Labels slots as RefreshPipeline does
+	private static String label(int day, LocalDateTime t) {
+		switch (day) {
+			case 0: return "Today";
+			case 1: return "Tomorrow";
+
+			default:
+				String label = t.getDayOfWeek().toString();
+				return label.substring(0, 1) + label.substring(1).toLowerCase();
+		}
+	}
+
+	private static void putTime(ByteBuffer seg, int at, LocalDateTime t) {
+		if (t == null) {
+			seg.putLong(at, 0);
+			seg.putInt(at + 8, -1);
+		} else {
+			seg.putLong(at, t.toEpochSecond(ZoneOffset.UTC));
+			seg.putInt(at + 8, t.getNano());
+		}
+	}
+
+	private static LocalDateTime getTime(ByteBuffer seg, int at) {
+		int nanos = seg.getInt(at + 8);
+
+		return nanos < 0 ? null : LocalDateTime.ofEpochSecond(seg.getLong(at), nanos, ZoneOffset.UTC);
+	}
+}
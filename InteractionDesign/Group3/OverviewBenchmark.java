@@ -0,0 +1,117 @@
+package InteractionDesign.Group3;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class used for testing purposes only.
+ * Stores made-up snapshots of many locations in several countries, then
+ * compares reading a country for a dashboard with a getSnapshot call per
+ * location against one read of the overview. Also times keeping the
+ * overview up to date as locations are refreshed, and checks it agrees
+ * with the snapshots stored.
+ *
+ * Usage: OverviewBenchmark [locations, default 5000]
+ */
+public class OverviewBenchmark {
+	private static final String[] COUNTRIES = {"GB", "GB", "GB", "FR", "DE", "ES", "IT", "NL"};
+	private static final int READS = 2000;
+
+	public static void main(String[] args) throws Exception {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+		Path dir = Files.createTempDirectory("weatherapp");
+		Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+		// Only fetches the current location, as everything else is stored before it's read
+		StubServer stub = new StubServer(0);
+		stub.start();
+
+		WeatherCache cache = new WeatherCache(new APIClient(stub.getURL(), new RequestScheduler(60, 600, 4),
+				new CircuitBreaker(20, 5, 0.5, 3000, 30000)), dir.toString());
+
+		List<Snapshot> snapshots = new ArrayList<>();
+
+		for (Snapshot s : SnapshotStoreBenchmark.makeSnapshots(n))
+			snapshots.add(relocate(s, s.getLocation().replace("GB", COUNTRIES[snapshots.size() % COUNTRIES.length])));
+
+		long t1 = System.nanoTime();
+
+		for (Snapshot s : snapshots)
+			cache.offer(s);
+
+		long t2 = System.nanoTime();
+
+		System.out.println("Stored " + n + " locations in " + cache.getOverview().getRegions().size()
+				+ " countries, " + (t2 - t1) / n / 1000 + "us each including the overview");
+
+		int mismatches = 0;
+
+		for (Snapshot s : snapshots) {
+			OverviewEntry e = cache.getOverview().get(s.getLocation());
+
+			if (e == null || e.getIcon() != s.getSummary().getIcon() || e.getTemp() != s.getSummary().getTemp()
+					|| ! e.getWarnings().containsAll(s.getWarnings()) || e.getWarnings().size() > s.getWarnings().size())
+				mismatches++;
+		}
+
+		System.out.println("Overview entries not matching their snapshot: " + mismatches);
+
+		List<String> gb = new ArrayList<>(cache.getOverview().getRegion("GB").keySet());
+
+		for (int round = 0; round < 2; round++) {
+			long sink = 0;
+
+			long t3 = System.nanoTime();
+
+			for (int i = 0; i < READS; i++) {
+				for (String location : gb) {
+					Snapshot s = cache.getSnapshot(location).get();
+					sink += s.getSummary().getTemp() + s.getWarnings().size();
+				}
+			}
+
+			long t4 = System.nanoTime();
+
+			for (int i = 0; i < READS; i++) {
+				for (OverviewEntry e : cache.getOverview().getRegion("GB").values())
+					sink += e.getTemp() + e.getWarnings().size();
+			}
+
+			long t5 = System.nanoTime();
+
+			if (round == 1)
+				System.out.println("Reading " + gb.size() + " GB locations: a call each " + (t4 - t3) / READS / 1000
+						+ "us, overview " + (t5 - t4) / READS / 1000 + "us (" + sink % 10 + ")");
+		}
+
+		// Refreshes of single locations
+		long t6 = System.nanoTime();
+
+		for (int i = 0; i < READS; i++) {
+			Snapshot s = snapshots.get(i % snapshots.size());
+			cache.getOverview().update(relocate(s, s.getLocation()));
+		}
+
+		long t7 = System.nanoTime();
+
+		Map<String, OverviewEntry> region = cache.getOverview().getRegion("GB");
+
+		System.out.println("Overview update on refresh " + (t7 - t6) / READS / 1000 + "us (largest country "
+				+ region.size() + " locations)");
+
+		stub.stop();
+		System.exit(0);
+	}
+
+	// The same weather, at another location and refreshed again
+	private static Snapshot relocate(Snapshot s, String location) {
+		return new Snapshot(location, s.getLastUpdated().plusNanos(1000), s.getSummary(), s.getThisWeek(),
+				s.getWarnings(), s.getSunrise(), s.getSunset(), s.getLatitude(), s.getLongitude(), ZoneId.systemDefault());
+	}
+}
@@ -0,0 +1,84 @@
+package InteractionDesign.Group3;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * What the overview shows for one location: its current icon and
+ * temperature, and its warnings for the next 24 hours, as of one refresh.
+ */
+public class OverviewEntry {
+	private final String mLocation;
+	private final LocalDateTime mLastUpdated;
+	private final Icon mIcon;
+	private final int mTemp;				// In Celcius
+	private final Set<Warning> mWarnings;
+
+	/**
+	 * Takes the overview of a snapshot.
+	 *
+	 * @param	s	the snapshot
+	 */
+	public OverviewEntry(Snapshot s) {
+		mLocation = s.getLocation();
+		mLastUpdated = s.getLastUpdated();
+		mIcon = s.getSummary().getIcon();
+		mTemp = s.getSummary().getTemp();
+
+		Set<Warning> warnings = EnumSet.noneOf(Warning.class);
+		warnings.addAll(s.getWarnings());
+
+		mWarnings = Collections.unmodifiableSet(warnings);
+	}
+
+	/**
+	 * Gets the location string.
+	 *
+	 * @return	location, in the form "[city name], [ISO 3166 country code]"
+	 */
+	public String getLocation() {
+		return mLocation;
+	}
+
+	/**
+	 * Gets the time stamp of the refresh this is from.
+	 *
+	 * @return	time stamp of the refresh
+	 */
+	public LocalDateTime getLastUpdated() {
+		return mLastUpdated;
+	}
+
+	/**
+	 * Gets the icon of the current weather.
+	 *
+	 * @return	the icon
+	 */
+	public Icon getIcon() {
+		return mIcon;
+	}
+
+	/**
+	 * Gets the current temperature, in degrees Celcius.
+	 *
+	 * @return	the temperature
+	 */
+	public int getTemp() {
+		return mTemp;
+	}
+
+	/**
+	 * Gets the warnings for the next 24 hours.
+	 *
+	 * @return	set of warnings
+	 */
+	public Set<Warning> getWarnings() {
+		return mWarnings;
+	}
+
+	public String toString() {
+		return mLocation + "," + mIcon + "," + mTemp + "," + mWarnings;
+	}
+}
@@ -0,0 +1,74 @@
+package InteractionDesign.Group3;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A class used for testing purposes only.
+ * Simulates a user searching for cities and picking the top suggestion,
+ * against a local stub API with realistic latency, and compares how long
+ * setLocation takes with and without speculative prefetching.
+ */
+public class PrefetchBenchmark {
+	private static final String[] CITIES = {"Aberystwyth", "Canterbury", "Edinburgh", "Norwich", "Manchester",
+			"Birmingham", "Exeter", "Cambridge", "Inverness", "Plymouth"};
+
+	// Time between keystrokes, in milliseconds
+	private static final long KEYSTROKE = 120;
+
+	public static void main(String[] args) throws APIException, CacheException, IOException, InterruptedException {
+		StubServer stub = new StubServer(0);
+		stub.setLatency(250);
+		stub.start();
+
+		for (boolean speculative : Arrays.asList(false, true)) {
+			Path dir = Files.createTempDirectory("weatherapp");
+			Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+			APIClient client = new APIClient(stub.getURL(), new RequestScheduler(60, 600, 8),
+					new CircuitBreaker(20, 5, 0.5, 3000, 30000));
+
+			WeatherCache cache = new WeatherCache(client, dir.toString());
+			cache.setSpeculative(speculative);
+
+			long requests = stub.getRequests();
+			long total = 0;
+			long worst = 0;
+
+			for (String city : CITIES) {
+				List<String> suggestions = null;
+
+				for (int i = 3; i <= city.length(); i++) {
+					suggestions = cache.getSearchSuggestions(city.substring(0, i));
+					Thread.sleep(KEYSTROKE);
+				}
+
+				long t1 = System.nanoTime();
+
+				cache.setLocation(suggestions.get(0));
+
+				long t = System.nanoTime() - t1;
+
+				total += t;
+				worst = Math.max(worst, t);
+			}
+
+			System.out.println(speculative ? "Speculative" : "Plain");
+			System.out.println("  setLocation mean " + total / CITIES.length / 1000000 + "ms, max " + worst / 1000000 + "ms");
+			System.out.println("  API requests " + (stub.getRequests() - requests));
+
+			SpeculativePrefetcher p = cache.getPrefetcher();
+
+			if (p != null) {
+				System.out.println("  prefetched " + p.getIssued() + ", hit rate " + p.getHitRate()
+						+ ", capped " + p.getCapped() + ", throttled " + p.getThrottled());
+			}
+		}
+
+		stub.stop();
+	}
+}
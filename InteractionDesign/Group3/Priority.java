@@ -0,0 +1,11 @@
+package InteractionDesign.Group3;
+
+/**
+ * Represents how urgently an API request is needed.
+ * Requests are dispatched in this order when the rate limit is tight.
+ * Speculative requests are guesses at what the user will want next, so they
+ * come last.
+ */
+public enum Priority {
+	INTERACTIVE, BACKGROUND, SPECULATIVE;
+}
@@ -0,0 +1,178 @@
+package InteractionDesign.Group3;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.management.OperatingSystemMXBean;
+
+/**
+ * A class used for testing purposes only.
+ * Warms a cache with many locations at once, then serves random requests
+ * for them for a few expiry periods, first expiring data on demand and then
+ * with refresh-ahead. Prints API calls and CPU time each second: on demand,
+ * every location expires together and the calls come in spikes; with
+ * refresh-ahead they are spread out.
+ *
+ * Usage: RefreshBenchmark [locations] [seconds]
+ * Data expire after 20 seconds rather than an hour. Refreshes spread out
+ * further each expiry period, so the peak is also given for the second half.
+ */
+public class RefreshBenchmark {
+	private static final Duration MAX_AGE = Duration.ofSeconds(20);
+	private static final int CLIENTS = 8;
+	private static final long THINK_TIME = 2;
+
+	// Requests which waited for a refresh, rather than being served from the cache
+	private static final AtomicLong sWaited = new AtomicLong();
+
+	public static void main(String[] args) throws Exception {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 160;
+
+		List<String> all = Files.readAllLines(Paths.get("data/cityList.txt"));
+		List<String> cities = new ArrayList<>();
+
+		for (int i = 0; cities.size() < n && i < all.size(); i += Math.max(1, all.size() / n))
+			cities.add(all.get(i));
+
+		StubServer stub = new StubServer(0);
+		stub.start();
+
+		// Enough to refresh every location in the last quarter of its life,
+		// which refreshes are spread over
+		int perMinute = (int) (1.25 * cities.size() * 60 / (MAX_AGE.getSeconds() / 4.0));
+
+		run("Expiring on demand", stub, cities, seconds, 0);
+		run("Refresh-ahead, " + perMinute + "/min", stub, cities, seconds, perMinute);
+
+		stub.stop();
+		System.exit(0);
+	}
+
+	private static void run(String name, StubServer stub, List<String> cities, int seconds, int perMinute)
+			throws Exception {
+		Path dir = Files.createTempDirectory("weatherapp");
+		Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+		APIClient client = new APIClient(stub.getURL(), new RequestScheduler(1000, 600000, 16),
+				new CircuitBreaker(50, 20, 0.5, 1000, 5000));
+
+		WeatherCache cache = new WeatherCache(client, dir.toString());
+		cache.setMaxAge(MAX_AGE);
+		cache.setRefreshAhead(perMinute);
+
+		// Everything fetched at once, as warming the cache does
+		List<CompletableFuture<Snapshot>> warming = new ArrayList<>();
+
+		for (String city : cities)
+			warming.add(cache.getSnapshot(city));
+
+		CompletableFuture.allOf(warming.toArray(new CompletableFuture<?>[0])).join();
+
+		sWaited.set(0);
+
+		long deadline = System.currentTimeMillis() + seconds * 1000L;
+
+		List<Thread> threads = new ArrayList<>();
+
+		for (int i = 0; i < CLIENTS; i++) {
+			Thread t = new Thread(() -> client(cache, cities, deadline), "benchmark-client");
+			t.setDaemon(true);
+			t.start();
+			threads.add(t);
+		}
+
+		OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+		long[] calls = new long[seconds];
+		long[] cpu = new long[seconds];
+
+		long requests = stub.getRequests();
+		long cpuTime = os.getProcessCpuTime();
+
+		for (int i = 0; i < seconds; i++) {
+			Thread.sleep(1000);
+
+			long r = stub.getRequests();
+			long c = os.getProcessCpuTime();
+
+			calls[i] = r - requests;
+			cpu[i] = (c - cpuTime) / 1000000;
+
+			requests = r;
+			cpuTime = c;
+		}
+
+		for (Thread t : threads)
+			t.join();
+
+		cache.setRefreshAhead(0);
+
+		System.out.println(name + ":");
+		System.out.println("  API calls/s  " + series(calls));
+		System.out.println("  CPU ms/s     " + series(cpu));
+		System.out.println("  API calls/s peak " + max(calls, 0) + " (second half " + max(calls, seconds / 2) + "), mean "
+				+ mean(calls) + "; CPU ms/s peak " + max(cpu, 0) + " (second half " + max(cpu, seconds / 2) + "), mean "
+				+ mean(cpu));
+		System.out.println("  Requests waiting for a refresh " + sWaited.get());
+	}
+
+	// Asks for random locations until the deadline
+	private static void client(WeatherCache cache, List<String> cities, long deadline) {
+		Random random = ThreadLocalRandom.current();
+
+		while (System.currentTimeMillis() < deadline) {
+			try {
+				CompletableFuture<Snapshot> f = cache.getSnapshot(cities.get(random.nextInt(cities.size())));
+
+				if (! f.isDone())
+					sWaited.incrementAndGet();
+
+				f.get();
+				Thread.sleep(THINK_TIME);
+
+			} catch (InterruptedException e) {
+				return;
+
+			} catch (Exception e) {
+				// Counted by the stub's request rate
+			}
+		}
+	}
+
+	private static String series(long[] values) {
+		StringBuilder sb = new StringBuilder();
+
+		for (long v : values)
+			sb.append(String.format("%5d", v));
+
+		return sb.toString();
+	}
+
+	private static long max(long[] values, int from) {
+		long max = 0;
+
+		for (int i = from; i < values.length; i++)
+			max = Math.max(max, values[i]);
+
+		return max;
+	}
+
+	private static long mean(long[] values) {
+		long sum = 0;
+
+		for (long v : values)
+			sum += v;
+
+		return values.length == 0 ? 0 : sum / values.length;
+	}
+}
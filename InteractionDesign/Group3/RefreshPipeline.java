@@ -0,0 +1,296 @@
+package InteractionDesign.Group3;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a streamed forecast response into a Snapshot.
+ * Each entry is icon-mapped, labelled and assessed for warnings as soon as it
+ * is decoded, so when the last entry arrives the snapshot only needs
+ * assembling. Entries are held back only if there is no way of telling day
+ * from night yet (a new location whose coordinates come after the list).
+ * The time spent in each stage is recorded, in microseconds.
+ */
+public class RefreshPipeline implements ForecastHandler {
+	private final String mLocation;
+	private final Map<WeatherData.ConditionCode, Icon> mIconMap;
+	private final Clock mClock;
+
+	// From the previous snapshot of the same location, if there is one
+	private Record mSummary;
+	private LocalDateTime mSunrise;
+	private LocalDateTime mSunset;
+	private double mLatitude;
+	private double mLongitude;
+	private SolarCalculator mSolar;
+
+	private final List<List<Record>> mThisWeek;
+	private List<Record> mCurrent;
+	private LocalDateTime mTime;
+	private int mCount;
+	private int mSlots;
+
+	// Condition code of each record, for the archive
+	private final List<WeatherData.ConditionCode> mCodes;
+
+	// Warnings cover the first 8 slots (24 hours)
+	private final WarningAccumulator mWarnings;
+
+	// Entries waiting until we know when it is dark
+	private final List<WeatherForecast> mPending;
+
+	private final long mStart;
+	private long mFirstEntry = -1;
+	private long mTransform = 0;
+	private final Map<String, Long> mTimings;
+
+	/**
+	 * Starts a refresh of a location.
+	 *
+	 * @param	location	the location being refreshed
+	 * @param	iconMap		maps condition codes to daytime icons
+	 * @param	previous	the previous snapshot, or null if there isn't one
+	 */
+	public RefreshPipeline(String location, Map<WeatherData.ConditionCode, Icon> iconMap, Snapshot previous) {
+		this(location, iconMap, previous, Clock.systemDefaultZone());
+	}
+
+	/**
+	 * Starts a refresh of a location, at the time and in the time zone given
+	 * by a clock. Records are labelled "Today", "Tomorrow" and so on relative
+	 * to it, and the snapshot is stamped with it.
+	 *
+	 * @param	location	the location being refreshed
+	 * @param	iconMap		maps condition codes to daytime icons
+	 * @param	previous	the previous snapshot, or null if there isn't one
+	 * @param	clock		the clock
+	 */
+	public RefreshPipeline(String location, Map<WeatherData.ConditionCode, Icon> iconMap, Snapshot previous,
+			Clock clock) {
+		mClock = clock;
+		mStart = System.nanoTime();
+
+		mLocation = location;
+		mIconMap = iconMap;
+
+		mLatitude = Double.NaN;
+		mLongitude = Double.NaN;
+
+		// A different location's summary and coordinates are no use
+		if (previous != null && previous.getLocation().equals(location)) {
+			mSummary = previous.getSummary();
+			mSunrise = previous.getSunrise();
+			mSunset = previous.getSunset();
+			mLatitude = previous.getLatitude();
+			mLongitude = previous.getLongitude();
+			mSolar = previous.getSolar();
+		}
+
+		mThisWeek = new ArrayList<>();
+		mCurrent = new ArrayList<>();
+		mThisWeek.add(mCurrent);
+		mTime = LocalDateTime.now(mClock);
+		mCount = 1;
+		mSlots = 0;
+
+		mCodes = new ArrayList<>();
+		mWarnings = new WarningAccumulator();
+		mPending = new ArrayList<>();
+		mTimings = new LinkedHashMap<>();
+	}
+
+	@Override
+	public void city(double lat, double lon) {
+		if (Double.isNaN(lat) || Double.isNaN(lon))
+			return;
+
+		mLatitude = lat;
+		mLongitude = lon;
+		mSolar = new SolarCalculator(lat, lon, mClock.getZone());
+
+		drain();
+	}
+
+	@Override
+	public void entry(WeatherForecast wf) {
+		if (mFirstEntry < 0)
+			mFirstEntry = System.nanoTime();
+
+		if (canTellDark()) {
+			transform(wf);
+		} else {
+			mPending.add(wf);
+		}
+	}
+
+	/**
+	 * Supplies the current weather, for the summary and today's sunrise and
+	 * sunset. This may be called at any point before finish.
+	 *
+	 * @param	data	the current weather
+	 */
+	public void current(WeatherData data) {
+		city(data.getLatitude(), data.getLongitude());
+
+		mSunrise = LocalDateTime.ofInstant(Instant.ofEpochSecond(data.getSunrise()), mClock.getZone());
+		mSunset = LocalDateTime.ofInstant(Instant.ofEpochSecond(data.getSunset()), mClock.getZone());
+
+		LocalDateTime now = LocalDateTime.now(mClock);
+
+		Icon i = mapIcon(data.getConditionCode(), now);
+		int temp = (int) Math.round(data.getTemperature());
+
+		mSummary = new Record(i, temp, now);
+		mSummary.setLabel("Current");
+
+		drain();
+	}
+
+	/**
+	 * Assembles the snapshot, once the whole forecast has been received.
+	 *
+	 * @return	the new snapshot
+	 * @throws	APIException	if there is not enough data for a snapshot
+	 */
+	public Snapshot finish() throws APIException {
+		long t1 = System.nanoTime();
+
+		if (mSummary == null)
+			throw new APIException("No current weather for " + mLocation);
+
+		// Only reached if nothing told us the coordinates or sunrise
+		if (! mPending.isEmpty())
+			throw new APIException("Cannot tell day from night for " + mLocation);
+
+		// Without an API sunrise for today, work it out
+		LocalDateTime today = LocalDateTime.now(mClock);
+
+		if (mSolar != null && mSolar.sunrise(today.toLocalDate()) != null
+				&& (mSunrise == null || ! mSunrise.toLocalDate().equals(today.toLocalDate()))) {
+			mSunrise = mSolar.sunrise(today.toLocalDate());
+			mSunset = mSolar.sunset(today.toLocalDate());
+		}
+
+		Snapshot s = new Snapshot(mLocation, LocalDateTime.now(mClock), mSummary, mThisWeek,
+				mWarnings.getWarnings(), mSunrise, mSunset, mLatitude, mLongitude, mClock.getZone());
+
+		long t2 = System.nanoTime();
+
+		if (mFirstEntry >= 0)
+			mTimings.put("firstEntry", (mFirstEntry - mStart) / 1000);
+
+		mTimings.put("transform", mTransform / 1000);
+		mTimings.put("assemble", (t2 - t1) / 1000);
+
+		return s;
+	}
+
+	/**
+	 * Records the time taken by a stage outside the pipeline itself.
+	 *
+	 * @param	stage	name of the stage
+	 * @param	nanos	time taken, in nanoseconds
+	 */
+	public void time(String stage, long nanos) {
+		mTimings.put(stage, nanos / 1000);
+	}
+
+	/**
+	 * Gets the time spent in each stage so far, in microseconds.
+	 *
+	 * @return	map from stage name to time
+	 */
+	public Map<String, Long> getTimings() {
+		return mTimings;
+	}
+
+	/**
+	 * Gets the API's condition code for each forecast record, in
+	 * chronological order.
+	 *
+	 * @return	list of condition codes
+	 */
+	public List<WeatherData.ConditionCode> getConditionCodes() {
+		return mCodes;
+	}
+
+	private boolean canTellDark() {
+		return mSolar != null || mSunrise != null;
+	}
+
+	// Transforms any held-back entries, once we can
+	private void drain() {
+		if (! canTellDark())
+			return;
+
+		for (WeatherForecast wf : mPending)
+			transform(wf);
+
+		mPending.clear();
+	}
+
+	private void transform(WeatherForecast wf) {
+		long t1 = System.nanoTime();
+
+		String[] s = wf.getDate().split(" ");
+
+		LocalDateTime t = LocalDateTime.parse(s[0] + "T" + s[1]);
+
+		if (! t.toLocalDate().equals(mTime.toLocalDate())) {
+			mCurrent = new ArrayList<>();
+			mThisWeek.add(mCurrent);
+
+			mCount++;
+		}
+
+		mTime = t;
+
+		Icon i = mapIcon(wf.getConditionCode(), t);
+		int temp = (int) Math.round(wf.getTemperature());
+
+		Record r = new Record(i, temp, t);
+
+		switch (mCount) {
+			case 1: r.setLabel("Today");
+			break;
+
+			case 2: r.setLabel("Tomorrow");
+			break;
+
+			default:
+				String label = t.getDayOfWeek().toString();
+				label = label.substring(0, 1) + label.substring(1).toLowerCase();
+				r.setLabel(label);
+		}
+
+		mCurrent.add(r);
+		mCodes.add(wf.getConditionCode());
+
+		if (mSlots++ < 8)
+			mWarnings.add(r);
+
+		mTransform += System.nanoTime() - t1;
+	}
+
+	private Icon mapIcon(WeatherData.ConditionCode c, LocalDateTime t) {
+		Icon i = mIconMap.get(c);
+
+		if (Snapshot.isDark(mSolar, mSunrise, mSunset, t)) {
+			if (i == Icon.MIST_DAY)
+				i = Icon.MIST_NIGHT;
+
+			if (i == Icon.SUN)
+				i = Icon.MOON;
+
+			if (i == Icon.PARTLY_CLEAR_DAY)
+				i = Icon.PARTLY_CLEAR_NIGHT;
+		}
+
+		return i;
+	}
+}
@@ -0,0 +1,219 @@
+package InteractionDesign.Group3;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Refreshes cached locations in the background before their data expire,
+ * so that locations fetched at the same moment (eg. by warming the cache)
+ * don't all expire at the same moment an hour later and stampede the API.
+ *
+ * Each location's refresh is due at a random point in the last part of its
+ * data's life, set by the jitter, and is tracked in a TimingWheel. Due
+ * locations are then refreshed at a steady rate, at most perMinute a minute
+ * and a few at once, so refreshes stay spread out cycle after cycle.
+ */
+public class RefreshScheduler {
+	private static final long TICK = 1000;				// In milliseconds
+	private static final long RETRY = 60000;			// After a failed refresh, in milliseconds
+	private static final int MAX_IN_FLIGHT = 4;
+
+	private final Function<String, CompletableFuture<Snapshot>> mRefresher;
+	private final Clock mClock;
+	private final double mJitter;
+	private final TokenBucket mBucket;
+
+	private final TimingWheel<String> mWheel;
+	// Locations due, oldest first, waiting for the rate to allow
+	private final Set<String> mDue = new LinkedHashSet<>();
+	private final AtomicInteger mInFlight = new AtomicInteger();
+
+	private final Thread mThread;
+	private volatile boolean mStopped = false;
+
+	// Metrics
+	private final AtomicLong mRefreshed = new AtomicLong();
+	private final AtomicLong mFailed = new AtomicLong();
+
+	/**
+	 * Starts a scheduler, with its own thread.
+	 *
+	 * @param	refresher	fetches a location again, whether or not its data have expired
+	 * @param	jitter		the fraction of the data's life over which refreshes are spread, eg. 0.25 for the last quarter
+	 * @param	perMinute	the most refreshes started a minute
+	 */
+	public RefreshScheduler(Function<String, CompletableFuture<Snapshot>> refresher, double jitter, int perMinute) {
+		this(refresher, jitter, perMinute, Clock.systemDefaultZone());
+	}
+
+	/**
+	 * Starts a scheduler which tells the time by a clock, eg. a simulated one.
+	 * The rate is still per real minute.
+	 *
+	 * @param	refresher	fetches a location again, whether or not its data have expired
+	 * @param	jitter		the fraction of the data's life over which refreshes are spread, eg. 0.25 for the last quarter
+	 * @param	perMinute	the most refreshes started a minute
+	 * @param	clock		the clock
+	 */
+	public RefreshScheduler(Function<String, CompletableFuture<Snapshot>> refresher, double jitter, int perMinute,
+			Clock clock) {
+		mRefresher = refresher;
+		mClock = clock;
+		mJitter = jitter;
+		mBucket = new TokenBucket(Math.max(1, perMinute / 60), perMinute);
+		mWheel = new TimingWheel<>(TICK, mClock.millis());
+
+		mThread = new Thread(this::run, "refresh-scheduler");
+		mThread.setDaemon(true);
+		mThread.start();
+	}
+
+	/**
+	 * Schedules a location's next refresh, replacing any already scheduled.
+	 * Called each time a snapshot of the location is stored.
+	 *
+	 * @param	location	location string, in the form "[city name], [ISO 3166 country code]"
+	 * @param	lastUpdated	when the location's data were fetched
+	 * @param	maxAge		how old the data may be before they expire
+	 */
+	public void scheduled(String location, LocalDateTime lastUpdated, Duration maxAge) {
+		double life = 1 - mJitter * ThreadLocalRandom.current().nextDouble();
+		long ageMillis = Duration.between(lastUpdated, LocalDateTime.now(mClock)).toMillis();
+
+		long delay = (long) (maxAge.toMillis() * life) - ageMillis;
+
+		synchronized (mDue) {
+			mDue.remove(location);
+		}
+
+		mWheel.schedule(location, mClock.millis() + Math.max(0, delay));
+	}
+
+	/**
+	 * Stops refreshing a location.
+	 *
+	 * @param	location	location string, in the form "[city name], [ISO 3166 country code]"
+	 */
+	public void remove(String location) {
+		synchronized (mDue) {
+			mDue.remove(location);
+		}
+
+		mWheel.cancel(location);
+	}
+
+	/**
+	 * Stops the scheduler. Refreshes already started carry on.
+	 */
+	public void stop() {
+		mStopped = true;
+		LockSupport.unpark(mThread);
+	}
+
+	/**
+	 * Gets the number of locations scheduled, not yet due.
+	 *
+	 * @return	number of locations
+	 */
+	public int getScheduled() {
+		return mWheel.size();
+	}
+
+	/**
+	 * Gets the number of locations due, waiting for the rate to allow.
+	 *
+	 * @return	number of locations
+	 */
+	public int getBacklog() {
+		synchronized (mDue) {
+			return mDue.size();
+		}
+	}
+
+	/**
+	 * Gets the number of refreshes completed.
+	 *
+	 * @return	number of refreshes
+	 */
+	public long getRefreshed() {
+		return mRefreshed.get();
+	}
+
+	/**
+	 * Gets the number of refreshes which failed, or which served old data
+	 * because the API couldn't be reached. Each is retried a minute later.
+	 *
+	 * @return	number of failures
+	 */
+	public long getFailed() {
+		return mFailed.get();
+	}
+
+	// Runs on the scheduler's thread
+	private void run() {
+		while (! mStopped) {
+			synchronized (mDue) {
+				mDue.addAll(mWheel.advance(mClock.millis()));
+			}
+
+			dispatch();
+
+			// Until the next tick, a token if refreshes are waiting for one,
+			// or a refresh finishing
+			long wait = TICK * 1000000;
+
+			if (getBacklog() > 0 && mInFlight.get() < MAX_IN_FLIGHT)
+				wait = Math.min(wait, Math.max(1000000, mBucket.nanosUntilAvailable()));
+
+			LockSupport.parkNanos(this, wait);
+		}
+	}
+
+	// Starts as many due refreshes as the rate allows
+	private void dispatch() {
+		while (mInFlight.get() < MAX_IN_FLIGHT) {
+			String location;
+
+			synchronized (mDue) {
+				Iterator<String> it = mDue.iterator();
+
+				if (! it.hasNext() || ! mBucket.tryAcquire())
+					return;
+
+				location = it.next();
+				it.remove();
+			}
+
+			mInFlight.incrementAndGet();
+
+			// Success stores a snapshot, which schedules the next refresh
+			mRefresher.apply(location).whenComplete((s, e) -> {
+				mInFlight.decrementAndGet();
+				LockSupport.unpark(mThread);
+
+				if (e == null && mWheel.contains(location)) {
+					mRefreshed.incrementAndGet();
+					return;
+				}
+
+				// Failed, or fell back to the old snapshot without storing a new one
+				mFailed.incrementAndGet();
+
+				if (e != null)
+					System.out.println("Failed to refresh " + location + ": " + e.getMessage());
+
+				mWheel.schedule(location, mClock.millis() + RETRY);
+			});
+		}
+	}
+}
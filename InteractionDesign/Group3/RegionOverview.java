@@ -0,0 +1,118 @@
+package InteractionDesign.Group3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The current icon, temperature and warnings of every location stored,
+ * grouped by country, for dashboards which show them all at once.
+ *
+ * Kept up to date as each snapshot is stored, so reading a whole country
+ * is one lookup rather than a getter call (and perhaps a refresh) per
+ * location. Each country's locations are in a sorted concurrent map, so
+ * storing a location only touches its own entry, and readers never wait
+ * for writers. Entries are immutable and replaced whole, so each is
+ * consistent, though a reader going through a country may see some
+ * locations from before a refresh and some from after.
+ */
+public class RegionOverview {
+	private static final Map<String, OverviewEntry> EMPTY = Collections.emptyMap();
+
+	// Each country's locations, sorted by name
+	private final Map<String, Map<String, OverviewEntry>> mRegions = new ConcurrentHashMap<>();
+	// The same, as handed to readers
+	private final Map<String, Map<String, OverviewEntry>> mViews = new ConcurrentHashMap<>();
+
+	/**
+	 * Updates a location's entry from a snapshot, unless the entry is
+	 * already from a newer one.
+	 *
+	 * @param	s	the snapshot
+	 */
+	public void update(Snapshot s) {
+		OverviewEntry e = new OverviewEntry(s);
+
+		String country = country(s.getLocation());
+
+		Map<String, OverviewEntry> region = mRegions.computeIfAbsent(country, c -> {
+			Map<String, OverviewEntry> r = new ConcurrentSkipListMap<>();
+			mViews.put(c, Collections.unmodifiableMap(r));
+			return r;
+		});
+
+		region.merge(e.getLocation(), e, (old, n) -> old.getLastUpdated().isAfter(n.getLastUpdated()) ? old : n);
+	}
+
+	/**
+	 * Gets every location of a country, as a live read-only view.
+	 *
+	 * @param	country	ISO 3166 country code, eg. "GB"
+	 * @return	entries by location string, sorted; empty if there are none
+	 */
+	public Map<String, OverviewEntry> getRegion(String country) {
+		return mViews.getOrDefault(country, EMPTY);
+	}
+
+	/**
+	 * Gets a location's entry.
+	 *
+	 * @param	location	location string, in the form "[city name], [ISO 3166 country code]"
+	 * @return	the entry, or null if the location hasn't been stored
+	 */
+	public OverviewEntry get(String location) {
+		return getRegion(country(location)).get(location);
+	}
+
+	/**
+	 * Gets the countries with locations stored.
+	 *
+	 * @return	ISO 3166 country codes
+	 */
+	public Set<String> getRegions() {
+		return Collections.unmodifiableSet(mRegions.keySet());
+	}
+
+	/**
+	 * Gets the locations of a country with any of the given warnings.
+	 *
+	 * @param	country		ISO 3166 country code, eg. "GB"
+	 * @param	warnings	the warnings to look for
+	 * @return	entries with at least one of the warnings, sorted by location
+	 */
+	public List<OverviewEntry> getWarned(String country, Set<Warning> warnings) {
+		List<OverviewEntry> result = new ArrayList<>();
+
+		for (OverviewEntry e : getRegion(country).values()) {
+			if (! Collections.disjoint(e.getWarnings(), warnings))
+				result.add(e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the number of locations in the overview.
+	 *
+	 * @return	number of locations
+	 */
+	public int size() {
+		int n = 0;
+
+		for (Map<String, OverviewEntry> region : mRegions.values())
+			n += region.size();
+
+		return n;
+	}
+
+	// The country code after the last comma, or "" if there isn't one
+	private static String country(String location) {
+		int comma = location.lastIndexOf(',');
+
+		return comma < 0 ? "" : location.substring(comma + 1).trim();
+	}
+}
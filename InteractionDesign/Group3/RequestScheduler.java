@@ -0,0 +1,259 @@
+package InteractionDesign.Group3;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Schedules API requests so they stay within the upstream quota.
+ * Requests wait in a queue and are dispatched when the token bucket allows
+ * and a worker is free, highest priority first, then oldest first. Nothing
+ * waits anywhere else, so a new interactive request overtakes background
+ * ones even when every worker is busy. A request for the same URL as one
+ * still waiting is merged with it, so both callers share one API call.
+ */
+public class RequestScheduler {
+	private final TokenBucket mBucket;
+	private final ExecutorService mWorkers;
+	private final int mWorkerCount;
+	private int mRunning = 0;							// Requests dispatched and not yet done
+
+	private final PriorityQueue<Request<?>> mQueue;
+	private final Map<String, Request<?>> mWaiting;		// Mergeable requests not yet dispatched
+	private long mSeq = 0;
+
+	// Metrics
+	private long mDispatched = 0;
+	private long mMerged = 0;
+	private final Map<Priority, Long> mCount;
+	private final Map<Priority, Long> mTotalWait;		// In nanoseconds
+	private final Map<Priority, Long> mMaxWait;
+
+	// A request waiting to be dispatched
+	private static class Request<T> implements Comparable<Request<?>> {
+		final String mKey;
+		Priority mPriority;
+		final long mSeq;
+		final long mQueued;
+		final Callable<T> mTask;
+		final CompletableFuture<T> mResult = new CompletableFuture<>();
+
+		Request(String key, Priority priority, long seq, Callable<T> task) {
+			mKey = key;
+			mPriority = priority;
+			mSeq = seq;
+			mQueued = System.nanoTime();
+			mTask = task;
+		}
+
+		void run() {
+			try {
+				mResult.complete(mTask.call());
+
+			} catch (Exception e) {
+				mResult.completeExceptionally(e);
+			}
+		}
+
+		@Override
+		public int compareTo(Request<?> o) {
+			int c = mPriority.compareTo(o.mPriority);
+
+			return c != 0 ? c : Long.compare(mSeq, o.mSeq);
+		}
+	}
+
+	/**
+	 * Constructs a scheduler with its own dispatcher thread.
+	 *
+	 * @param	burst		the most requests which may be made at once
+	 * @param	perMinute	the sustained request rate allowed
+	 * @param	workers		the most requests in flight at once
+	 */
+	public RequestScheduler(int burst, int perMinute, int workers) {
+		mBucket = new TokenBucket(burst, perMinute);
+		mWorkerCount = workers;
+
+		mWorkers = Executors.newFixedThreadPool(workers, r -> {
+			Thread t = new Thread(r, "api-request");
+			t.setDaemon(true);
+			return t;
+		});
+
+		mQueue = new PriorityQueue<>();
+		mWaiting = new HashMap<>();
+
+		mCount = new EnumMap<>(Priority.class);
+		mTotalWait = new EnumMap<>(Priority.class);
+		mMaxWait = new EnumMap<>(Priority.class);
+
+		for (Priority p : Priority.values()) {
+			mCount.put(p, 0L);
+			mTotalWait.put(p, 0L);
+			mMaxWait.put(p, 0L);
+		}
+
+		Thread dispatcher = new Thread(this::dispatch, "api-dispatcher");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * Queues a request.
+	 * If key is not null and a request with the same key is still waiting,
+	 * the two are merged: the caller gets the waiting request's future, and
+	 * the waiting request is raised to this priority if that is higher.
+	 * Requests whose results can't be shared should have a null key.
+	 *
+	 * @param	key			identifies requests which may be merged, eg. the URL
+	 * @param	priority	how urgently the result is needed
+	 * @param	task		makes the request
+	 * @return	a future for the result of the request
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> CompletableFuture<T> submit(String key, Priority priority, Callable<T> task) {
+		if (key != null) {
+			Request<T> waiting = (Request<T>) mWaiting.get(key);
+
+			if (waiting != null) {
+				mMerged++;
+
+				if (priority.compareTo(waiting.mPriority) < 0) {
+					mQueue.remove(waiting);
+					waiting.mPriority = priority;
+					mQueue.add(waiting);
+				}
+
+				return waiting.mResult;
+			}
+		}
+
+		Request<T> r = new Request<>(key, priority, mSeq++, task);
+
+		mQueue.add(r);
+
+		if (key != null)
+			mWaiting.put(key, r);
+
+		notifyAll();
+
+		return r.mResult;
+	}
+
+	/**
+	 * Gets the number of requests waiting for a token or a free worker.
+	 *
+	 * @return	queue depth
+	 */
+	public synchronized int getQueueDepth() {
+		return mQueue.size();
+	}
+
+	/**
+	 * Gets how many more requests could be dispatched immediately.
+	 *
+	 * @return	tokens left in the bucket
+	 */
+	public synchronized int getHeadroom() {
+		return mBucket.available();
+	}
+
+	/**
+	 * Gets the number of requests dispatched so far.
+	 *
+	 * @return	number of requests made
+	 */
+	public synchronized long getDispatched() {
+		return mDispatched;
+	}
+
+	/**
+	 * Gets the number of requests merged into one already waiting.
+	 *
+	 * @return	number of API calls saved
+	 */
+	public synchronized long getMerged() {
+		return mMerged;
+	}
+
+	/**
+	 * Gets the mean time requests of a priority waited before dispatch.
+	 *
+	 * @param	p	the priority
+	 * @return	mean wait in milliseconds
+	 */
+	public synchronized double getMeanWait(Priority p) {
+		long n = mCount.get(p);
+
+		return n == 0 ? 0 : mTotalWait.get(p) / 1e6 / n;
+	}
+
+	/**
+	 * Gets the longest time a request of a priority waited before dispatch.
+	 *
+	 * @param	p	the priority
+	 * @return	maximum wait in milliseconds
+	 */
+	public synchronized double getMaxWait(Priority p) {
+		return mMaxWait.get(p) / 1e6;
+	}
+
+	private synchronized void done() {
+		mRunning--;
+		notifyAll();
+	}
+
+	// Runs on the dispatcher thread for the life of the scheduler
+	private synchronized void dispatch() {
+		while (true) {
+			try {
+				// Woken by a new arrival, or a worker finishing
+				if (mQueue.isEmpty() || mRunning >= mWorkerCount) {
+					wait();
+					continue;
+				}
+
+				long delay = mBucket.nanosUntilAvailable();
+
+				if (delay > 0) {
+					// A new arrival wakes us, but can't jump the bucket
+					wait(delay / 1000000, (int) (delay % 1000000));
+					continue;
+				}
+
+				mBucket.tryAcquire();
+
+				Request<?> r = mQueue.poll();
+
+				if (r.mKey != null)
+					mWaiting.remove(r.mKey);
+
+				long waited = System.nanoTime() - r.mQueued;
+
+				mDispatched++;
+				mCount.merge(r.mPriority, 1L, Long::sum);
+				mTotalWait.merge(r.mPriority, waited, Long::sum);
+				mMaxWait.merge(r.mPriority, waited, Math::max);
+
+				mRunning++;
+
+				mWorkers.execute(() -> {
+					try {
+						r.run();
+
+					} finally {
+						done();
+					}
+				});
+
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+}
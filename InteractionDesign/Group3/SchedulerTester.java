@@ -0,0 +1,58 @@
+package InteractionDesign.Group3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A class used for testing purposes only
+ * Saturates a RequestScheduler's workers with slow requests, queues
+ * background requests behind them and then one interactive request, and
+ * checks the interactive one runs first once a worker is free. Plenty of
+ * tokens are left throughout, so only the workers hold requests back.
+ */
+public class SchedulerTester {
+	private static final int WORKERS = 4;
+	private static final int BACKGROUND = 20;
+
+	public static void main(String[] args) throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(1000, 60000, WORKERS);
+
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		List<CompletableFuture<?>> all = new ArrayList<>();
+
+		// Every worker busy until released
+		for (int i = 0; i < WORKERS; i++) {
+			all.add(scheduler.submit(null, Priority.BACKGROUND, () -> {
+				release.await();
+				return null;
+			}));
+		}
+
+		for (int i = 0; i < BACKGROUND; i++) {
+			String name = "background " + i;
+			all.add(scheduler.submit(null, Priority.BACKGROUND, () -> order.add(name)));
+		}
+
+		// Give the dispatcher time to hand over anything it would
+		Thread.sleep(100);
+
+		all.add(scheduler.submit(null, Priority.INTERACTIVE, () -> order.add("interactive")));
+
+		System.out.println("Saturated pool");
+		System.out.println("  queue depth " + scheduler.getQueueDepth() + " (" + (BACKGROUND + 1) + " waiting)");
+
+		release.countDown();
+		CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).join();
+
+		int position = order.indexOf("interactive");
+
+		System.out.println("  interactive ran " + (position + 1) + " of " + order.size() + ": "
+				+ (position == 0 ? "ok" : "FAILED, overtaken by " + position + " background requests"));
+		System.out.println("  mean wait: interactive " + Math.round(scheduler.getMeanWait(Priority.INTERACTIVE))
+				+ "ms, background " + Math.round(scheduler.getMeanWait(Priority.BACKGROUND)) + "ms");
+	}
+}
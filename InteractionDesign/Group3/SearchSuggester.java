@@ -1,20 +1,30 @@
 package InteractionDesign.Group3;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 /**
  * Gives search suggestions for city names.
+ * Cities users have picked before are suggested first, most picked first,
+ * as counted by a FrequencySketch; the rest follow in list order.
  */
 public class SearchSuggester {
 	private Map<Character, Map<Character, List<String>>> mSuggestionMap;
 
+	// How often each city has been picked, in 64KB however many there are
+	private volatile FrequencySketch mPopularity = new FrequencySketch(4096);
+
 	/**
 	 * Constructs search suggestion engine for a list of cities.
 	 *
@@ -63,6 +73,110 @@ public class SearchSuggester {
 		}
 	}
 
+	/**
+	 * Loads a search suggestion engine saved by write, eg. in a startup image.
+	 *
+	 * @param	in	the saved engine
+	 * @throws	IOException	if reading fails
+	 */
+	SearchSuggester(DataInputStream in) throws IOException {
+		mSuggestionMap = new HashMap<>();
+
+		for (char c = 'a'; c <= 'z'; c++) {
+			Map<Character, List<String>> subMap = new HashMap<>();
+			mSuggestionMap.put(c, subMap);
+
+			for (char d = 'a'; d <= 'z'; d++) {
+				int n = in.readInt();
+				List<String> list = new ArrayList<>(n);
+
+				for (int i = 0; i < n; i++)
+					list.add(in.readUTF());
+
+				subMap.put(d, list);
+			}
+		}
+	}
+
+	/**
+	 * Saves the engine, so it can be loaded without reading the city list.
+	 *
+	 * @param	out	where to save it
+	 * @throws	IOException	if writing fails
+	 */
+	void write(DataOutputStream out) throws IOException {
+		for (char c = 'a'; c <= 'z'; c++) {
+			for (char d = 'a'; d <= 'z'; d++) {
+				List<String> list = mSuggestionMap.get(c).get(d);
+
+				out.writeInt(list.size());
+
+				for (String s : list)
+					out.writeUTF(s);
+			}
+		}
+	}
+
+	/**
+	 * Gets every city suggestions are given from, in the order of the list.
+	 * Cities starting with non-ASCII characters are left out, as they are
+	 * never suggested.
+	 *
+	 * @return	locations, in the form "[city name], [ISO 3166 country code]"
+	 */
+	public List<String> getCities() {
+		List<String> cities = new ArrayList<>();
+
+		for (char c = 'a'; c <= 'z'; c++) {
+			for (char d = 'a'; d <= 'z'; d++)
+				cities.addAll(mSuggestionMap.get(c).get(d));
+		}
+
+		return cities;
+	}
+
+	/**
+	 * Counts a city being picked, eg. from the suggestions, so it is suggested
+	 * ahead of others in future.
+	 *
+	 * @param	city	the city, in the form "[city name], [ISO 3166 country code]"
+	 */
+	public void recordPick(String city) {
+		mPopularity.increment(city);
+	}
+
+	/**
+	 * Gets the counts of cities picked, eg. to save them.
+	 *
+	 * @return	the sketch
+	 */
+	public FrequencySketch getPopularity() {
+		return mPopularity;
+	}
+
+	/**
+	 * Replaces the counts of cities picked, eg. with saved counts.
+	 *
+	 * @param	popularity	the sketch
+	 */
+	public void setPopularity(FrequencySketch popularity) {
+		mPopularity = popularity;
+	}
+
+	/**
+	 * Recommends the most popular cities given the start of a city name.
+	 * The input is case-insensitive.
+	 *
+	 * @param	start	the beginning of a city name
+	 * @param	k		the most cities wanted
+	 * @return	up to k cities matching the request, most picked first
+	 */
+	public List<String> getTopSuggestions(String start, int k) {
+		List<String> result = getSuggestions(start);
+
+		return result.size() <= k ? result : new ArrayList<>(result.subList(0, k));
+	}
+
 	/**
 	 * Recommends cities given the start of a city name.
 	 * The input is case-insensitive.
@@ -73,19 +187,68 @@ public class SearchSuggester {
 	 * @return	a list of cities matching the request
 	 */
 	public List<String> getSuggestions(String start) {
+		return getSuggestions(start, () -> false);
+	}
+
+	/**
+	 * Recommends cities given the start of a city name, giving up early if
+	 * the query is no longer wanted.
+	 * The cancellation check is polled while scanning, so a query superseded
+	 * by a longer prefix stops instead of finishing the scan. The result of a
+	 * cancelled query is incomplete and should be discarded.
+	 *
+	 * @param	start		the beginning of a city name
+	 * @param	cancelled	returns true once the result is no longer needed
+	 * @return	a list of cities matching the request
+	 */
+	public List<String> getSuggestions(String start, BooleanSupplier cancelled) {
 		List<String> result = new LinkedList<>();
 
 		if (start.length() >= 3) {
 			Map<Character, List<String>> subMap = mSuggestionMap.getOrDefault(Character.toLowerCase(start.charAt(0)), new HashMap<>());
 			List<String> poss = subMap.getOrDefault(Character.toLowerCase(start.charAt(1)), new LinkedList<>());
 
+			String lower = start.toLowerCase();
+			int scanned = 0;
+
 			for (String s : poss){
-				if (s.toLowerCase().startsWith(start.toLowerCase())) {
+				// Checking every entry would cost more than the comparison itself
+				if ((++scanned & 63) == 0 && cancelled.getAsBoolean()) {
+					break;
+				}
+
+				if (s.toLowerCase().startsWith(lower)) {
 					result.add(s);
 				}
 			}
 		}
 
-		return result;
+		return rank(result);
+	}
+
+	// Puts cities picked before first, most picked first, keeping list order
+	// otherwise. Only matches are looked up, so this costs little beside the scan
+	private List<String> rank(List<String> matches) {
+		FrequencySketch popularity = mPopularity;
+
+		if (matches.size() < 2 || popularity.getTotal() == 0)
+			return matches;
+
+		int n = matches.size();
+		String[] cities = matches.toArray(new String[n]);
+		long[] keys = new long[n];
+
+		// Count descending, then position ascending, in one sort of primitives
+		for (int i = 0; i < n; i++)
+			keys[i] = ((long) (Integer.MAX_VALUE - popularity.estimate(cities[i])) << 32) | i;
+
+		Arrays.sort(keys);
+
+		List<String> ranked = new ArrayList<>(n);
+
+		for (long key : keys)
+			ranked.add(cities[(int) key]);
+
+		return ranked;
 	}
 }
@@ -0,0 +1,66 @@
+package InteractionDesign.Group3;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * A clock which only moves when told to, so that simulations can run days
+ * of WeatherCache's behaviour in seconds, eg. DaySimulator.
+ * Copies made by withZone share the time with the original.
+ */
+public class SimulatedClock extends Clock {
+	// Shared by copies in other zones
+	private static class Time {
+		volatile Instant mNow;
+	}
+
+	private final Time mTime;
+	private final ZoneId mZone;
+
+	/**
+	 * Constructs a clock stopped at an instant.
+	 *
+	 * @param	start	the instant
+	 * @param	zone	the time zone, eg. ZoneId.systemDefault()
+	 */
+	public SimulatedClock(Instant start, ZoneId zone) {
+		this(new Time(), zone);
+		mTime.mNow = start;
+	}
+
+	private SimulatedClock(Time time, ZoneId zone) {
+		mTime = time;
+		mZone = zone;
+	}
+
+	/**
+	 * Moves the clock on.
+	 *
+	 * @param	d	how far, which must not be negative
+	 */
+	public void advance(Duration d) {
+		if (d.isNegative())
+			throw new IllegalArgumentException("Simulated time can't go backwards");
+
+		synchronized (mTime) {
+			mTime.mNow = mTime.mNow.plus(d);
+		}
+	}
+
+	@Override
+	public ZoneId getZone() {
+		return mZone;
+	}
+
+	@Override
+	public Clock withZone(ZoneId zone) {
+		return zone.equals(mZone) ? this : new SimulatedClock(mTime, zone);
+	}
+
+	@Override
+	public Instant instant() {
+		return mTime.mNow;
+	}
+}
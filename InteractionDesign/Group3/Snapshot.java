@@ -0,0 +1,312 @@
+package InteractionDesign.Group3;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * All the weather data for one location, as of one refresh.
+ * Snapshots are built in full and then published, so readers never see a
+ * half-refreshed forecast. Everything derived from the forecast (the time
+ * index and the daily summaries) is worked out when the snapshot is built.
+ */
+public class Snapshot {
+	private final String mLocation;
+	private final LocalDateTime mLastUpdated;
+
+	private final Record mSummary;
+	private final List<List<Record>> mThisWeek;
+	private final List<Warning> mWarnings;
+
+	private final LocalDateTime mSunrise;
+	private final LocalDateTime mSunset;
+
+	// Coordinates of the location, NaN if unknown
+	private final double mLatitude;
+	private final double mLongitude;
+	private final SolarCalculator mSolar;
+
+	private final ForecastIndex mIndex;
+	private final List<DailySummary> mDays;
+
+	/**
+	 * Constructs a snapshot, and works out everything derived from the forecast.
+	 *
+	 * @param	location	location string, in the form "[city name], [ISO 3166 country code]"
+	 * @param	lastUpdated	when the forecast was fetched
+	 * @param	summary		the current weather
+	 * @param	week		the forecast for each day, each ordered chronologically
+	 * @param	warnings	warnings for the next 24 hours
+	 * @param	sunrise		today's sunrise
+	 * @param	sunset		today's sunset
+	 * @param	lat			latitude in degrees, or NaN if unknown
+	 * @param	lon			longitude in degrees, or NaN if unknown
+	 * @param	zone		the time zone of the forecast's times
+	 */
+	public Snapshot(String location, LocalDateTime lastUpdated, Record summary, List<List<Record>> week,
+			List<Warning> warnings, LocalDateTime sunrise, LocalDateTime sunset, double lat, double lon, ZoneId zone) {
+		mLocation = location;
+		mLastUpdated = lastUpdated;
+		mSummary = summary;
+		mWarnings = Collections.unmodifiableList(warnings);
+		mSunrise = sunrise;
+		mSunset = sunset;
+		mLatitude = lat;
+		mLongitude = lon;
+
+		if (Double.isNaN(lat) || Double.isNaN(lon))
+			mSolar = null;
+		else
+			mSolar = new SolarCalculator(lat, lon, zone);
+
+		List<List<Record>> days = new ArrayList<>();
+
+		for (List<Record> day : week)
+			days.add(Collections.unmodifiableList(day));
+
+		mThisWeek = Collections.unmodifiableList(days);
+
+		mIndex = new ForecastIndex(mThisWeek);
+
+		List<DailySummary> summaries = new ArrayList<>();
+
+		for (List<Record> day : mThisWeek) {
+			if (! day.isEmpty())
+				summaries.add(new DailySummary(day, WarningAccumulator.assess(day)));
+		}
+
+		mDays = Collections.unmodifiableList(summaries);
+	}
+
+	/**
+	 * Tests whether it is dark at a particular time.
+	 * Uses the location's coordinates if known. Otherwise, falls back to
+	 * comparing the time of day with sunrise and sunset.
+	 *
+	 * @param	solar	calculator for the location, or null if unknown
+	 * @param	sunrise	today's sunrise
+	 * @param	sunset	today's sunset
+	 * @param	t		the time
+	 * @return	true if the sun is down
+	 */
+	public static boolean isDark(SolarCalculator solar, LocalDateTime sunrise, LocalDateTime sunset, LocalDateTime t) {
+		if (solar != null)
+			return solar.isDark(t);
+
+		LocalTime time = t.toLocalTime();
+
+		return time.compareTo(sunrise.toLocalTime()) < 0 || time.compareTo(sunset.toLocalTime()) > 0;
+	}
+
+	/**
+	 * Tests whether it is dark at a particular time, at this location.
+	 *
+	 * @param	t	the time
+	 * @return	true if the sun is down
+	 */
+	public boolean isDark(LocalDateTime t) {
+		return isDark(mSolar, mSunrise, mSunset, t);
+	}
+
+	/**
+	 * Works out which items to recommend for the given forecast slots.
+	 * A helmet is always recommended.
+	 *
+	 * @param	slots	forecast records covering the journey
+	 * @return	a list of Items
+	 */
+	public List<Item> recommend(List<Record> slots) {
+		boolean cold = false;
+		boolean dark = false;
+		boolean heavyRain = false;
+		boolean rain = false;
+		boolean snow = false;
+		boolean sunny = false;
+
+		for (Record r : slots) {
+			Icon i = r.getIcon();
+
+			cold = cold || (r.getTemp() < 10);
+
+			dark = dark || isDark(r.getTimeStamp()) || isDark(r.getTimeStamp().plusHours(1));
+
+			heavyRain = heavyRain || (i == Icon.HEAVY_RAIN || i == Icon.HAIL || i == Icon.THUNDERSTORM);
+
+			rain = rain || (i == Icon.LIGHT_RAIN);
+
+			snow = snow || (i == Icon.HEAVY_SNOW || i == Icon.LIGHT_SNOW || i == Icon.SNOWFLAKE);
+
+			sunny = sunny || (i == Icon.SUN);
+		}
+
+		rain = rain || heavyRain || snow;
+
+		List<Item> result = new ArrayList<>();
+
+		if (dark)
+			result.add(Item.LIGHTS);
+
+		if (rain || cold)
+			result.add(Item.COAT);
+
+		if (cold)
+			result.add(Item.GLOVES);
+
+		if (rain)
+			result.add(Item.SEAT_COVER);
+
+		if (sunny)
+			result.add(Item.SUNGLASSES);
+
+		if (heavyRain || snow)
+			result.add(Item.BAG_COVER);
+
+		result.add(Item.HELMET);
+
+		return result;
+	}
+
+	/**
+	 * Works out which items to recommend for a journey in the next 24 hours.
+	 *
+	 * @param	start	the start of the journey
+	 * @param	fin		the end of the journey
+	 * @return	a list of Items
+	 */
+	public List<Item> recommend(LocalTime start, LocalTime fin) {
+		List<Record> slots = new ArrayList<>();
+
+		for (Record r : get24Hours()) {
+			LocalTime t = r.getTimeStamp().toLocalTime();
+
+			if (t.compareTo(start) > 0 & t.compareTo(fin.plusHours(1)) < 0)
+				slots.add(r);
+		}
+
+		return recommend(slots);
+	}
+
+	/**
+	 * Gets the forecast for the next 24 hours: today, plus enough of tomorrow
+	 * to make 8 slots.
+	 *
+	 * @return	forecast records, ordered chronologically
+	 */
+	public List<Record> get24Hours() {
+		// Today never has more than 8 slots
+		return mIndex.first(Math.max(8, mThisWeek.get(0).size()));
+	}
+
+	/**
+	 * Gets the location string.
+	 *
+	 * @return	location, in the form "[city name], [ISO 3166 country code]"
+	 */
+	public String getLocation() {
+		return mLocation;
+	}
+
+	/**
+	 * Gets the time stamp when the forecast was fetched.
+	 *
+	 * @return	time stamp of the refresh
+	 */
+	public LocalDateTime getLastUpdated() {
+		return mLastUpdated;
+	}
+
+	/**
+	 * Gets the headline summary of the current weather.
+	 * Its time stamp is when the current weather was fetched, which may be
+	 * earlier than the forecast.
+	 *
+	 * @return	the current weather
+	 */
+	public Record getSummary() {
+		return mSummary;
+	}
+
+	/**
+	 * Gets the 5 day forecast, one list of records per day.
+	 *
+	 * @return	the forecast for each day
+	 */
+	public List<List<Record>> getThisWeek() {
+		return mThisWeek;
+	}
+
+	/**
+	 * Gets warnings for the next 24 hours.
+	 *
+	 * @return	list of warnings
+	 */
+	public List<Warning> getWarnings() {
+		return mWarnings;
+	}
+
+	/**
+	 * Gets today's sunrise time.
+	 *
+	 * @return	sunrise
+	 */
+	public LocalDateTime getSunrise() {
+		return mSunrise;
+	}
+
+	/**
+	 * Gets today's sunset time.
+	 *
+	 * @return	sunset
+	 */
+	public LocalDateTime getSunset() {
+		return mSunset;
+	}
+
+	/**
+	 * Gets the latitude of the location, or NaN if unknown.
+	 *
+	 * @return	latitude in degrees
+	 */
+	public double getLatitude() {
+		return mLatitude;
+	}
+
+	/**
+	 * Gets the longitude of the location, or NaN if unknown.
+	 *
+	 * @return	longitude in degrees
+	 */
+	public double getLongitude() {
+		return mLongitude;
+	}
+
+	/**
+	 * Gets the solar calculator for the location.
+	 *
+	 * @return	the calculator, or null if the coordinates are unknown
+	 */
+	public SolarCalculator getSolar() {
+		return mSolar;
+	}
+
+	/**
+	 * Gets the time index over the whole forecast.
+	 *
+	 * @return	forecast index
+	 */
+	public ForecastIndex getIndex() {
+		return mIndex;
+	}
+
+	/**
+	 * Gets aggregated weather for each day with forecast data.
+	 *
+	 * @return	daily summaries, ordered chronologically
+	 */
+	public List<DailySummary> getDailySummaries() {
+		return mDays;
+	}
+}
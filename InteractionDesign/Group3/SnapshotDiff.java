@@ -0,0 +1,250 @@
+package InteractionDesign.Group3;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The changes between two snapshots, as pushed to SnapshotListeners.
+ * Forecast slots are matched by time stamp, and count as changed if their
+ * icon or temperature differ (labels change as days roll over, so are
+ * ignored). If the location changed, everything in the new snapshot counts
+ * as added.
+ *
+ * Item changes depend on the commute window, so they are only filled in for
+ * listeners which subscribed with one.
+ */
+public class SnapshotDiff {
+	private final Snapshot mSnapshot;
+	private final Snapshot mPrevious;			// Null if the location changed
+
+	private final Record mSummary;				// Null if unchanged
+	private final List<Record> mChangedSlots;
+	private final List<LocalDateTime> mRemovedSlots;
+	private final Set<Warning> mAddedWarnings;
+	private final Set<Warning> mRemovedWarnings;
+	private final Set<Item> mAddedItems;
+	private final Set<Item> mRemovedItems;
+
+	private SnapshotDiff(Snapshot snapshot, Snapshot previous, Record summary, List<Record> changed,
+			List<LocalDateTime> removed, Set<Warning> addedWarnings, Set<Warning> removedWarnings,
+			Set<Item> addedItems, Set<Item> removedItems) {
+		mSnapshot = snapshot;
+		mPrevious = previous;
+		mSummary = summary;
+		mChangedSlots = changed;
+		mRemovedSlots = removed;
+		mAddedWarnings = addedWarnings;
+		mRemovedWarnings = removedWarnings;
+		mAddedItems = addedItems;
+		mRemovedItems = removedItems;
+	}
+
+	/**
+	 * Works out the changes from one snapshot to the next.
+	 * Both forecasts are walked once, in time order.
+	 *
+	 * @param	previous	the old snapshot, or null if there wasn't one
+	 * @param	snapshot	the new snapshot
+	 * @return	the changes, without item changes
+	 */
+	public static SnapshotDiff between(Snapshot previous, Snapshot snapshot) {
+		if (previous != null && ! previous.getLocation().equals(snapshot.getLocation()))
+			previous = null;
+
+		List<Record> before = previous == null ? Collections.<Record>emptyList() : previous.getIndex().first(Integer.MAX_VALUE);
+		List<Record> after = snapshot.getIndex().first(Integer.MAX_VALUE);
+
+		List<Record> changed = new ArrayList<>();
+		List<LocalDateTime> removed = new ArrayList<>();
+
+		int i = 0;
+		int j = 0;
+
+		while (i < before.size() || j < after.size()) {
+			int c;
+
+			if (i == before.size())
+				c = 1;
+			else if (j == after.size())
+				c = -1;
+			else
+				c = before.get(i).compareTo(after.get(j));
+
+			if (c < 0) {
+				removed.add(before.get(i++).getTimeStamp());
+
+			} else if (c > 0) {
+				changed.add(after.get(j++));
+
+			} else {
+				if (! same(before.get(i), after.get(j)))
+					changed.add(after.get(j));
+
+				i++;
+				j++;
+			}
+		}
+
+		Record summary = snapshot.getSummary();
+
+		if (previous != null && same(previous.getSummary(), summary))
+			summary = null;
+
+		Set<Warning> oldWarnings = warnings(previous == null ? null : previous.getWarnings());
+		Set<Warning> newWarnings = warnings(snapshot.getWarnings());
+
+		Set<Warning> addedWarnings = EnumSet.copyOf(newWarnings);
+		addedWarnings.removeAll(oldWarnings);
+
+		Set<Warning> removedWarnings = EnumSet.copyOf(oldWarnings);
+		removedWarnings.removeAll(newWarnings);
+
+		return new SnapshotDiff(snapshot, previous, summary,
+				Collections.unmodifiableList(changed), Collections.unmodifiableList(removed),
+				Collections.unmodifiableSet(addedWarnings), Collections.unmodifiableSet(removedWarnings),
+				Collections.<Item>emptySet(), Collections.<Item>emptySet());
+	}
+
+	/**
+	 * Adds the changes in recommended items for a commute window.
+	 * The forecast changes are shared with this diff, so this is cheap to
+	 * call once per distinct window.
+	 *
+	 * @param	start	the start of the window
+	 * @param	fin		the end of the window
+	 * @return	a copy of this diff with item changes filled in
+	 */
+	public SnapshotDiff forWindow(LocalTime start, LocalTime fin) {
+		Set<Item> oldItems = items(mPrevious == null ? null : mPrevious.recommend(start, fin));
+		Set<Item> newItems = items(mSnapshot.recommend(start, fin));
+
+		Set<Item> added = EnumSet.copyOf(newItems);
+		added.removeAll(oldItems);
+
+		Set<Item> removed = EnumSet.copyOf(oldItems);
+		removed.removeAll(newItems);
+
+		return new SnapshotDiff(mSnapshot, mPrevious, mSummary, mChangedSlots, mRemovedSlots,
+				mAddedWarnings, mRemovedWarnings,
+				Collections.unmodifiableSet(added), Collections.unmodifiableSet(removed));
+	}
+
+	/**
+	 * Tests whether nothing changed.
+	 *
+	 * @return	true if there are no changes
+	 */
+	public boolean isEmpty() {
+		return mSummary == null && mChangedSlots.isEmpty() && mRemovedSlots.isEmpty()
+				&& mAddedWarnings.isEmpty() && mRemovedWarnings.isEmpty()
+				&& mAddedItems.isEmpty() && mRemovedItems.isEmpty();
+	}
+
+	/**
+	 * Gets the new snapshot, for anything not covered by the diff.
+	 *
+	 * @return	the snapshot after the refresh
+	 */
+	public Snapshot getSnapshot() {
+		return mSnapshot;
+	}
+
+	/**
+	 * Tests whether the refresh was for a different location. If so,
+	 * everything in the new snapshot counts as added.
+	 *
+	 * @return	true if the location changed
+	 */
+	public boolean isLocationChanged() {
+		return mPrevious == null;
+	}
+
+	/**
+	 * Gets the new current weather summary.
+	 *
+	 * @return	the summary, or null if it hasn't changed
+	 */
+	public Record getSummary() {
+		return mSummary;
+	}
+
+	/**
+	 * Gets forecast slots which are new or whose icon or temperature changed.
+	 *
+	 * @return	changed records, ordered chronologically
+	 */
+	public List<Record> getChangedSlots() {
+		return mChangedSlots;
+	}
+
+	/**
+	 * Gets the time stamps of forecast slots which are no longer forecast,
+	 * usually because they are now in the past.
+	 *
+	 * @return	time stamps of removed slots, ordered chronologically
+	 */
+	public List<LocalDateTime> getRemovedSlots() {
+		return mRemovedSlots;
+	}
+
+	/**
+	 * Gets warnings which weren't in the previous snapshot.
+	 *
+	 * @return	new warnings
+	 */
+	public Set<Warning> getAddedWarnings() {
+		return mAddedWarnings;
+	}
+
+	/**
+	 * Gets warnings which are no longer in force.
+	 *
+	 * @return	removed warnings
+	 */
+	public Set<Warning> getRemovedWarnings() {
+		return mRemovedWarnings;
+	}
+
+	/**
+	 * Gets items now recommended for the listener's window which weren't before.
+	 * Empty for listeners without a window.
+	 *
+	 * @return	new items
+	 */
+	public Set<Item> getAddedItems() {
+		return mAddedItems;
+	}
+
+	/**
+	 * Gets items no longer recommended for the listener's window.
+	 * Empty for listeners without a window.
+	 *
+	 * @return	removed items
+	 */
+	public Set<Item> getRemovedItems() {
+		return mRemovedItems;
+	}
+
+	public String toString() {
+		return "summary=" + mSummary + " changed=" + mChangedSlots.size() + " removed=" + mRemovedSlots.size()
+				+ " warnings=+" + mAddedWarnings + "-" + mRemovedWarnings
+				+ " items=+" + mAddedItems + "-" + mRemovedItems;
+	}
+
+	private static boolean same(Record a, Record b) {
+		return a.getIcon() == b.getIcon() && a.getTemp() == b.getTemp();
+	}
+
+	private static Set<Warning> warnings(List<Warning> list) {
+		return list == null || list.isEmpty() ? EnumSet.noneOf(Warning.class) : EnumSet.copyOf(list);
+	}
+
+	private static Set<Item> items(List<Item> list) {
+		return list == null || list.isEmpty() ? EnumSet.noneOf(Item.class) : EnumSet.copyOf(list);
+	}
+}
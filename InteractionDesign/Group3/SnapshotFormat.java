@@ -0,0 +1,176 @@
+package InteractionDesign.Group3;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes snapshots as text, in the format of the cache file.
+ * Also used to send snapshots between cluster nodes.
+ */
+public class SnapshotFormat {
+	/**
+	 * Writes a snapshot.
+	 *
+	 * @param	s	the snapshot
+	 * @param	bw	where to write it
+	 * @throws	IOException	if writing fails
+	 */
+	public static void write(Snapshot s, BufferedWriter bw) throws IOException {
+		// Save time stamp
+
+		bw.write(s.getLastUpdated().toString());
+		bw.newLine();
+
+		// Save location
+
+		bw.write(s.getLocation());
+		bw.newLine();
+
+		// Sunrise & sunset
+
+		bw.write(s.getSunrise().toString());
+		bw.newLine();
+
+		bw.write(s.getSunset().toString());
+		bw.newLine();
+
+		// Coordinates, if known
+
+		if (s.getSolar() != null) {
+			bw.write(s.getLatitude() + "," + s.getLongitude());
+			bw.newLine();
+		}
+
+		// Blank line
+
+		bw.newLine();
+
+		// Save weekly forecast
+
+		for (List<Record> entry : s.getThisWeek()) {
+			for (Record r : entry) {
+				bw.write(r.toString());
+				bw.newLine();
+			}
+
+			bw.write("___");
+			bw.newLine();
+		}
+
+		bw.newLine();
+
+		// Save current summary
+
+		bw.write(s.getSummary().toString());
+		bw.newLine();
+
+		bw.newLine();
+
+		// Save weather warnings
+
+		bw.newLine();
+
+		for (Warning w : s.getWarnings()) {
+			bw.write(w.toString());
+			bw.newLine();
+		}
+	}
+
+	/**
+	 * Reads a snapshot, up to the end of the input.
+	 *
+	 * @param	br		where to read it from
+	 * @param	zone	the time zone of the snapshot's times, ie. of the cache's clock
+	 * @return	the snapshot
+	 * @throws	IOException	if reading fails
+	 * @throws	CacheException	if the input isn't a valid snapshot
+	 */
+	public static Snapshot read(BufferedReader br, ZoneId zone) throws IOException, CacheException {
+		try {
+			// Load time stamp
+
+			String line = next(br);
+			LocalDateTime lastUpdated = LocalDateTime.parse(line);
+
+			line = next(br);
+			String location = line;
+
+			// Load sunrise & sunset
+
+			line = next(br);
+			LocalDateTime sunrise = LocalDateTime.parse(line);
+
+			line = next(br);
+			LocalDateTime sunset = LocalDateTime.parse(line);
+
+			// Load coordinates, which older cache files don't have
+
+			double lat = Double.NaN;
+			double lon = Double.NaN;
+
+			line = next(br);
+
+			if (! line.equals("")) {
+				String[] coord = line.split(",");
+				lat = Double.parseDouble(coord[0]);
+				lon = Double.parseDouble(coord[1]);
+
+				next(br);	// Should be a blank line
+			}
+
+			// Load weekly forecast
+
+			List<List<Record>> week = new ArrayList<>();
+
+			List<Record> list = new ArrayList<>();
+
+			while (! (line = next(br)).equals("")) {
+				if (line.equals("___")) {
+					week.add(list);
+					list = new ArrayList<>();
+
+				} else {
+					list.add(new Record(line));
+				}
+			}
+
+			// Load daily summary
+
+			line = next(br);
+			Record summary = new Record(line);
+
+			next(br);
+
+			// Load weather warnings
+
+			List<Warning> warnings = new ArrayList<>();
+
+			while ((line = br.readLine()) != null) {
+				if (! line.equals(""))
+					warnings.add(Warning.valueOf(line));
+			}
+
+			return new Snapshot(location, lastUpdated, summary, week, warnings, sunrise, sunset, lat, lon, zone);
+
+		} catch (DateTimeParseException | IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			// eg. an unknown icon or warning, or a record missing fields
+			throw new CacheException("Invalid snapshot");
+		}
+	}
+
+	// Reads a line which must be there
+	private static String next(BufferedReader br) throws IOException, CacheException {
+		String line = br.readLine();
+
+		if (line == null)
+			throw new CacheException("Invalid snapshot");
+
+		return line;
+	}
+}
@@ -0,0 +1,16 @@
+package InteractionDesign.Group3;
+
+/**
+ * Receives what changed each time the weather cache is refreshed.
+ * Called on the refreshing thread, so implementations should return quickly
+ * and hand any slow work (eg. re-rendering) to another thread.
+ */
+public interface SnapshotListener {
+	/**
+	 * Called after a refresh which changed something the listener cares about.
+	 * Not called if nothing changed.
+	 *
+	 * @param	diff	the changes since the previous snapshot
+	 */
+	void changed(SnapshotDiff diff);
+}
@@ -0,0 +1,28 @@
+package InteractionDesign.Group3;
+
+/**
+ * Holds the latest snapshot of each location fetched.
+ */
+public interface SnapshotStore {
+	/**
+	 * Gets the latest snapshot of a location.
+	 *
+	 * @param	location	location string, in the form "[city name], [ISO 3166 country code]"
+	 * @return	the snapshot, or null if the location hasn't been fetched
+	 */
+	Snapshot get(String location);
+
+	/**
+	 * Stores a snapshot, replacing any older one of the same location.
+	 *
+	 * @param	s	the snapshot
+	 */
+	void put(Snapshot s);
+
+	/**
+	 * Gets the number of locations stored.
+	 *
+	 * @return	number of locations
+	 */
+	int size();
+}
@@ -0,0 +1,168 @@
+package InteractionDesign.Group3;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A class used for testing purposes only.
+ * Fills each snapshot store with made-up forecasts for thousands of
+ * locations, then compares heap used, garbage collection time while the
+ * application allocates, and how fast snapshots can be read back.
+ */
+public class SnapshotStoreBenchmark {
+	private static final int LOCATIONS = 10000;
+	private static final int CHURN = 20000000;
+	private static final int READS = 200000;
+
+	// Holds some of the churn for a while, as a real app would
+	private static Object[] sRetained = new Object[100000];
+
+	public static void main(String[] args) {
+		List<Snapshot> snapshots = makeSnapshots(LOCATIONS);
+
+		// Check a round trip keeps the data
+		OffHeapSnapshotStore check = new OffHeapSnapshotStore(ZoneId.systemDefault());
+		check.put(snapshots.get(0));
+
+		Snapshot back = check.get(snapshots.get(0).getLocation());
+
+		System.out.println("Round trip ok: " + (back.getThisWeek().toString().equals(snapshots.get(0).getThisWeek().toString())
+				&& back.getSummary().toString().equals(snapshots.get(0).getSummary().toString())
+				&& back.getWarnings().equals(snapshots.get(0).getWarnings())));
+
+		long base = usedHeap();
+
+		run("Heap", new HeapSnapshotStore(), snapshots, base);
+		run("Off-heap", new OffHeapSnapshotStore(ZoneId.systemDefault()), snapshots, base);
+	}
+
+	private static void run(String name, SnapshotStore store, List<Snapshot> snapshots, long base) {
+		Arrays.fill(sRetained, null);
+
+		// Stored snapshots are new objects, as they would be after each fetch
+		for (Snapshot s : snapshots)
+			store.put(copy(s));
+
+		long heap = usedHeap() - base;
+
+		long[] gc1 = gcStats();
+
+		Random random = new Random(1);
+
+		for (int i = 0; i < CHURN; i++)
+			sRetained[random.nextInt(sRetained.length)] = new long[4];
+
+		long[] gc2 = gcStats();
+
+		// A full collection has to trace everything still reachable
+		long t0 = System.nanoTime();
+		System.gc();
+		long full = System.nanoTime() - t0;
+
+		long t1 = System.nanoTime();
+
+		for (int i = 0; i < READS; i++)
+			store.get(snapshots.get(random.nextInt(snapshots.size())).getLocation()).getIndex();
+
+		long t2 = System.nanoTime();
+
+		System.out.println(name);
+		System.out.println("  heap used " + heap / 1024 / 1024 + "MB for " + store.size() + " locations"
+				+ (store instanceof OffHeapSnapshotStore
+						? ", plus " + ((OffHeapSnapshotStore) store).getCapacity() / 1024 / 1024 + "MB off heap" : ""));
+		System.out.println("  " + (gc2[0] - gc1[0]) + " collections, " + (gc2[1] - gc1[1]) + "ms in GC during churn, full GC "
+				+ full / 1000000 + "ms");
+		System.out.println("  " + (t2 - t1) / READS + "ns per read");
+	}
+
+	// Made-up forecasts for locations named "City [n], GB", also used by HeapSuite
+	static List<Snapshot> makeSnapshots(int locations) {
+		Random random = new Random(1);
+		Icon[] icons = Icon.values();
+		Warning[] warnings = Warning.values();
+
+		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime start = now.withHour(now.getHour() / 3 * 3).withMinute(0).withSecond(0).withNano(0).plusHours(3);
+
+		List<Snapshot> result = new ArrayList<>();
+
+		for (int n = 0; n < locations; n++) {
+			List<List<Record>> week = new ArrayList<>();
+			List<Record> day = new ArrayList<>();
+			week.add(day);
+
+			LocalDateTime t = start;
+
+			for (int i = 0; i < 40; i++) {
+				if (! t.toLocalDate().equals(t.minusHours(3).toLocalDate()) && i > 0) {
+					day = new ArrayList<>();
+					week.add(day);
+				}
+
+				Record r = new Record(icons[random.nextInt(icons.length)], random.nextInt(30) - 5, t);
+				String weekday = t.getDayOfWeek().toString();
+				r.setLabel(week.size() == 1 ? "Today" : week.size() == 2 ? "Tomorrow"
+						: weekday.substring(0, 1) + weekday.substring(1).toLowerCase());
+				day.add(r);
+
+				t = t.plusHours(3);
+			}
+
+			Record summary = new Record(icons[random.nextInt(icons.length)], random.nextInt(30) - 5, now);
+			summary.setLabel("Current");
+
+			List<Warning> w = new ArrayList<>();
+
+			if (random.nextBoolean())
+				w.add(warnings[random.nextInt(warnings.length)]);
+
+			result.add(new Snapshot("City " + n + ", GB", now, summary, week, w,
+					now.withHour(7), now.withHour(19), 50 + random.nextDouble() * 5, random.nextDouble() * 2, ZoneId.systemDefault()));
+		}
+
+		return result;
+	}
+
+	private static Snapshot copy(Snapshot s) {
+		List<List<Record>> week = new ArrayList<>();
+
+		for (List<Record> day : s.getThisWeek()) {
+			List<Record> d = new ArrayList<>();
+
+			for (Record r : day)
+				d.add(new Record(r.toString()));
+
+			week.add(d);
+		}
+
+		return new Snapshot(s.getLocation(), s.getLastUpdated(), new Record(s.getSummary().toString()), week,
+				new ArrayList<>(s.getWarnings()), s.getSunrise(), s.getSunset(), s.getLatitude(), s.getLongitude(), ZoneId.systemDefault());
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+
+		Runtime rt = Runtime.getRuntime();
+
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	// Collection count and time, over all collectors
+	private static long[] gcStats() {
+		long[] stats = new long[2];
+
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			stats[0] += gc.getCollectionCount();
+			stats[1] += gc.getCollectionTime();
+		}
+
+		return stats;
+	}
+}
@@ -0,0 +1,277 @@
+package InteractionDesign.Group3;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class used for testing purposes only.
+ * Soak test: drives a WeatherCache with simulated traffic for a long time,
+ * against an UpstreamSimulator replaying recorded responses, and reports
+ * refresh throughput, latency percentiles and heap growth each minute and at
+ * the end.
+ *
+ * Usage: SoakDriver [minutes] [cities] [recordings directory]
+ * By default, runs for 2 minutes over 2000 cities. Without a recordings
+ * directory, recordings are made from a local StubServer first.
+ *
+ * Data expire after 30 seconds rather than an hour, so each city is refreshed
+ * many times over, and an hour of soak is about 120 hours of real refreshes.
+ */
+public class SoakDriver {
+	private static final int CLIENTS = 8;
+	private static final Duration MAX_AGE = Duration.ofSeconds(30);
+	private static final long REPORT_INTERVAL = 60000;
+
+	// Time between each client's requests, and between the user's location changes
+	private static final long THINK_TIME = 5;
+	private static final long USER_THINK_TIME = 2000;
+
+	private static final Histogram sHits = new Histogram();
+	private static final Histogram sRefreshes = new Histogram();
+	private static final Histogram sSwitches = new Histogram();
+	private static final AtomicLong sFailures = new AtomicLong();
+
+	// Latencies to the millisecond, up to a minute, in constant space
+	private static class Histogram {
+		private final long[] mCounts = new long[60001];
+		private long mTotal = 0;
+
+		synchronized void record(long nanos) {
+			mCounts[(int) Math.min(nanos / 1000000, mCounts.length - 1)]++;
+			mTotal++;
+		}
+
+		// Count and percentiles since the last call, then starts afresh
+		synchronized String drain() {
+			String result = mTotal + " (p50 " + percentile(0.5) + "ms, p95 " + percentile(0.95) + "ms, p99 "
+					+ percentile(0.99) + "ms, max " + percentile(1) + "ms)";
+
+			Arrays.fill(mCounts, 0);
+			mTotal = 0;
+
+			return result;
+		}
+
+		private long percentile(double p) {
+			long target = (long) Math.ceil(p * mTotal);
+			long seen = 0;
+
+			for (int i = 0; i < mCounts.length; i++) {
+				seen += mCounts[i];
+
+				if (seen >= target && seen > 0)
+					return i;
+			}
+
+			return 0;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		long minutes = args.length > 0 ? Long.parseLong(args[0]) : 2;
+		int n = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		List<String> cities = pickCities(n);
+
+		Path recordings = args.length > 2 ? Paths.get(args[2]) : Files.createTempDirectory("recordings");
+
+		UpstreamSimulator sim = new UpstreamSimulator(0, recordings.toString());
+		sim.start();
+
+		if (args.length <= 2)
+			record(sim, cities);
+
+		System.out.println("Replaying " + sim.countRecordings() + " recordings");
+
+		sim.setLatency(UpstreamSimulator.LatencyModel.logNormal(80, 0.5));
+		sim.setErrorRate(0.01);
+		sim.setTruncateRate(0.002);
+		sim.setVariation(2, 0.05);
+
+		Path dir = Files.createTempDirectory("weatherapp");
+		Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+		APIClient client = new APIClient(sim.getURL(), new RequestScheduler(1000, 600000, 32),
+				new CircuitBreaker(50, 20, 0.5, 1000, 5000));
+
+		WeatherCache cache = new WeatherCache(client, dir.toString());
+		cache.setMaxAge(MAX_AGE);
+
+		long start = System.currentTimeMillis();
+		long deadline = start + minutes * 60000;
+
+		List<Thread> threads = new ArrayList<>();
+
+		for (int i = 0; i < CLIENTS; i++)
+			threads.add(new Thread(() -> client(cache, cities, deadline), "soak-client"));
+
+		threads.add(new Thread(() -> user(cache, cities, deadline), "soak-user"));
+
+		for (Thread t : threads)
+			t.start();
+
+		long requests = sim.getRequests();
+		long baseHeap = -1;
+		long heap = 0;
+		long maxHeap = 0;
+		long last = start;
+
+		while (System.currentTimeMillis() < deadline) {
+			Thread.sleep(Math.min(REPORT_INTERVAL, Math.max(1, deadline - System.currentTimeMillis())));
+
+			long now = System.currentTimeMillis();
+			double seconds = (now - last) / 1000.0;
+
+			long r = sim.getRequests();
+
+			heap = heapAfterGC();
+			maxHeap = Math.max(maxHeap, heap);
+
+			// The first minute fills the cache, so growth is measured from then
+			if (baseHeap < 0)
+				baseHeap = heap;
+
+			System.out.println("[" + (now - start) / 60000 + " min] API " + Math.round((r - requests) / seconds) + "/s, "
+					+ "errors " + sim.getErrors() + ", failed " + sFailures.get() + ", heap " + heap / 1024 / 1024 + "MB");
+			System.out.println("  refreshes " + sRefreshes.drain());
+			System.out.println("  hits " + sHits.drain());
+			System.out.println("  location changes " + sSwitches.drain());
+
+			requests = r;
+			last = now;
+		}
+
+		for (Thread t : threads)
+			t.join();
+
+		double hours = (System.currentTimeMillis() - start) / 3600000.0;
+
+		System.out.println("Done: " + sim.getRequests() + " API requests in " + Math.round(hours * 60) + " min"
+				+ (cache.getArchive() == null ? "" : ", " + cache.getArchive().size() + " forecast rows archived"));
+		System.out.println("  heap after first report " + baseHeap / 1024 / 1024 + "MB, last " + heap / 1024 / 1024
+				+ "MB, max " + maxHeap / 1024 / 1024 + "MB");
+
+		sim.stop();
+	}
+
+	// Asks for many locations, favouring some, as a server's users would
+	private static void client(WeatherCache cache, List<String> cities, long deadline) {
+		Random random = ThreadLocalRandom.current();
+
+		while (System.currentTimeMillis() < deadline) {
+			String city = cities.get((int) (cities.size() * Math.pow(random.nextDouble(), 2)));
+
+			Snapshot before = cache.getStored(city);
+			long t1 = System.nanoTime();
+
+			try {
+				cache.getSnapshot(city).get();
+
+				long t = System.nanoTime() - t1;
+
+				if (cache.getStored(city) != before)
+					sRefreshes.record(t);
+				else
+					sHits.record(t);
+
+			} catch (ExecutionException e) {
+				sFailures.incrementAndGet();
+
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			sleep(THINK_TIME);
+		}
+	}
+
+	// Changes the app's location now and then, which goes through refresh
+	private static void user(WeatherCache cache, List<String> cities, long deadline) {
+		Random random = ThreadLocalRandom.current();
+
+		while (System.currentTimeMillis() < deadline) {
+			long t1 = System.nanoTime();
+
+			try {
+				cache.setLocation(cities.get(random.nextInt(cities.size())));
+				cache.getSummary();
+
+				sSwitches.record(System.nanoTime() - t1);
+
+			} catch (APIException | CacheException e) {
+				sFailures.incrementAndGet();
+			}
+
+			sleep(USER_THINK_TIME);
+		}
+	}
+
+	// Records every city from a local stub, through the simulator
+	private static void record(UpstreamSimulator sim, List<String> cities) throws IOException {
+		StubServer stub = new StubServer(0);
+		stub.start();
+
+		sim.setRecording(stub.getURL(), null);
+
+		APIClient client = new APIClient(sim.getURL(), new RequestScheduler(1000, 600000, 16),
+				new CircuitBreaker(20, 5, 0.5, 3000, 30000));
+
+		long t1 = System.nanoTime();
+
+		cities.parallelStream().forEach(city -> {
+			try {
+				client.currentWeatherAtCity(city, Priority.BACKGROUND);
+				client.forecastWeatherAtCity(city);
+
+			} catch (IOException e) {
+				System.out.println("Failed to record " + city + ": " + e.getMessage());
+			}
+		});
+
+		System.out.println("Recorded " + sim.getRecorded() + " responses in " + (System.nanoTime() - t1) / 1000000 + "ms");
+
+		sim.setRecording(null, null);
+		stub.stop();
+	}
+
+	// Cities spread through the list, starting with the app's default
+	private static List<String> pickCities(int n) throws IOException {
+		List<String> all = Files.readAllLines(Paths.get("data/cityList.txt"));
+
+		List<String> cities = new ArrayList<>();
+		cities.add("Cambridge, GB");
+
+		for (int i = 0; cities.size() < n && i < all.size(); i += Math.max(1, all.size() / n)) {
+			if (! all.get(i).equals("Cambridge, GB"))
+				cities.add(all.get(i));
+		}
+
+		return cities;
+	}
+
+	private static long heapAfterGC() {
+		System.gc();
+
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package InteractionDesign.Group3;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Calculates sunrise and sunset times locally, from a location's coordinates.
+ * Uses the sunrise equation with corrections for the equation of time and
+ * atmospheric refraction, which is accurate to within a couple of minutes
+ * away from the poles. That is plenty for choosing day or night icons.
+ */
+public class SolarCalculator {
+	// Julian date of the J2000 epoch (2000-01-01 12:00 UTC)
+	private static final double J2000 = 2451545.0;
+	// Julian date of the unix epoch
+	private static final double UNIX_EPOCH = 2440587.5;
+	// Epoch day of 2000-01-01
+	private static final long J2000_EPOCH_DAY = 10957;
+
+	// Altitude of the sun's centre at sunrise, allowing for refraction and the size of the disc
+	private static final double HORIZON = Math.toRadians(-0.833);
+	// Obliquity of the ecliptic
+	private static final double OBLIQUITY = Math.toRadians(23.4397);
+
+	private final double mLatitude;
+	private final double mLongitude;
+	private final ZoneId mZone;
+
+	/**
+	 * Constructs a calculator for a particular location.
+	 *
+	 * @param	lat		latitude in degrees, north positive
+	 * @param	lon		longitude in degrees, east positive
+	 * @param	zone	the time zone in which to give times
+	 */
+	public SolarCalculator(double lat, double lon, ZoneId zone) {
+		mLatitude = lat;
+		mLongitude = lon;
+		mZone = zone;
+	}
+
+	/**
+	 * Gets the time of sunrise on a particular date.
+	 * Returns null if the sun does not rise or set on that date (polar day or night).
+	 *
+	 * @param	date	the date
+	 * @return	sunrise time
+	 */
+	public LocalDateTime sunrise(LocalDate date) {
+		double[] t = riseAndSet(date);
+
+		return t == null ? null : toLocal(t[0]);
+	}
+
+	/**
+	 * Gets the time of sunset on a particular date.
+	 * Returns null if the sun does not rise or set on that date (polar day or night).
+	 *
+	 * @param	date	the date
+	 * @return	sunset time
+	 */
+	public LocalDateTime sunset(LocalDate date) {
+		double[] t = riseAndSet(date);
+
+		return t == null ? null : toLocal(t[1]);
+	}
+
+	/**
+	 * Tests whether the sun is down at a particular time.
+	 *
+	 * @param	t	the time
+	 * @return	true if it is before sunrise or after sunset
+	 */
+	public boolean isDark(LocalDateTime t) {
+		double[] rs = riseAndSet(t.toLocalDate());
+
+		if (rs == null)
+			return polarNight(t.toLocalDate());
+
+		double j = t.atZone(mZone).toEpochSecond() / 86400.0 + UNIX_EPOCH;
+
+		return j < rs[0] || j > rs[1];
+	}
+
+	// Returns Julian dates of sunrise and sunset, or null if there are none
+	private double[] riseAndSet(LocalDate date) {
+		double transit = transit(date);
+		double cosH = cosHourAngle(transit);
+
+		if (cosH > 1 || cosH < -1)
+			return null;
+
+		double h = Math.toDegrees(Math.acos(cosH)) / 360;
+
+		return new double[] {transit - h, transit + h};
+	}
+
+	// True if the sun stays below the horizon all day
+	private boolean polarNight(LocalDate date) {
+		return cosHourAngle(transit(date)) > 1;
+	}
+
+	// Julian date of solar noon
+	private double transit(LocalDate date) {
+		// Mean solar noon, in days since J2000
+		double n = date.toEpochDay() - J2000_EPOCH_DAY - mLongitude / 360;
+
+		double m = Math.toRadians((357.5291 + 0.98560028 * n) % 360);
+		double c = 1.9148 * Math.sin(m) + 0.0200 * Math.sin(2 * m) + 0.0003 * Math.sin(3 * m);
+		double lambda = Math.toRadians((Math.toDegrees(m) + c + 180 + 102.9372) % 360);
+
+		return J2000 + n + 0.0053 * Math.sin(m) - 0.0069 * Math.sin(2 * lambda);
+	}
+
+	// Cosine of the hour angle between solar noon and sunrise
+	private double cosHourAngle(double transit) {
+		double n = transit - J2000;
+
+		double m = Math.toRadians((357.5291 + 0.98560028 * n) % 360);
+		double c = 1.9148 * Math.sin(m) + 0.0200 * Math.sin(2 * m) + 0.0003 * Math.sin(3 * m);
+		double lambda = Math.toRadians((Math.toDegrees(m) + c + 180 + 102.9372) % 360);
+
+		double declination = Math.asin(Math.sin(lambda) * Math.sin(OBLIQUITY));
+		double lat = Math.toRadians(mLatitude);
+
+		return (Math.sin(HORIZON) - Math.sin(lat) * Math.sin(declination))
+				/ (Math.cos(lat) * Math.cos(declination));
+	}
+
+	private LocalDateTime toLocal(double julian) {
+		long seconds = Math.round((julian - UNIX_EPOCH) * 86400);
+
+		return LocalDateTime.ofInstant(Instant.ofEpochSecond(seconds), mZone);
+	}
+}
@@ -0,0 +1,166 @@
+package InteractionDesign.Group3;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Guesses which location the user is about to pick from the search
+ * suggestions, and fetches its weather before they do.
+ * Once a search narrows to a few candidates, the top ones are fetched at
+ * speculative priority. Fetches stop once the session's cap is reached, and
+ * are skipped while the rate limit is close to running out, so speculation
+ * never delays real requests.
+ */
+public class SpeculativePrefetcher {
+	private final Function<String, CompletableFuture<Snapshot>> mSnapshots;
+	private final IntSupplier mHeadroom;
+
+	private final int mCandidates;
+	private final int mTop;
+	private final int mCap;
+	private final int mReserve;
+
+	private final Set<String> mPrefetched = new HashSet<>();
+
+	// Metrics
+	private int mIssued = 0;
+	private int mCapped = 0;
+	private int mThrottled = 0;
+	private int mHits = 0;
+	private int mMisses = 0;
+
+	/**
+	 * Constructs a prefetcher.
+	 *
+	 * @param	snapshots	fetches the snapshot for a location
+	 * @param	headroom	gets the number of requests the rate limit allows right now
+	 * @param	candidates	prefetch once there are this many suggestions or fewer
+	 * @param	top			the number of top suggestions to prefetch
+	 * @param	cap			the most locations prefetched per session
+	 * @param	reserve		the headroom left for real requests
+	 */
+	public SpeculativePrefetcher(Function<String, CompletableFuture<Snapshot>> snapshots, IntSupplier headroom,
+			int candidates, int top, int cap, int reserve) {
+		mSnapshots = snapshots;
+		mHeadroom = headroom;
+		mCandidates = candidates;
+		mTop = top;
+		mCap = cap;
+		mReserve = reserve;
+	}
+
+	/**
+	 * Takes account of a list of search suggestions shown to the user,
+	 * prefetching the top ones if the list is short enough.
+	 *
+	 * @param	suggestions	suggestions, best first
+	 */
+	public synchronized void suggested(List<String> suggestions) {
+		if (suggestions.isEmpty() || suggestions.size() > mCandidates)
+			return;
+
+		for (String location : suggestions.subList(0, Math.min(mTop, suggestions.size()))) {
+			if (mPrefetched.contains(location))
+				continue;
+
+			if (mIssued >= mCap) {
+				mCapped++;
+				continue;
+			}
+
+			if (mHeadroom.getAsInt() <= mReserve) {
+				mThrottled++;
+				continue;
+			}
+
+			mIssued++;
+			mPrefetched.add(location);
+			mSnapshots.apply(location);
+		}
+	}
+
+	/**
+	 * Takes account of the user switching location, to measure the hit rate.
+	 *
+	 * @param	location	the new location
+	 * @return	true if the location was prefetched
+	 */
+	public synchronized boolean switched(String location) {
+		if (mPrefetched.contains(location)) {
+			mHits++;
+			return true;
+		}
+
+		mMisses++;
+
+		return false;
+	}
+
+	/**
+	 * Starts a new session, resetting the cap. Metrics are kept.
+	 */
+	public synchronized void newSession() {
+		mIssued = 0;
+		mPrefetched.clear();
+	}
+
+	/**
+	 * Gets the number of locations prefetched this session.
+	 *
+	 * @return	number of prefetches
+	 */
+	public synchronized int getIssued() {
+		return mIssued;
+	}
+
+	/**
+	 * Gets the number of prefetches skipped because the cap was reached.
+	 *
+	 * @return	number of prefetches skipped
+	 */
+	public synchronized int getCapped() {
+		return mCapped;
+	}
+
+	/**
+	 * Gets the number of prefetches skipped to save the rate limit.
+	 *
+	 * @return	number of prefetches skipped
+	 */
+	public synchronized int getThrottled() {
+		return mThrottled;
+	}
+
+	/**
+	 * Gets the number of location switches to a prefetched location.
+	 *
+	 * @return	number of hits
+	 */
+	public synchronized int getHits() {
+		return mHits;
+	}
+
+	/**
+	 * Gets the number of location switches to a location not prefetched.
+	 *
+	 * @return	number of misses
+	 */
+	public synchronized int getMisses() {
+		return mMisses;
+	}
+
+	/**
+	 * Gets the fraction of location switches which were prefetched.
+	 *
+	 * @return	hit rate between 0 and 1
+	 */
+	public synchronized double getHitRate() {
+		int switches = mHits + mMisses;
+
+		return switches == 0 ? 0 : (double) mHits / switches;
+	}
+}
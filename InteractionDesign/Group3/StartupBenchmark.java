@@ -0,0 +1,154 @@
+package InteractionDesign.Group3;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A class used for testing purposes only.
+ * Measures the time from launching a JVM to the first getSummary returning,
+ * plainly, with the startup image, with an AppCDS archive, and with both.
+ * Each configuration is launched several times as a new process, against a
+ * local stub API, with a fresh cache file so no start up needs the network.
+ *
+ * The app is packaged as a jar first, as AppCDS only archives classes from
+ * jars. The AppCDS runs need JDK 13 or later.
+ */
+public class StartupBenchmark {
+	private static final int RUNS = 7;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length >= 3 && args[0].equals("child")) {
+			child(args[1], args[2], args.length > 3);
+			return;
+		}
+
+		StubServer stub = new StubServer(0);
+		stub.start();
+
+		Path dir = Files.createTempDirectory("weatherapp");
+		Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+		Path jar = makeJar(dir.resolve("weatherapp.jar"));
+		String jsa = dir.resolve("weatherapp.jsa").toString();
+
+		// Training run: writes the cache file and startup image, and archives
+		// the classes start up loads
+		if (launch(jar, dir, stub, true, "-XX:ArchiveClassesAtExit=" + jsa, "-Dweatherapp.fastStart=true") < 0)
+			System.out.println("Training run failed");
+
+		report("Plain", jar, dir, stub);
+		report("Startup image", jar, dir, stub, "-Dweatherapp.fastStart=true");
+		report("AppCDS", jar, dir, stub, "-XX:SharedArchiveFile=" + jsa);
+		report("Both", jar, dir, stub, "-XX:SharedArchiveFile=" + jsa, "-Dweatherapp.fastStart=true");
+
+		stub.stop();
+	}
+
+	// Starts up as the app does, and says when the first summary is ready
+	private static void child(String dir, String url, boolean train) throws APIException, CacheException {
+		APIClient client = new APIClient(url, new RequestScheduler(60, 600, 8), new CircuitBreaker(20, 5, 0.5, 3000, 30000));
+
+		WeatherCache cache = new WeatherCache(client, dir);
+		cache.getSummary();
+
+		System.out.println("READY");
+
+		if (train)
+			cache.saveStartupImage();
+	}
+
+	private static void report(String name, Path jar, Path dir, StubServer stub, String... options) throws IOException,
+			InterruptedException {
+		long[] times = new long[RUNS];
+
+		for (int i = 0; i < RUNS; i++) {
+			times[i] = launch(jar, dir, stub, false, options);
+
+			if (times[i] < 0) {
+				System.out.println(name + ": failed to start");
+				return;
+			}
+		}
+
+		Arrays.sort(times);
+
+		System.out.println(name + ": median " + times[RUNS / 2] / 1000000 + "ms, min " + times[0] / 1000000 + "ms");
+	}
+
+	// Time from launch until the first summary, in nanoseconds, or -1 if it never came
+	private static long launch(Path jar, Path dir, StubServer stub, boolean train, String... options) throws IOException,
+			InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(Arrays.asList(options));
+		command.addAll(Arrays.asList("-cp", jar.toString(), StartupBenchmark.class.getName(), "child", dir.toString(),
+				stub.getURL()));
+
+		if (train)
+			command.add("train");
+
+		long t1 = System.nanoTime();
+
+		Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+		long time = -1;
+
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+			String line;
+
+			while ((line = br.readLine()) != null) {
+				if (time < 0 && line.equals("READY"))
+					time = System.nanoTime() - t1;
+			}
+		}
+
+		p.waitFor();
+
+		return time;
+	}
+
+	// Packages the classes this was loaded from, unless they are already a jar
+	private static Path makeJar(Path jar) throws IOException {
+		Path source;
+
+		try {
+			source = Paths.get(StartupBenchmark.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+		} catch (URISyntaxException e) {
+			throw new IOException(e);
+		}
+
+		if (! source.toFile().isDirectory())
+			return source;
+
+		List<Path> classes;
+
+		try (Stream<Path> files = Files.walk(source)) {
+			classes = files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList());
+		}
+
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+			for (Path f : classes) {
+				out.putNextEntry(new JarEntry(source.relativize(f).toString().replace(File.separatorChar, '/')));
+				Files.copy(f, (OutputStream) out);
+				out.closeEntry();
+			}
+		}
+
+		return jar;
+	}
+}
@@ -0,0 +1,192 @@
+package InteractionDesign.Group3;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Everything WeatherCache builds at start up, saved in one file so the next
+ * start up can load it in one read instead of rebuilding it: the icon
+ * mapping, the search suggestion index and the last snapshot.
+ *
+ * The image records the size and modification time of the city list and the
+ * cache file it was built from. It is ignored if the city list has changed,
+ * and its snapshot is ignored if the cache file has.
+ */
+public class StartupImage {
+	// Changed whenever the layout changes, so old images are ignored
+	private static final int VERSION = 1;
+
+	private final Map<WeatherData.ConditionCode, Icon> mIconMap;
+	private final SearchSuggester mSuggester;
+	private final Snapshot mSnapshot;
+
+	private StartupImage(Map<WeatherData.ConditionCode, Icon> iconMap, SearchSuggester suggester, Snapshot snapshot) {
+		mIconMap = iconMap;
+		mSuggester = suggester;
+		mSnapshot = snapshot;
+	}
+
+	/**
+	 * Loads an image.
+	 *
+	 * @param	file		the image
+	 * @param	cityList	the city list it should have been built from
+	 * @param	cacheFile	the cache file its snapshot should match
+	 * @param	zone		the time zone of the snapshot's times, ie. of the cache's clock
+	 * @return	the image, or null if there isn't one or it is out of date
+	 * @throws	IOException	if the image can't be read
+	 */
+	static StartupImage load(String file, String cityList, String cacheFile, ZoneId zone) throws IOException {
+		if (! new File(file).isFile())
+			return null;
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(Paths.get(file))));
+
+		if (in.readInt() != VERSION || in.readLong() != stamp(cityList))
+			return null;
+
+		boolean snapshotValid = in.readLong() == stamp(cacheFile);
+
+		// Icon mapping
+
+		Map<WeatherData.ConditionCode, Icon> iconMap = new HashMap<>();
+
+		for (int n = in.readInt(); n > 0; n--)
+			iconMap.put(WeatherData.ConditionCode.valueOf(in.readUTF()), Icon.valueOf(in.readUTF()));
+
+		// Suggestion index
+
+		SearchSuggester suggester = new SearchSuggester(in);
+
+		// Last snapshot, in the cache file's format
+
+		Snapshot snapshot = null;
+
+		if (in.readBoolean()) {
+			byte[] text = new byte[in.readInt()];
+			in.readFully(text);
+
+			if (snapshotValid) {
+				try {
+					snapshot = SnapshotFormat.read(new BufferedReader(new StringReader(new String(text, StandardCharsets.UTF_8))), zone);
+
+				} catch (CacheException e) {
+					// The cache file will be loaded instead
+				}
+			}
+		}
+
+		return new StartupImage(iconMap, suggester, snapshot);
+	}
+
+	/**
+	 * Saves an image. The cache file should already hold the snapshot.
+	 *
+	 * @param	file		where to save the image
+	 * @param	cityList	the city list the suggestion index was built from
+	 * @param	cacheFile	the cache file holding the snapshot
+	 * @param	iconMap		the icon mapping
+	 * @param	suggester	the suggestion index
+	 * @param	snapshot	the last snapshot, or null if there isn't one
+	 * @throws	IOException	if writing fails
+	 */
+	static void save(String file, String cityList, String cacheFile, Map<WeatherData.ConditionCode, Icon> iconMap,
+			SearchSuggester suggester, Snapshot snapshot) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeInt(VERSION);
+		out.writeLong(stamp(cityList));
+		out.writeLong(stamp(cacheFile));
+
+		out.writeInt(iconMap.size());
+
+		for (Map.Entry<WeatherData.ConditionCode, Icon> e : iconMap.entrySet()) {
+			out.writeUTF(e.getKey().name());
+			out.writeUTF(e.getValue().name());
+		}
+
+		suggester.write(out);
+
+		out.writeBoolean(snapshot != null);
+
+		if (snapshot != null) {
+			StringWriter text = new StringWriter();
+
+			try (BufferedWriter bw = new BufferedWriter(text)) {
+				SnapshotFormat.write(snapshot, bw);
+			}
+
+			byte[] b = text.toString().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(b.length);
+			out.write(b);
+		}
+
+		out.flush();
+
+		// Replaced whole, so a start up never reads half an image
+		Path target = Paths.get(file);
+		Path tmp = Paths.get(file + ".tmp");
+
+		Files.write(tmp, bytes.toByteArray());
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	Map<WeatherData.ConditionCode, Icon> getIconMap() {
+		return mIconMap;
+	}
+
+	SearchSuggester getSuggester() {
+		return mSuggester;
+	}
+
+	/**
+	 * Gets the last snapshot.
+	 *
+	 * @return	the snapshot, or null if there wasn't one or the cache file has changed since
+	 */
+	Snapshot getSnapshot() {
+		return mSnapshot;
+	}
+
+	// Identifies a version of a file; 0 if it doesn't exist
+	private static long stamp(String file) {
+		File f = new File(file);
+
+		return f.isFile() ? f.lastModified() * 31 + f.length() : 0;
+	}
+
+	/**
+	 * The training run for fast-start mode. Starts the app as it normally
+	 * starts, saves a startup image, and exits. Run with
+	 * -XX:ArchiveClassesAtExit to also make an AppCDS archive of the classes
+	 * start up loads; see faststart.sh.
+	 *
+	 * @param	args	not used
+	 */
+	public static void main(String[] args) throws APIException, CacheException {
+		WeatherCache cache = WeatherCache.getCache();
+
+		System.out.println("Current weather: " + cache.getSummary());
+
+		cache.saveStartupImage();
+
+		System.out.println("Startup image saved");
+	}
+}
@@ -0,0 +1,307 @@
+package InteractionDesign.Group3;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for the openweathermap API, used for testing purposes only.
+ * Serves made-up "weather" and "forecast" responses in the API's format, and
+ * can inject faults: added latency, error responses, and hanging requests.
+ */
+public class StubServer {
+	private static final int[] CODES = {800, 801, 802, 803, 804, 500, 501, 502, 211, 600, 741};
+	private static final DateTimeFormatter DT_TXT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	private final HttpServer mServer;
+	private final Random mRandom = new Random();
+
+	private volatile long mLatency = 0;			// In milliseconds
+	private volatile long mTailLatency = 0;
+	private volatile double mTailRate = 0;
+	private volatile double mErrorRate = 0;
+	private volatile boolean mHang = false;
+	private volatile Clock mClock = Clock.systemUTC();
+
+	private final AtomicLong mRequests = new AtomicLong();
+	private final AtomicLong mErrors = new AtomicLong();
+	private final AtomicInteger mInFlight = new AtomicInteger();
+
+	/**
+	 * Constructs a stub listening on the loopback interface.
+	 * Call start before making requests.
+	 *
+	 * @param	port	the port, or 0 for any free port
+	 * @throws	IOException	if the port can't be bound
+	 */
+	public StubServer(int port) throws IOException {
+		mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		mServer.createContext("/data/2.5/", this::handle);
+		mServer.setExecutor(Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "stub");
+			t.setDaemon(true);
+			return t;
+		}));
+	}
+
+	/**
+	 * Starts serving requests.
+	 */
+	public void start() {
+		mServer.start();
+	}
+
+	/**
+	 * Stops serving requests.
+	 */
+	public void stop() {
+		mServer.stop(0);
+	}
+
+	/**
+	 * Gets the URL to give APIClient, ending in "/data/2.5/".
+	 *
+	 * @return	base URL of the stub
+	 */
+	public String getURL() {
+		return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/data/2.5/";
+	}
+
+	/**
+	 * Sets a delay added to every response.
+	 *
+	 * @param	millis	delay in milliseconds
+	 */
+	public void setLatency(long millis) {
+		mLatency = millis;
+	}
+
+	/**
+	 * Sets an extra delay added to a fraction of responses, to give the
+	 * stub a long latency tail.
+	 *
+	 * @param	millis	extra delay in milliseconds
+	 * @param	rate	the fraction of responses delayed, between 0 and 1
+	 */
+	public void setTailLatency(long millis, double rate) {
+		mTailLatency = millis;
+		mTailRate = rate;
+	}
+
+	/**
+	 * Sets the fraction of requests answered with HTTP 500.
+	 *
+	 * @param	rate	between 0 and 1
+	 */
+	public void setErrorRate(double rate) {
+		mErrorRate = rate;
+	}
+
+	/**
+	 * Makes requests hang without answering, until set back to false.
+	 *
+	 * @param	hang	true to hang requests
+	 */
+	public void setHang(boolean hang) {
+		mHang = hang;
+	}
+
+	/**
+	 * Sets the clock the weather is made up for, eg. a simulated one, so
+	 * forecasts start from its time rather than the system's.
+	 *
+	 * @param	clock	the clock
+	 */
+	public void setClock(Clock clock) {
+		mClock = clock;
+	}
+
+	/**
+	 * Gets the number of requests received.
+	 *
+	 * @return	number of requests
+	 */
+	public long getRequests() {
+		return mRequests.get();
+	}
+
+	/**
+	 * Gets the number of error responses sent.
+	 *
+	 * @return	number of errors
+	 */
+	public long getErrors() {
+		return mErrors.get();
+	}
+
+	/**
+	 * Gets the number of requests being answered now.
+	 *
+	 * @return	number of requests in flight
+	 */
+	public int getInFlight() {
+		return mInFlight.get();
+	}
+
+	private void handle(HttpExchange ex) throws IOException {
+		mRequests.incrementAndGet();
+		mInFlight.incrementAndGet();
+
+		try {
+			respond(ex);
+
+		} finally {
+			mInFlight.decrementAndGet();
+		}
+	}
+
+	private void respond(HttpExchange ex) throws IOException {
+		try {
+			if (mLatency > 0)
+				Thread.sleep(mLatency);
+
+			if (mTailRate > 0 && mRandom.nextDouble() < mTailRate)
+				Thread.sleep(mTailLatency);
+
+			while (mHang)
+				Thread.sleep(50);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		String path = ex.getRequestURI().getPath();
+		String body;
+		int status = 200;
+
+		if (mRandom.nextDouble() < mErrorRate) {
+			mErrors.incrementAndGet();
+			status = 500;
+			body = "{\"cod\":500,\"message\":\"Internal error\"}";
+
+		} else if (path.endsWith("/weather")) {
+			body = weather(city(ex)).toString();
+
+		} else if (path.endsWith("/forecast")) {
+			body = forecast(city(ex)).toString();
+
+		} else {
+			status = 404;
+			body = "{\"cod\":404,\"message\":\"Not found\"}";
+		}
+
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+		ex.getResponseHeaders().set("Content-Type", "application/json");
+		ex.sendResponseHeaders(status, bytes.length);
+
+		try (OutputStream out = ex.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private JsonObject weather(String name) {
+		long now = mClock.millis() / 1000;
+
+		JsonObject json = entry();
+		json.add("coord", coord());
+		json.addProperty("dt", now);
+		json.addProperty("name", name);
+
+		JsonObject sys = new JsonObject();
+		sys.addProperty("sunrise", now - 6 * 3600);
+		sys.addProperty("sunset", now + 4 * 3600);
+		json.add("sys", sys);
+
+		return json;
+	}
+
+	private JsonObject forecast(String name) {
+		LocalDateTime t = LocalDateTime.now(mClock.withZone(ZoneOffset.UTC)).withMinute(0).withSecond(0).withNano(0);
+		t = t.withHour(t.getHour() / 3 * 3).plusHours(3);
+
+		JsonArray list = new JsonArray();
+
+		for (int i = 0; i < 40; i++) {
+			JsonObject e = entry();
+			e.add("sys", new JsonObject());
+			e.addProperty("dt", t.toEpochSecond(ZoneOffset.UTC));
+			e.addProperty("dt_txt", t.format(DT_TXT));
+			list.add(e);
+
+			t = t.plusHours(3);
+		}
+
+		JsonObject city = new JsonObject();
+		city.addProperty("name", name);
+		city.add("coord", coord());
+
+		JsonObject json = new JsonObject();
+		json.addProperty("cod", "200");
+		json.add("list", list);
+		json.add("city", city);
+
+		return json;
+	}
+
+	// The fields common to current weather and forecast entries
+	private JsonObject entry() {
+		JsonObject weather = new JsonObject();
+		weather.addProperty("id", CODES[mRandom.nextInt(CODES.length)]);
+		weather.addProperty("description", "made up");
+
+		JsonArray weathers = new JsonArray();
+		weathers.add(weather);
+
+		JsonObject main = new JsonObject();
+		main.addProperty("temp", 270 + mRandom.nextDouble() * 25);
+		main.addProperty("pressure", 1000);
+		main.addProperty("humidity", 70);
+
+		JsonObject wind = new JsonObject();
+		wind.addProperty("speed", mRandom.nextDouble() * 10);
+
+		JsonObject json = new JsonObject();
+		json.add("weather", weathers);
+		json.add("main", main);
+		json.add("wind", wind);
+
+		return json;
+	}
+
+	// The city asked for, without its country code
+	private static String city(HttpExchange ex) {
+		String query = ex.getRequestURI().getQuery();
+
+		if (query != null) {
+			for (String param : query.split("&")) {
+				if (param.startsWith("q="))
+					return param.substring(2).split(",")[0].trim();
+			}
+		}
+
+		return "Cambridge";
+	}
+
+	private JsonObject coord() {
+		JsonObject coord = new JsonObject();
+		coord.addProperty("lat", 52.2);
+		coord.addProperty("lon", 0.12);
+
+		return coord;
+	}
+}
@@ -0,0 +1,83 @@
+package InteractionDesign.Group3;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class used for testing purposes only.
+ * Registers thousands of subscribers with assorted commute windows, refreshes
+ * the cache repeatedly against a local stub API, and measures how long
+ * telling them what changed takes. For comparison, also times working out
+ * the diff separately for every subscriber.
+ */
+public class SubscriptionBenchmark {
+	private static final int SUBSCRIBERS = 10000;
+	private static final int REFRESHES = 20;
+
+	public static void main(String[] args) throws APIException, CacheException, IOException {
+		StubServer stub = new StubServer(0);
+		stub.start();
+
+		Path dir = Files.createTempDirectory("weatherapp");
+		Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+		APIClient client = new APIClient(stub.getURL(), new RequestScheduler(1000, 60000, 8),
+				new CircuitBreaker(20, 5, 0.5, 3000, 30000));
+
+		WeatherCache cache = new WeatherCache(client, dir.toString());
+		cache.setMaxAge(Duration.ZERO);
+
+		AtomicLong delivered = new AtomicLong();
+		LocalTime[] starts = new LocalTime[SUBSCRIBERS];
+
+		for (int i = 0; i < SUBSCRIBERS; i++) {
+			// Half-hourly departures between 6am and 10am, and a few without a window
+			if (i % 10 == 0) {
+				cache.subscribe(diff -> delivered.incrementAndGet());
+			} else {
+				starts[i] = LocalTime.of(6, 0).plusMinutes(30 * (i % 9));
+				cache.subscribe(diff -> delivered.incrementAndGet(), starts[i], starts[i].plusMinutes(45));
+			}
+		}
+
+		// Keep the last pair of snapshots for the comparison
+		Snapshot[] pair = new Snapshot[2];
+		cache.subscribe(diff -> {
+			pair[0] = pair[1];
+			pair[1] = diff.getSnapshot();
+		});
+
+		long notify = 0;
+
+		for (int n = 0; n < REFRESHES; n++) {
+			cache.getThisWeek();
+			notify += cache.getRefreshTimings().getOrDefault("notify", 0L);
+		}
+
+		System.out.println(SUBSCRIBERS + " subscribers, " + REFRESHES + " refreshes, "
+				+ delivered.get() + " notifications delivered");
+		System.out.println("Shared diff: " + notify / REFRESHES + "us per refresh");
+
+		// Diffing once per subscriber, as each client polling would
+
+		long t1 = System.nanoTime();
+
+		for (int i = 0; i < SUBSCRIBERS; i++) {
+			SnapshotDiff d = SnapshotDiff.between(pair[0], pair[1]);
+
+			if (starts[i] != null)
+				d = d.forWindow(starts[i], starts[i].plusMinutes(45));
+		}
+
+		long t2 = System.nanoTime();
+
+		System.out.println("Diff per subscriber: " + (t2 - t1) / 1000 + "us per refresh");
+
+		stub.stop();
+	}
+}
@@ -0,0 +1,171 @@
+package InteractionDesign.Group3;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A class used for testing purposes only.
+ * Simulates fast typists searching for cities, and compares the number of
+ * suggestion queries run synchronously (one per keystroke) with the number
+ * run by SuggestionScheduler.
+ * Then records picks, many of them of a few popular cities, and compares
+ * the keystrokes needed for each to reach the top suggestions, and the time
+ * per query, with and without ranking by popularity.
+ */
+public class SuggestionBenchmark {
+	private static final String[] CITIES = {"Cambridge", "Manchester", "Birmingham", "Edinburgh", "Aberystwyth", "Canterbury"};
+
+	// Time between keystrokes, in milliseconds. Fast typists manage about 80
+	private static final long KEYSTROKE = 60;
+	// Pause after each city, while the user reads the suggestions
+	private static final long PAUSE = 400;
+
+	private static final int TYPISTS = 8;
+
+	// Popular cities far down their prefixes' suggestions, as the list puts GB first
+	private static final String[] POPULAR = {"Santiago, CL", "Paris, FR", "Berlin, DE", "Madrid, ES", "Toronto, CA",
+			"Cairo, EG"};
+
+	// Suggestions a user reads before typing on
+	private static final int TOP = 5;
+	private static final int PICKS = 10000;
+	private static final int QUERIES = 20000;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		SearchSuggester sug = new SearchSuggester("data/cityList.txt");
+
+		// Synchronous: every keystroke runs a query
+
+		long syncQueries = 0;
+		long t1 = System.nanoTime();
+
+		for (int n = 0; n < TYPISTS; n++) {
+			for (String city : CITIES) {
+				for (int i = 1; i <= city.length(); i++) {
+					sug.getSuggestions(city.substring(0, i));
+
+					if (i >= 3)
+						syncQueries++;
+				}
+			}
+		}
+
+		long t2 = System.nanoTime();
+
+		System.out.println("Synchronous: " + syncQueries + " scans in " + (t2 - t1) / 1000000 + "ms");
+
+		// Asynchronous: queries are debounced, and superseded ones cancelled
+
+		SuggestionScheduler sched = new SuggestionScheduler(sug, 150, 2);
+
+		CountDownLatch done = new CountDownLatch(TYPISTS);
+		long[] answered = new long[TYPISTS];
+
+		for (int n = 0; n < TYPISTS; n++) {
+			final int typist = n;
+
+			new Thread(() -> {
+				try {
+					for (String city : CITIES) {
+						CompletableFuture<List<String>> last = null;
+
+						for (int i = 1; i <= city.length(); i++) {
+							last = sched.submit("typist" + typist, city.substring(0, i));
+							Thread.sleep(KEYSTROKE);
+						}
+
+						if (! last.get().isEmpty())
+							answered[typist]++;
+
+						Thread.sleep(PAUSE);
+					}
+
+				} catch (Exception e) {
+					System.out.println("Typist " + typist + " failed: " + e);
+
+				} finally {
+					done.countDown();
+				}
+			}).start();
+		}
+
+		done.await();
+		sched.shutdown();
+
+		long hits = 0;
+
+		for (long a : answered)
+			hits += a;
+
+		System.out.println("Asynchronous: " + sched.getSubmitted() + " submitted, "
+				+ sched.getSuperseded() + " superseded, "
+				+ sched.getExecuted() + " scans, "
+				+ sched.getCompleted() + " completed");
+		System.out.println("Final prefixes answered: " + hits + " of " + TYPISTS * CITIES.length);
+		System.out.println("Wasted scans eliminated: " + (syncQueries - sched.getExecuted()));
+
+		ranking(sug);
+	}
+
+	// Half the picks are of the popular cities, the rest spread over the list
+	private static void ranking(SearchSuggester unranked) throws IOException {
+		SearchSuggester ranked = new SearchSuggester("data/cityList.txt");
+		List<String> all = ranked.getCities();
+		Random random = new Random(1);
+
+		for (int i = 0; i < PICKS; i++) {
+			if (random.nextBoolean())
+				ranked.recordPick(POPULAR[random.nextInt(POPULAR.length)]);
+			else
+				ranked.recordPick(all.get(random.nextInt(all.size())));
+		}
+
+		int before = 0;
+		int after = 0;
+
+		for (String city : POPULAR) {
+			int u = keystrokes(unranked, city);
+			int r = keystrokes(ranked, city);
+
+			System.out.println("  " + city + ": top " + TOP + " after " + u + " keystrokes unranked, " + r + " ranked");
+
+			before += u;
+			after += r;
+		}
+
+		System.out.println("Keystrokes to reach the top " + TOP + ": " + before + " unranked, " + after + " ranked");
+
+		// Neither is timed while still being compiled
+		time(unranked);
+		time(ranked);
+
+		System.out.println("Unranked: " + time(unranked) + "ns per query");
+		System.out.println("Ranked: " + time(ranked) + "ns per query");
+	}
+
+	// Keystrokes typed before the city is among the top suggestions
+	private static int keystrokes(SearchSuggester sug, String city) {
+		String name = city.substring(0, city.indexOf(','));
+
+		for (int i = 3; i <= name.length(); i++) {
+			if (sug.getTopSuggestions(name.substring(0, i), TOP).contains(city))
+				return i;
+		}
+
+		// Then scrolls, or types the country too
+		return name.length() + 1;
+	}
+
+	private static long time(SearchSuggester sug) {
+		long sum = 0;
+		long t1 = System.nanoTime();
+
+		for (int i = 0; i < QUERIES; i++)
+			sum += sug.getSuggestions(POPULAR[i % POPULAR.length].substring(0, 3)).size();
+
+		return (System.nanoTime() - t1) / QUERIES + sum % 1;
+	}
+}
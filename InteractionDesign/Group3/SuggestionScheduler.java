@@ -0,0 +1,166 @@
+package InteractionDesign.Group3;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs search suggestion queries asynchronously for keystroke-driven callers.
+ * Each client (eg. a text box, or an HTTP session) has at most one query in
+ * flight. A query only starts once the client has stopped typing for the
+ * debounce window, and a newer prefix from the same client cancels the
+ * previous query, whether it is still waiting or already scanning.
+ */
+public class SuggestionScheduler {
+	private final SearchSuggester mSearchSug;
+	private final long mDebounce;		// In milliseconds
+
+	private final ScheduledExecutorService mExecutor;
+	private final Map<String, Query> mPending;
+
+	// Counters, for measuring how much work is saved
+	private final AtomicLong mSubmitted = new AtomicLong();
+	private final AtomicLong mSuperseded = new AtomicLong();
+	private final AtomicLong mExecuted = new AtomicLong();
+	private final AtomicLong mCompleted = new AtomicLong();
+
+	// A single query, and the task which will run it
+	private class Query implements Runnable {
+		final String mClient;
+		final String mPrefix;
+		final CompletableFuture<List<String>> mResult = new CompletableFuture<>();
+		ScheduledFuture<?> mTask;
+
+		Query(String client, String prefix) {
+			mClient = client;
+			mPrefix = prefix;
+		}
+
+		@Override
+		public void run() {
+			if (mResult.isDone())
+				return;
+
+			mExecuted.incrementAndGet();
+
+			try {
+				List<String> result = mSearchSug.getSuggestions(mPrefix, mResult::isDone);
+
+				if (mResult.complete(result))
+					mCompleted.incrementAndGet();
+
+			} catch (RuntimeException e) {
+				mResult.completeExceptionally(e);
+
+			} finally {
+				mPending.remove(mClient, this);
+			}
+		}
+	}
+
+	/**
+	 * Constructs a scheduler which answers queries using the given suggester.
+	 *
+	 * @param	searchSug	the search suggestion engine
+	 * @param	debounce	how long a client must stop typing before a query runs, in milliseconds
+	 * @param	threads		the number of worker threads
+	 */
+	public SuggestionScheduler(SearchSuggester searchSug, long debounce, int threads) {
+		mSearchSug = searchSug;
+		mDebounce = debounce;
+		mPending = new ConcurrentHashMap<>();
+
+		mExecutor = Executors.newScheduledThreadPool(threads, r -> {
+			Thread t = new Thread(r, "suggestions");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Submits a query for a client, superseding any query from that client
+	 * which has not completed yet. The superseded query's future is cancelled.
+	 * As with SearchSuggester, prefixes under 3 characters give an empty list.
+	 *
+	 * @param	client	identifies the caller, eg. a session ID
+	 * @param	prefix	the beginning of a city name
+	 * @return	a future which completes with the list of matching cities
+	 */
+	public CompletableFuture<List<String>> submit(String client, String prefix) {
+		mSubmitted.incrementAndGet();
+
+		Query q = new Query(client, prefix);
+
+		Query old = mPending.put(client, q);
+
+		if (old != null && old.mResult.cancel(false)) {
+			mSuperseded.incrementAndGet();
+
+			if (old.mTask != null)
+				old.mTask.cancel(false);
+		}
+
+		q.mTask = mExecutor.schedule(q, mDebounce, TimeUnit.MILLISECONDS);
+
+		// If the caller gives up on the result, we don't need to run it, and
+		// run won't be there to forget it. Runs straight away if the caller
+		// already has, which is why the task is scheduled first
+		q.mResult.whenComplete((r, e) -> {
+			if (q.mResult.isCancelled()) {
+				q.mTask.cancel(false);
+				mPending.remove(q.mClient, q);
+			}
+		});
+
+		return q.mResult;
+	}
+
+	/**
+	 * Gets the number of queries submitted so far.
+	 *
+	 * @return	number of queries submitted
+	 */
+	public long getSubmitted() {
+		return mSubmitted.get();
+	}
+
+	/**
+	 * Gets the number of queries cancelled because a newer prefix arrived.
+	 *
+	 * @return	number of queries superseded
+	 */
+	public long getSuperseded() {
+		return mSuperseded.get();
+	}
+
+	/**
+	 * Gets the number of queries which started scanning the city list.
+	 *
+	 * @return	number of queries executed
+	 */
+	public long getExecuted() {
+		return mExecuted.get();
+	}
+
+	/**
+	 * Gets the number of queries which returned a result to their caller.
+	 *
+	 * @return	number of queries completed
+	 */
+	public long getCompleted() {
+		return mCompleted.get();
+	}
+
+	/**
+	 * Stops the worker threads. Queries still waiting are not run.
+	 */
+	public void shutdown() {
+		mExecutor.shutdownNow();
+	}
+}
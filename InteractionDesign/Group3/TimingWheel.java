@@ -0,0 +1,210 @@
+package InteractionDesign.Group3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hierarchical timing wheel: keeps a deadline for each of many keys, and
+ * says which have passed as time advances. Scheduling, rescheduling and
+ * cancelling are O(1) whatever the number of keys, and advancing costs one
+ * step per tick plus one per key expiring, unlike a priority queue's
+ * O(log n) per key.
+ *
+ * Time is counted in ticks of a fixed length. There are 4 wheels of 64
+ * slots: the first holds deadlines in the next 64 ticks, one tick per slot;
+ * the next the following 4096 ticks, 64 per slot; and so on. As time
+ * reaches a slot of an outer wheel, its keys move inwards. Deadlines beyond
+ * the outermost wheel's range go round it again until they come into range.
+ *
+ * @param	<K>	the type of key, eg. location strings
+ */
+public class TimingWheel<K> {
+	private static final int BITS = 6;
+	private static final int SLOTS = 1 << BITS;
+	private static final int MASK = SLOTS - 1;
+	private static final int LEVELS = 4;
+	private static final long RANGE = 1L << (BITS * LEVELS);		// In ticks
+
+	// A key in a slot's list
+	private static class Node<K> {
+		final K mKey;
+		long mDeadline;		// In ticks
+		Node<K> mPrev;
+		Node<K> mNext;
+
+		Node(K key) {
+			mKey = key;
+			mPrev = this;
+			mNext = this;
+		}
+	}
+
+	private final long mTickMillis;
+	private final long mOrigin;
+
+	// The last tick processed
+	private long mNow = 0;
+
+	// Each slot is a circular list, headed by a node without a key
+	private final Node<K>[][] mWheels;
+	private final Map<K, Node<K>> mNodes = new HashMap<>();
+
+	/**
+	 * Constructs an empty wheel.
+	 *
+	 * @param	tickMillis	the length of a tick, in milliseconds
+	 * @param	startMillis	the time now, in milliseconds, eg. System.currentTimeMillis()
+	 */
+	@SuppressWarnings("unchecked")
+	public TimingWheel(long tickMillis, long startMillis) {
+		mTickMillis = tickMillis;
+		mOrigin = startMillis;
+
+		mWheels = (Node<K>[][]) new Node<?>[LEVELS][SLOTS];
+
+		for (Node<K>[] wheel : mWheels) {
+			for (int i = 0; i < SLOTS; i++)
+				wheel[i] = new Node<>(null);
+		}
+	}
+
+	/**
+	 * Sets a key's deadline, replacing any it already had. A deadline already
+	 * past expires on the next tick.
+	 *
+	 * @param	key			the key
+	 * @param	atMillis	the deadline, in milliseconds
+	 */
+	public synchronized void schedule(K key, long atMillis) {
+		Node<K> node = mNodes.get(key);
+
+		if (node == null) {
+			node = new Node<>(key);
+			mNodes.put(key, node);
+
+		} else {
+			unlink(node);
+		}
+
+		// Rounded up, so keys never expire early
+		node.mDeadline = Math.max(mNow + 1, (atMillis - mOrigin + mTickMillis - 1) / mTickMillis);
+
+		insert(node);
+	}
+
+	/**
+	 * Removes a key's deadline.
+	 *
+	 * @param	key	the key
+	 * @return	true if the key had a deadline
+	 */
+	public synchronized boolean cancel(K key) {
+		Node<K> node = mNodes.remove(key);
+
+		if (node == null)
+			return false;
+
+		unlink(node);
+
+		return true;
+	}
+
+	/**
+	 * Tests whether a key has a deadline.
+	 *
+	 * @param	key	the key
+	 * @return	true if the key is waiting for its deadline
+	 */
+	public synchronized boolean contains(K key) {
+		return mNodes.containsKey(key);
+	}
+
+	/**
+	 * Gets the number of keys waiting for their deadline.
+	 *
+	 * @return	number of keys
+	 */
+	public synchronized int size() {
+		return mNodes.size();
+	}
+
+	/**
+	 * Advances time, removing every key whose deadline has passed.
+	 *
+	 * @param	nowMillis	the time now, in milliseconds
+	 * @return	the expired keys, in deadline order
+	 */
+	public synchronized List<K> advance(long nowMillis) {
+		List<K> expired = new ArrayList<>();
+
+		long target = (nowMillis - mOrigin) / mTickMillis;
+
+		while (mNow < target) {
+			long t = ++mNow;
+
+			// Outer slots reached move inwards, outermost first
+			if ((t & MASK) == 0) {
+				int top = 1;
+
+				while (top < LEVELS - 1 && ((t >>> (BITS * top)) & MASK) == 0)
+					top++;
+
+				for (int level = top; level >= 1; level--)
+					cascade(mWheels[level][(int) ((t >>> (BITS * level)) & MASK)]);
+			}
+
+			Node<K> head = mWheels[0][(int) (t & MASK)];
+
+			while (head.mNext != head) {
+				Node<K> node = head.mNext;
+				unlink(node);
+
+				// Beyond range when scheduled, and still not due
+				if (node.mDeadline > t) {
+					insert(node);
+					continue;
+				}
+
+				mNodes.remove(node.mKey);
+				expired.add(node.mKey);
+			}
+		}
+
+		return expired;
+	}
+
+	// Puts a node in the innermost wheel whose range holds its deadline
+	private void insert(Node<K> node) {
+		long delta = Math.min(node.mDeadline - mNow, RANGE - 1);
+		long at = mNow + delta;
+
+		int level = 0;
+
+		while (delta >= 1L << (BITS * (level + 1)))
+			level++;
+
+		Node<K> head = mWheels[level][(int) ((at >>> (BITS * level)) & MASK)];
+
+		node.mPrev = head.mPrev;
+		node.mNext = head;
+		head.mPrev.mNext = node;
+		head.mPrev = node;
+	}
+
+	private void cascade(Node<K> head) {
+		while (head.mNext != head) {
+			Node<K> node = head.mNext;
+			unlink(node);
+			insert(node);
+		}
+	}
+
+	private static <K> void unlink(Node<K> node) {
+		node.mPrev.mNext = node.mNext;
+		node.mNext.mPrev = node.mPrev;
+		node.mPrev = node;
+		node.mNext = node;
+	}
+}
@@ -0,0 +1,79 @@
+package InteractionDesign.Group3;
+
+/**
+ * A token bucket rate limiter.
+ * The bucket holds up to a fixed number of tokens and refills at a steady
+ * rate. Each request takes one token, so short bursts up to the capacity are
+ * allowed but the long-run rate never exceeds the refill rate.
+ * Not thread safe; callers synchronise.
+ */
+public class TokenBucket {
+	private final double mCapacity;
+	private final double mPerNano;		// Tokens added per nanosecond
+
+	private double mTokens;
+	private long mLastRefill;
+
+	/**
+	 * Constructs a full bucket.
+	 *
+	 * @param	capacity	the most tokens the bucket can hold
+	 * @param	perMinute	tokens added per minute
+	 */
+	public TokenBucket(int capacity, int perMinute) {
+		mCapacity = capacity;
+		mPerNano = perMinute / 60e9;
+
+		mTokens = capacity;
+		mLastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token if one is available.
+	 *
+	 * @return	true if a token was taken
+	 */
+	public boolean tryAcquire() {
+		refill();
+
+		if (mTokens < 1)
+			return false;
+
+		mTokens -= 1;
+
+		return true;
+	}
+
+	/**
+	 * Gets how long until a token will be available.
+	 *
+	 * @return	wait in nanoseconds, 0 if a token is available now
+	 */
+	public long nanosUntilAvailable() {
+		refill();
+
+		if (mTokens >= 1)
+			return 0;
+
+		return (long) Math.ceil((1 - mTokens) / mPerNano);
+	}
+
+	/**
+	 * Gets the number of whole tokens available now, ie. how many more
+	 * requests could be made immediately.
+	 *
+	 * @return	tokens available
+	 */
+	public int available() {
+		refill();
+
+		return (int) mTokens;
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+
+		mTokens = Math.min(mCapacity, mTokens + (now - mLastRefill) * mPerNano);
+		mLastRefill = now;
+	}
+}
@@ -0,0 +1,546 @@
+package InteractionDesign.Group3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local simulator of the openweathermap API, which replays recorded
+ * "weather" and "forecast" responses, for reproducible load and soak testing.
+ *
+ * Recordings are JSON files, one per endpoint and query, under a recordings
+ * directory. In record mode, queries with no recording are passed on to an
+ * upstream API (eg. openweathermap itself) and its responses saved.
+ *
+ * Replayed responses are shifted in time so the forecast starts from now,
+ * and can be varied: temperatures jittered and forecast entries dropped.
+ * Latency follows a configurable distribution, and a fraction of requests
+ * can fail with HTTP 500 or get a truncated response.
+ *
+ * Point the app at it with -Dweatherapp.api.url=[getURL()].
+ */
+public class UpstreamSimulator {
+	private static final DateTimeFormatter DT_TXT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final long DAY = 86400;
+
+	/**
+	 * A distribution of response latencies.
+	 */
+	public interface LatencyModel {
+		/**
+		 * Picks the latency of one response.
+		 *
+		 * @param	random	source of randomness
+		 * @return	latency in milliseconds
+		 */
+		long next(Random random);
+
+		/**
+		 * @param	millis	the latency of every response
+		 * @return	a fixed latency
+		 */
+		static LatencyModel fixed(long millis) {
+			return r -> millis;
+		}
+
+		/**
+		 * @param	min	the least latency, in milliseconds
+		 * @param	max	the greatest latency, in milliseconds
+		 * @return	latencies spread evenly between min and max
+		 */
+		static LatencyModel uniform(long min, long max) {
+			return r -> min + (long) (r.nextDouble() * (max - min));
+		}
+
+		/**
+		 * A log-normal distribution, the usual shape of network latency: most
+		 * responses near the median, with a long tail of slow ones.
+		 *
+		 * @param	median	the median latency, in milliseconds
+		 * @param	sigma	spread; 0.5 puts the 99th percentile at about 3x the median
+		 * @return	log-normally distributed latencies
+		 */
+		static LatencyModel logNormal(long median, double sigma) {
+			return r -> (long) (median * Math.exp(sigma * r.nextGaussian()));
+		}
+	}
+
+	private final HttpServer mServer;
+	private final Path mDir;
+
+	// Recordings read so far, by endpoint and query
+	private final Map<String, byte[]> mRecordings = new ConcurrentHashMap<>();
+
+	// Where to record from, or null to only replay
+	private volatile String mUpstream = null;
+	private volatile String mUpstreamKey = null;
+
+	private volatile LatencyModel mLatency = LatencyModel.fixed(0);
+	private volatile double mErrorRate = 0;
+	private volatile double mTruncateRate = 0;
+	private volatile double mTempJitter = 0;
+	private volatile double mDropRate = 0;
+
+	private final AtomicLong mRequests = new AtomicLong();
+	private final AtomicLong mErrors = new AtomicLong();
+	private final AtomicLong mMisses = new AtomicLong();
+	private final AtomicLong mRecorded = new AtomicLong();
+
+	/**
+	 * Constructs a simulator listening on the loopback interface, which
+	 * replays recordings from a directory. Call start before making requests.
+	 *
+	 * @param	port	the port, or 0 for any free port
+	 * @param	dir		the recordings directory, created if necessary
+	 * @throws	IOException	if the port can't be bound
+	 */
+	public UpstreamSimulator(int port, String dir) throws IOException {
+		mDir = Paths.get(dir);
+		Files.createDirectories(mDir);
+
+		mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		mServer.createContext("/data/2.5/", this::handle);
+		mServer.setExecutor(Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "simulator");
+			t.setDaemon(true);
+			return t;
+		}));
+	}
+
+	/**
+	 * Starts serving requests.
+	 */
+	public void start() {
+		mServer.start();
+	}
+
+	/**
+	 * Stops serving requests.
+	 */
+	public void stop() {
+		mServer.stop(0);
+	}
+
+	/**
+	 * Gets the URL to give APIClient, ending in "/data/2.5/".
+	 *
+	 * @return	base URL of the simulator
+	 */
+	public String getURL() {
+		return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/data/2.5/";
+	}
+
+	/**
+	 * Turns record mode on or off. In record mode, queries with no recording
+	 * are passed on to the upstream API, and the responses are recorded.
+	 *
+	 * @param	url	the upstream's base URL, eg. "http://api.openweathermap.org/data/2.5/", or null to only replay
+	 * @param	key	the upstream's API key, or null if none is needed
+	 */
+	public void setRecording(String url, String key) {
+		mUpstreamKey = key;
+		mUpstream = url;
+	}
+
+	/**
+	 * Sets the distribution of response latencies.
+	 *
+	 * @param	latency	the distribution
+	 */
+	public void setLatency(LatencyModel latency) {
+		mLatency = latency;
+	}
+
+	/**
+	 * Sets the fraction of requests answered with HTTP 500.
+	 *
+	 * @param	rate	between 0 and 1
+	 */
+	public void setErrorRate(double rate) {
+		mErrorRate = rate;
+	}
+
+	/**
+	 * Sets the fraction of responses cut off half way through.
+	 *
+	 * @param	rate	between 0 and 1
+	 */
+	public void setTruncateRate(double rate) {
+		mTruncateRate = rate;
+	}
+
+	/**
+	 * Sets how replayed responses vary from the recordings.
+	 *
+	 * @param	tempJitter	the most each temperature is moved up or down, in kelvin
+	 * @param	dropRate	the fraction of forecast entries left out, between 0 and 1
+	 */
+	public void setVariation(double tempJitter, double dropRate) {
+		mTempJitter = tempJitter;
+		mDropRate = dropRate;
+	}
+
+	/**
+	 * Gets the number of requests received.
+	 *
+	 * @return	number of requests
+	 */
+	public long getRequests() {
+		return mRequests.get();
+	}
+
+	/**
+	 * Gets the number of failed responses sent: errors and truncations.
+	 *
+	 * @return	number of failures
+	 */
+	public long getErrors() {
+		return mErrors.get();
+	}
+
+	/**
+	 * Gets the number of requests with no recording, answered "city not found".
+	 *
+	 * @return	number of misses
+	 */
+	public long getMisses() {
+		return mMisses.get();
+	}
+
+	/**
+	 * Gets the number of responses recorded from the upstream.
+	 *
+	 * @return	number of recordings made
+	 */
+	public long getRecorded() {
+		return mRecorded.get();
+	}
+
+	/**
+	 * Gets the number of recordings in the recordings directory.
+	 *
+	 * @return	number of recordings
+	 * @throws	IOException	if the directory can't be read
+	 */
+	public int countRecordings() throws IOException {
+		int n = 0;
+
+		for (String endpoint : new String[] {"weather", "forecast"}) {
+			Path dir = mDir.resolve(endpoint);
+
+			if (Files.isDirectory(dir)) {
+				try (Stream<Path> files = Files.list(dir)) {
+					n += files.count();
+				}
+			}
+		}
+
+		return n;
+	}
+
+	private void handle(HttpExchange ex) throws IOException {
+		mRequests.incrementAndGet();
+
+		Random random = ThreadLocalRandom.current();
+
+		try {
+			long latency = mLatency.next(random);
+
+			if (latency > 0)
+				Thread.sleep(latency);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		String path = ex.getRequestURI().getPath();
+		String endpoint = path.substring(path.lastIndexOf('/') + 1);
+		String query = ex.getRequestURI().getRawQuery();
+
+		byte[] body;
+		int status = 200;
+
+		if (random.nextDouble() < mErrorRate) {
+			mErrors.incrementAndGet();
+			status = 500;
+			body = "{\"cod\":500,\"message\":\"Internal error\"}".getBytes(StandardCharsets.UTF_8);
+
+		} else if (! endpoint.equals("weather") && ! endpoint.equals("forecast")) {
+			status = 404;
+			body = "{\"cod\":404,\"message\":\"Not found\"}".getBytes(StandardCharsets.UTF_8);
+
+		} else {
+			byte[] recording = find(endpoint, query);
+
+			if (recording == null) {
+				mMisses.incrementAndGet();
+				status = 404;
+				body = "{\"cod\":\"404\",\"message\":\"city not found\"}".getBytes(StandardCharsets.UTF_8);
+
+			} else {
+				body = vary(endpoint, recording, random).getBytes(StandardCharsets.UTF_8);
+			}
+		}
+
+		int length = body.length;
+
+		// Sends half the body, without saying its length, so it ends early
+		if (status == 200 && random.nextDouble() < mTruncateRate) {
+			mErrors.incrementAndGet();
+			length = body.length / 2;
+		}
+
+		ex.getResponseHeaders().set("Content-Type", "application/json");
+		ex.sendResponseHeaders(status, length == body.length ? length : 0);
+
+		try (OutputStream out = ex.getResponseBody()) {
+			out.write(body, 0, length);
+		}
+	}
+
+	// Finds the recording for a query, recording it first if in record mode
+	private byte[] find(String endpoint, String query) throws IOException {
+		String name = endpoint + "/" + key(query);
+
+		byte[] recording = mRecordings.get(name);
+
+		if (recording != null)
+			return recording;
+
+		Path file = mDir.resolve(name + ".json");
+
+		if (Files.isRegularFile(file)) {
+			recording = Files.readAllBytes(file);
+
+		} else {
+			String upstream = mUpstream;
+
+			if (upstream == null)
+				return null;
+
+			recording = record(upstream, endpoint, query);
+
+			if (recording == null)
+				return null;
+
+			Files.createDirectories(file.getParent());
+			Files.write(file, recording);
+			mRecorded.incrementAndGet();
+		}
+
+		mRecordings.put(name, recording);
+
+		return recording;
+	}
+
+	// Passes a query on to the upstream; null if it has no answer
+	private byte[] record(String upstream, String endpoint, String query) throws IOException {
+		List<String> params = new ArrayList<>();
+
+		for (String param : query == null ? new String[0] : query.split("&")) {
+			if (! param.startsWith("APPID="))
+				params.add(param);
+		}
+
+		if (mUpstreamKey != null)
+			params.add("APPID=" + mUpstreamKey);
+
+		HttpURLConnection conn = (HttpURLConnection) new URL(upstream + endpoint + "?" + String.join("&", params))
+				.openConnection();
+		conn.setConnectTimeout(5000);
+		conn.setReadTimeout(10000);
+
+		if (conn.getResponseCode() != 200)
+			return null;
+
+		try (InputStream in = conn.getInputStream()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			int n;
+
+			while ((n = in.read(buf)) > 0)
+				out.write(buf, 0, n);
+
+			return out.toByteArray();
+		}
+	}
+
+	// Names a query's recording: its parameters, without the API key,
+	// decoded and lower case, so "q=London,%20GB" and "q=london, gb" match
+	private static String key(String query) throws UnsupportedEncodingException {
+		List<String> params = new ArrayList<>();
+
+		for (String param : query == null ? new String[0] : query.split("&")) {
+			if (! param.startsWith("APPID=") && ! param.isEmpty())
+				params.add(URLDecoder.decode(param, "UTF-8").toLowerCase().replace(" ", ""));
+		}
+
+		Collections.sort(params);
+
+		return URLEncoder.encode(String.join("&", params), "UTF-8");
+	}
+
+	// Shifts a recording to now, and varies it
+	private String vary(String endpoint, byte[] recording, Random random) {
+		JsonObject json = new JsonParser().parse(new String(recording, StandardCharsets.UTF_8)).getAsJsonObject();
+
+		long now = System.currentTimeMillis() / 1000;
+
+		if (endpoint.equals("weather")) {
+			// Whole days, so sunrise and sunset keep their time of day
+			if (json.has("dt")) {
+				long shift = Math.round((now - json.get("dt").getAsLong()) / (double) DAY) * DAY;
+
+				json.addProperty("dt", json.get("dt").getAsLong() + shift);
+
+				if (json.has("sys")) {
+					JsonObject sys = json.getAsJsonObject("sys");
+
+					for (String field : new String[] {"sunrise", "sunset"}) {
+						if (sys.has(field))
+							sys.addProperty(field, sys.get(field).getAsLong() + shift);
+					}
+				}
+			}
+
+			jitter(json, random);
+
+		} else {
+			JsonArray list = json.getAsJsonArray("list");
+
+			if (list != null && list.size() > 0) {
+				// The first entry becomes the next 3 hour slot
+				LocalDateTime first = LocalDateTime.parse(list.get(0).getAsJsonObject().get("dt_txt").getAsString(), DT_TXT);
+				LocalDateTime next = LocalDateTime.now(ZoneOffset.UTC).withMinute(0).withSecond(0).withNano(0);
+				next = next.withHour(next.getHour() / 3 * 3).plusHours(3);
+
+				long shift = Duration.between(first, next).getSeconds();
+
+				JsonArray varied = new JsonArray();
+
+				for (JsonElement e : list) {
+					JsonObject entry = e.getAsJsonObject();
+
+					// Never drop the first, so the forecast still starts now
+					if (varied.size() > 0 && random.nextDouble() < mDropRate)
+						continue;
+
+					LocalDateTime t = LocalDateTime.parse(entry.get("dt_txt").getAsString(), DT_TXT).plusSeconds(shift);
+					entry.addProperty("dt_txt", t.format(DT_TXT));
+
+					if (entry.has("dt"))
+						entry.addProperty("dt", t.toEpochSecond(ZoneOffset.UTC));
+
+					jitter(entry, random);
+					varied.add(entry);
+				}
+
+				json.add("list", varied);
+				json.addProperty("cnt", varied.size());
+			}
+		}
+
+		return json.toString();
+	}
+
+	private void jitter(JsonObject entry, Random random) {
+		if (mTempJitter > 0 && entry.has("main")) {
+			JsonObject main = entry.getAsJsonObject("main");
+
+			if (main.has("temp"))
+				main.addProperty("temp", main.get("temp").getAsDouble() + (random.nextDouble() * 2 - 1) * mTempJitter);
+		}
+	}
+
+	/**
+	 * Runs a simulator until killed.
+	 *
+	 * Usage: UpstreamSimulator [port] [recordings directory] [options]
+	 *	--record [url] [key]		record queries with no recording from url, key optional
+	 *	--latency [median] [sigma]	log-normal latency, in milliseconds
+	 *	--errors [rate]				fraction answered with HTTP 500
+	 *	--truncate [rate]			fraction of responses cut short
+	 *	--vary [jitter] [drop rate]	vary temperatures and drop forecast entries
+	 *
+	 * @param	args	as above
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.out.println("Usage: UpstreamSimulator [port] [recordings directory] [--record url [key]] "
+					+ "[--latency median sigma] [--errors rate] [--truncate rate] [--vary jitter dropRate]");
+			return;
+		}
+
+		UpstreamSimulator sim = new UpstreamSimulator(Integer.parseInt(args[0]), args[1]);
+
+		for (int i = 2; i < args.length; i++) {
+			switch (args[i]) {
+				case "--record":
+					String url = args[++i];
+					String key = i + 1 < args.length && ! args[i + 1].startsWith("--") ? args[++i] : null;
+					sim.setRecording(url, key);
+					break;
+
+				case "--latency":
+					sim.setLatency(LatencyModel.logNormal(Long.parseLong(args[++i]), Double.parseDouble(args[++i])));
+					break;
+
+				case "--errors":
+					sim.setErrorRate(Double.parseDouble(args[++i]));
+					break;
+
+				case "--truncate":
+					sim.setTruncateRate(Double.parseDouble(args[++i]));
+					break;
+
+				case "--vary":
+					sim.setVariation(Double.parseDouble(args[++i]), Double.parseDouble(args[++i]));
+					break;
+
+				default:
+					System.out.println("Unknown option " + args[i]);
+					return;
+			}
+		}
+
+		sim.start();
+
+		System.out.println("Simulating " + sim.countRecordings() + " recordings at " + sim.getURL());
+		System.out.println("Start the app with -Dweatherapp.api.url=" + sim.getURL());
+
+		// The server's threads are daemons, so wait here until killed
+		Thread.sleep(Long.MAX_VALUE);
+	}
+}
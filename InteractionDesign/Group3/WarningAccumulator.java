@@ -0,0 +1,71 @@
+package InteractionDesign.Group3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Works out weather warnings one forecast record at a time.
+ * This lets a refresh assess warnings as records arrive, rather than making
+ * another pass over the forecast at the end.
+ */
+public class WarningAccumulator {
+	private boolean mIce = false;
+	private boolean mWet = false;
+	private boolean mVis = false;
+	private boolean mStorm = false;
+
+	/**
+	 * Works out the warnings for a list of records in one go.
+	 *
+	 * @param	slots	forecast records
+	 * @return	list of warnings
+	 */
+	public static List<Warning> assess(List<Record> slots) {
+		WarningAccumulator acc = new WarningAccumulator();
+
+		for (Record r : slots)
+			acc.add(r);
+
+		return acc.getWarnings();
+	}
+
+	/**
+	 * Takes account of another forecast record.
+	 *
+	 * @param	r	the record
+	 */
+	public void add(Record r) {
+		mIce = mIce || (r.getTemp() < 3);
+
+		Icon i = r.getIcon();
+
+		mVis = mVis || (i == Icon.MIST || i == Icon.MIST_DAY || i == Icon.MIST_NIGHT);
+
+		mStorm = mStorm || (i == Icon.THUNDERSTORM);
+
+		mWet = mWet || (i == Icon.HAIL) || (i == Icon.HEAVY_RAIN) || (i == Icon.HEAVY_SNOW) || (i == Icon.LIGHT_SNOW) || (i == Icon.SNOWFLAKE) || (i == Icon.THUNDERSTORM);
+	}
+
+	/**
+	 * Gets the warnings for the records added so far.
+	 *
+	 * @return	list of warnings
+	 */
+	public List<Warning> getWarnings() {
+		List<Warning> result = new ArrayList<>();
+
+		if (mIce)
+			result.add(Warning.ICY);
+
+		if (mVis)
+			result.add(Warning.POOR_VISIBILITY);
+
+		if (mStorm)
+			result.add(Warning.STORMY);
+
+		if (mWet)
+			result.add(Warning.WET_SURFACES);
+
+		return result;
+	}
+}
@@ -8,46 +8,129 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneId;
-import java.time.format.DateTimeParseException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 /**
  * A cache of the most recently loaded weather data.
  * This acts as an interface between the frontend and the API.
  * Any data fetched are no more than 1 hour old.
+ * The current weather is only fetched when the summary is needed. Everything
+ * else comes from the forecast, with day and night worked out locally from the
+ * location's coordinates.
+ * If the API is failing or slow, getters serve the last good data rather than
+ * waiting; isStale and getDataAge say when this has happened.
  * This is a singleton. When instantiated, the cache is loaded from disk if a
  * cache file already exists.
+ * If the weatherapp.fastStart property is "true", start up loads everything it
+ * needs from a startup image (see StartupImage), which is kept up to date as
+ * the data are refreshed.
  */
 public class WeatherCache {
 	private static WeatherCache theObj;
 
 	private APIClient mGordon;
 	private SearchSuggester mSearchSug;
+	private SuggestionScheduler mSuggestions;
+	private LocationCanonicaliser mCanonical;
 
 	private Map<WeatherData.ConditionCode, Icon> mIconMap;
 
 	private final String mCacheFile;
 	private final String mCityListFile;
+	private final String mArchiveDir;
+	private final String mWatchListFile;
+	private final String mCityIndexFile;
+	private final String mImageFile;
+	private final String mPopularityFile;
+	private final boolean mFastStart;
 
-	private LocalDateTime mLastUpdated;
-	private String mLocation;
+	// Every forecast fetched, or null if the archive couldn't be opened
+	private ForecastArchive mArchive;
 
-	private Record mSummary;
-	private List<List<Record>> mThisWeek;
-	private List<Warning> mWarnings;
+	private String mLocation;
 
-	private LocalDateTime mSunrise;
-	private LocalDateTime mSunset;
+	// Everything we know about the location, replaced whole on each refresh
+	private volatile Snapshot mSnapshot;
+
+	// The latest snapshot of every location fetched, for batch queries
+	// Kept off the heap if the weatherapp.snapshots property is "offheap"
+	private final SnapshotStore mSnapshots;
+	// Icon, temperature and warnings of every location, by country
+	private final RegionOverview mOverview = new RegionOverview();
+	// The latest snapshot of every location, encoded for clients
+	private final Map<String, EncodedSnapshot> mEncoded = new ConcurrentHashMap<>();
+	// Fetches of other locations in progress, so each is only fetched once
+	private final Map<String, CompletableFuture<Snapshot>> mFetching = new ConcurrentHashMap<>();
+	// Cities with IDs and coordinates, loading in the background; null if there is no index file
+	private CompletableFuture<CityIndex> mCityIndex;
+	// Fetching the watch-list at start up, or null if there isn't one
+	private CacheWarmer mWarmer;
+	// Refreshes stored locations before they expire, or null if refresh-ahead is off
+	private volatile RefreshScheduler mRefresher;
+	// Fetches the top search suggestions, or null if speculation is off
+	private volatile SpeculativePrefetcher mPrefetcher;
+
+	// True if locations have been picked since popularity was last saved
+	private volatile boolean mPicked = false;
+
+	// Time spent in each stage of the last refresh, in microseconds
+	private Map<String, Long> mTimings;
+
+	// Fetches the current weather while the forecast streams in, and runs
+	// refreshes which getters have stopped waiting for
+	private final ExecutorService mFetcher;
+	private Future<?> mBackground;
+
+	// The time, which is only not the system's in simulations
+	private final Clock mClock;
+
+	// How old data may be before it is refreshed
+	private Duration mMaxAge = Duration.ofHours(1);
+	// How long a getter waits for a refresh, when there is older data to serve instead
+	private long mLatencyBudget = 2000;
+	// True if the last getter served data older than mMaxAge
+	private volatile boolean mStale = false;
+
+	// Told what changed after each refresh
+	private final List<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+
+	// A listener, and the commute window it wants item changes for (null if none)
+	private static class Subscription {
+		final SnapshotListener mListener;
+		final LocalTime mStart;
+		final LocalTime mFin;
+
+		Subscription(SnapshotListener listener, LocalTime start, LocalTime fin) {
+			mListener = listener;
+			mStart = start;
+			mFin = fin;
+		}
+	}
 
 	/**
 	 * Returns the singleton instance of WeatherCache.
@@ -65,28 +148,116 @@ public class WeatherCache {
 	}
 
 	private WeatherCache() throws APIException, CacheException {
+		this(new APIClient(), "data");
+	}
+
+	// Allows testing against a local stub API, with its own data directory
+	WeatherCache(APIClient gordon, String dataDir) throws APIException, CacheException {
+		this(gordon, dataDir, Clock.systemDefaultZone());
+	}
+
+	// Also allows simulating time, eg. a day in a few seconds
+	// Every freshness check, label and time stamp goes by the clock
+	WeatherCache(APIClient gordon, String dataDir, Clock clock) throws APIException, CacheException {
 		long t1 = System.nanoTime();
 
+		mClock = clock;
+
 		// Default values
 
-		mCacheFile = "data/weatherCache.csv";
-		mCityListFile = "data/cityList.txt";
+		mCacheFile = dataDir + "/weatherCache.csv";
+		mCityListFile = dataDir + "/cityList.txt";
+		mArchiveDir = dataDir + "/archive";
+		mWatchListFile = dataDir + "/watchList.txt";
+		mCityIndexFile = dataDir + "/cityIndex.txt";
+		mImageFile = dataDir + "/startup.img";
+		mPopularityFile = dataDir + "/popularity.dat";
+
+		mFastStart = Boolean.getBoolean("weatherapp.fastStart");
 
 		mLocation = "Cambridge, GB";
 
-		makeIconMap();
+		mTimings = Collections.emptyMap();
 
-		mGordon = new APIClient();
+		if ("offheap".equals(System.getProperty("weatherapp.snapshots")))
+			mSnapshots = new OffHeapSnapshotStore(mClock.getZone());
+		else
+			mSnapshots = new HeapSnapshotStore();
 
-		loadFromDisk();
+		mFetcher = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "fetcher");
+			t.setDaemon(true);
+			return t;
+		});
 
-		if (! isFresh())
-			refresh();
+		// Before anything is stored, so everything is scheduled
+		setRefreshAhead(Integer.getInteger("weatherapp.refreshAhead", 0));
+
+		// Only needed for coordinates, so start up doesn't wait for it
+		if (new File(mCityIndexFile).isFile()) {
+			mCityIndex = CompletableFuture.supplyAsync(() -> {
+				try {
+					return CityIndex.load(mCityIndexFile);
+
+				} catch (IOException e) {
+					System.out.println("Failed to load city index: " + e.getMessage());
+					return null;
+				}
+			}, mFetcher);
+		}
+
+		// Everything the image holds needn't be rebuilt
+		StartupImage image = null;
+
+		if (mFastStart) {
+			try {
+				image = StartupImage.load(mImageFile, mCityListFile, mCacheFile, mClock.getZone());
+
+			} catch (IOException | RuntimeException e) {
+				System.out.println("Startup image unusable: " + e.getMessage());
+			}
+		}
+
+		if (image != null)
+			mIconMap = image.getIconMap();
+		else
+			makeIconMap();
+
+		mGordon = gordon;
+
+		try {
+			mArchive = new ForecastArchive(mArchiveDir);
+
+		} catch (IOException e) {
+			// The app works without it, we just don't keep history
+			System.out.println("Forecast archive unavailable: " + e.getMessage());
+		}
+
+		if (image != null && image.getSnapshot() != null) {
+			mSnapshot = image.getSnapshot();
+			mLocation = mSnapshot.getLocation();
+			store(mSnapshot);
+
+		} else {
+			loadFromDisk();
+		}
+
+		ensureFresh(true);
 
 		long t2 = System.nanoTime();
 
 		try {
-			mSearchSug = new SearchSuggester(mCityListFile);
+			if (image != null)
+				mSearchSug = image.getSuggester();
+			else
+				mSearchSug = new SearchSuggester(mCityListFile);
+
+			mSuggestions = new SuggestionScheduler(mSearchSug, 150, 2);
+			mCanonical = new LocationCanonicaliser(mSearchSug.getCities());
+
+			// City IDs can be canonicalised once the index has loaded
+			if (mCityIndex != null)
+				mCityIndex.thenAccept(mCanonical::setIndex);
 
 		} catch (IOException e) {
 			// Note that this state should never occur in usage
@@ -98,8 +269,32 @@ public class WeatherCache {
 			System.exit(1);
 		}
 
+		if (new File(mPopularityFile).isFile()) {
+			try {
+				mSearchSug.setPopularity(FrequencySketch.load(mPopularityFile));
+
+			} catch (IOException e) {
+				// Suggestions are just unranked until locations are picked again
+				System.out.println("Failed to load popularity: " + e.getMessage());
+			}
+		}
+
 		long t3 = System.nanoTime();
 
+		// So the next start up is fast too
+		if (mFastStart && (image == null || image.getSnapshot() != mSnapshot))
+			mFetcher.execute(this::saveImageQuietly);
+
+		// Other locations likely to be wanted are fetched in the background
+		if (new File(mWatchListFile).isFile()) {
+			try {
+				warmUp(CacheWarmer.readList(mWatchListFile), 4);
+
+			} catch (IOException e) {
+				System.out.println("Failed to read watch-list: " + e.getMessage());
+			}
+		}
+
 		System.out.println("SearchSuggester instantiated in " + (t3 - t2) / 1000000 + "ms");
 		System.out.println("WeatherCache instantiated in " + (t3 - t1) / 1000000 + "ms (including the above)");
 	}
@@ -117,23 +312,27 @@ public class WeatherCache {
 		// Gets today's and tomorrow's weather
 		// At least 24 hours in the future, rather than until midnight
 
-		if (! isFresh()) {
-			refresh();
-		}
-
-		List<Record> result = new ArrayList<>();
+		ensureFresh(false);
 
-		result.addAll(mThisWeek.get(0));
+		return mSnapshot.get24Hours();
+	}
 
-		for (Record r : mThisWeek.get(1)) {
-			if (result.size() < 8) {
-				result.add(r);
-			} else {
-				break;
-			}
-		}
+	/**
+	 * Gets the forecast slots covering a time interval, which may span
+	 * midnight or several days. Each slot covers 3 hours, and is included if
+	 * any part of it falls within the interval.
+	 * Data returned are always fresh (no more than 1 hour old)
+	 *
+	 * @param	start	the start of the interval
+	 * @param	fin		the end of the interval
+	 * @return	forecast records, ordered chronologically (empty if outside the forecast)
+	 * @throws	APIException	if fetching weather data from the API fails
+	 * @throws	CacheException	if the cache file is invalid
+	 */
+	public List<Record> getForecast(LocalDateTime start, LocalDateTime fin) throws APIException, CacheException {
+		ensureFresh(false);
 
-		return result;
+		return mSnapshot.getIndex().range(start, fin);
 	}
 
 	/**
@@ -147,74 +346,83 @@ public class WeatherCache {
 	 * @throws	CacheException	if the cache file is invalid
 	 */
 	public List<Item> getItems(LocalTime start, LocalTime fin) throws APIException, CacheException {
-		if (! isFresh())
-			refresh();
+		ensureFresh(false);
 
-		if (mThisWeek == null)
+		if (mSnapshot == null)
 			throw new CacheException("Recommending items failed");
 
-		boolean cold = false;
-		boolean dark = false;
-		boolean heavyRain = false;
-		boolean rain = false;
-		boolean snow = false;
-		boolean sunny = false;
-
-		for (Record r : get24Hours()) {
-			LocalTime t = r.getTimeStamp().toLocalTime();
-
-			if (t.compareTo(start) > 0 & t.compareTo(fin.plusHours(1)) < 0) {
-				Icon i = r.getIcon();
-
-				cold = cold || (r.getTemp() < 10);
-
-				dark = dark || (t.compareTo(mSunrise.toLocalTime()) < 0
-							|| t.plusHours(1).compareTo(mSunset.toLocalTime()) > 0);
-
-				heavyRain = heavyRain || (i == Icon.HEAVY_RAIN || i == Icon.HAIL || i == Icon.THUNDERSTORM);
-
-				rain = rain || (i == Icon.LIGHT_RAIN);
-
-				snow = snow || (i == Icon.HEAVY_SNOW || i == Icon.LIGHT_SNOW || i == Icon.SNOWFLAKE);
-
-				sunny = sunny || (i == Icon.SUN);
-			}
-		}
-
-		rain = rain || heavyRain || snow;
-
-		List<Item> result = new ArrayList<>();
-
-		if (dark)
-			result.add(Item.LIGHTS);
+		return mSnapshot.recommend(start, fin);
+	}
 
-		if (rain || cold)
-			result.add(Item.COAT);
+	/**
+	 * Gets a list of recommended items for a time interval anywhere in the
+	 * 5 day forecast. Unlike the LocalTime version, the interval may span
+	 * midnight or later days.
+	 *
+	 * @param	start	the start of the interval
+	 * @param	fin		the end of the interval
+	 * @return	a list of Items
+	 * @throws	APIException	if fetching weather data from the API fails
+	 * @throws	CacheException	if the cache file is invalid
+	 */
+	public List<Item> getItems(LocalDateTime start, LocalDateTime fin) throws APIException, CacheException {
+		List<Record> slots = getForecast(start, fin);
 
-		if (cold)
-			result.add(Item.GLOVES);
+		return mSnapshot.recommend(slots);
+	}
 
-		if (rain)
-			result.add(Item.SEAT_COVER);
+	/**
+	 * Gets recommended items for many commutes, at any locations, without
+	 * changing the current location. See BatchRecommender.
+	 * Results are passed to the consumer as they are worked out, from several
+	 * threads; this returns once all have been passed.
+	 *
+	 * @param	queries	the commutes
+	 * @param	results	receives a result for each query
+	 */
+	public void getItems(List<CommuteQuery> queries, Consumer<CommuteResult> results) {
+		new BatchRecommender(this::getSnapshot, ForkJoinPool.commonPool()).run(queries, results);
+	}
 
-		if (sunny)
-			result.add(Item.SUNGLASSES);
+	/**
+	 * Gets the time stamp when the API was last accessed.
+	 *
+	 * @return	time stamp of last refresh
+	 */
+	public LocalDateTime getLastUpdated() {
+		return mSnapshot == null ? null : mSnapshot.getLastUpdated();
+	}
 
-		if (heavyRain || snow)
-			result.add(Item.BAG_COVER);
+	/**
+	 * Tests whether the data last returned were older than the usual 1 hour
+	 * limit, because the API was failing or too slow to wait for.
+	 * A refresh carries on in the background, and fresh data are served as
+	 * soon as it succeeds.
+	 *
+	 * @return	true if stale data were served
+	 */
+	public boolean isStale() {
+		return mStale;
+	}
 
-		result.add(Item.HELMET);
+	/**
+	 * Gets the age of the forecast data being served.
+	 *
+	 * @return	time since the last refresh, or null if there are no data
+	 */
+	public Duration getDataAge() {
+		Snapshot s = mSnapshot;
 
-		return result;
+		return s == null ? null : Duration.between(s.getLastUpdated(), LocalDateTime.now(mClock));
 	}
 
 	/**
-	 * Gets the time stamp when the API was last accessed.
+	 * Gets the time zone of the cache's clock, which every snapshot's times are in.
 	 *
-	 * @return	time stamp of last refresh
+	 * @return	the time zone
 	 */
-	public LocalDateTime getLastUpdated() {
-		return mLastUpdated;
+	public ZoneId getZone() {
+		return mClock.getZone();
 	}
 
 	/**
@@ -228,7 +436,8 @@ public class WeatherCache {
 	}
 
 	/**
-	 * Recommends cities given the start of a city name.
+	 * Recommends cities given the start of a city name, the locations picked
+	 * most often first.
 	 * The input is case-insensitive.
 	 * Returns empty list if input is less than 3 characters (or if no matches are found)
 	 * The value returned is of the form [city name], [ISO 3166 country code]
@@ -237,7 +446,40 @@ public class WeatherCache {
 	 * @return	a list of cities matching the request
 	 */
 	public List<String> getSearchSuggestions(String s) {
-		return mSearchSug.getSuggestions(s);
+		List<String> result = mSearchSug.getSuggestions(s);
+
+		SpeculativePrefetcher p = mPrefetcher;
+
+		if (p != null)
+			p.suggested(result);
+
+		return result;
+	}
+
+	/**
+	 * Recommends cities given the start of a city name, without blocking.
+	 * Intended for callers which query on every keystroke. The query only runs
+	 * once the client has stopped typing for 150ms, and a newer prefix from the
+	 * same client cancels the previous future.
+	 * Results are as for getSearchSuggestions.
+	 *
+	 * @param	client	identifies the caller, eg. a session ID
+	 * @param	s		the beginning of a city name
+	 * @return	a future which completes with a list of cities matching the request
+	 */
+	public CompletableFuture<List<String>> getSearchSuggestionsAsync(String client, String s) {
+		CompletableFuture<List<String>> f = mSuggestions.submit(client, s);
+
+		SpeculativePrefetcher p = mPrefetcher;
+
+		if (p != null) {
+			f.whenComplete((result, e) -> {
+				if (result != null)
+					p.suggested(result);
+			});
+		}
+
+		return f;
 	}
 
 	/**
@@ -248,10 +490,9 @@ public class WeatherCache {
 	 * @throws	CacheException	if the cache file is invalid
 	 */
 	public Record getSummary() throws APIException, CacheException {
-		if (! isFresh())
-			refresh();
+		ensureFresh(true);
 
-		return mSummary;
+		return mSnapshot.getSummary();
 	}
 
 	/**
@@ -265,10 +506,25 @@ public class WeatherCache {
 	 * @throws	CacheException	if the cache file is invalid
 	 */
 	public List<List<Record>> getThisWeek() throws APIException, CacheException {
-		if (! isFresh())
-			refresh();
+		ensureFresh(false);
+
+		return mSnapshot.getThisWeek();
+	}
+
+	/**
+	 * Gets aggregated weather for each day of the 5 day forecast: temperature
+	 * range, dominant icon, first rain and warnings.
+	 * These are worked out once per refresh, so this is cheap to call for
+	 * every render of the week view.
+	 *
+	 * @return	a summary for each day with forecast data, ordered chronologically
+	 * @throws	APIException	if fetching weather data from the API fails
+	 * @throws	CacheException	if the cache file is invalid
+	 */
+	public List<DailySummary> getDailySummaries() throws APIException, CacheException {
+		ensureFresh(false);
 
-		return mThisWeek;
+		return mSnapshot.getDailySummaries();
 	}
 
 	/**
@@ -282,10 +538,9 @@ public class WeatherCache {
 	 * @throws	CacheException	if the cache file is invalid
 	 */
 	public List<Record> getToday() throws APIException, CacheException {
-		if (! isFresh())
-			refresh();
+		ensureFresh(false);
 
-		return mThisWeek.get(0);
+		return mSnapshot.getThisWeek().get(0);
 	}
 
 	/**
@@ -296,78 +551,470 @@ public class WeatherCache {
 	 * @throws	CacheException	if the cache file is invalid
 	 */
 	public List<Warning> getWarnings() throws APIException, CacheException {
-		if (! isFresh())
-			refresh();
+		ensureFresh(false);
 
-		return mWarnings;
+		return mSnapshot.getWarnings();
 	}
 
-	private boolean isFresh() {
-		if (mLastUpdated == null)
-			return false;
+	/**
+	 * Gets any weather warnings for a time interval anywhere in the 5 day
+	 * forecast.
+	 *
+	 * @param	start	the start of the interval
+	 * @param	fin		the end of the interval
+	 * @return	list of warnings
+	 * @throws	APIException	if fetching weather data from the API fails
+	 * @throws	CacheException	if the cache file is invalid
+	 */
+	public List<Warning> getWarnings(LocalDateTime start, LocalDateTime fin) throws APIException, CacheException {
+		return WarningAccumulator.assess(getForecast(start, fin));
+	}
 
-		int comp = LocalDateTime.now().compareTo(mLastUpdated.plusHours(1));
+	/**
+	 * Gets the lowest temperature forecast for a time interval.
+	 *
+	 * @param	start	the start of the interval
+	 * @param	fin		the end of the interval
+	 * @return	the lowest temperature, in degrees Celcius
+	 * @throws	APIException	if fetching weather data from the API fails
+	 * @throws	CacheException	if the cache file is invalid
+	 * @throws	IllegalArgumentException	if the interval lies outside the forecast
+	 */
+	public int getMinTemp(LocalDateTime start, LocalDateTime fin) throws APIException, CacheException {
+		ensureFresh(false);
 
-		return comp < 0;
+		return mSnapshot.getIndex().minTemp(start, fin);
 	}
 
-	private void loadFromDisk() throws CacheException {
-		File f = new File(mCacheFile);
+	/**
+	 * Gets the highest temperature forecast for a time interval.
+	 *
+	 * @param	start	the start of the interval
+	 * @param	fin		the end of the interval
+	 * @return	the highest temperature, in degrees Celcius
+	 * @throws	APIException	if fetching weather data from the API fails
+	 * @throws	CacheException	if the cache file is invalid
+	 * @throws	IllegalArgumentException	if the interval lies outside the forecast
+	 */
+	public int getMaxTemp(LocalDateTime start, LocalDateTime fin) throws APIException, CacheException {
+		ensureFresh(false);
 
-		if (f.isFile()) {
-			try (BufferedReader br = new BufferedReader(new FileReader(mCacheFile))) {
+		return mSnapshot.getIndex().maxTemp(start, fin);
+	}
 
-				// Load time stamp
+	/**
+	 * Gets the archive of every forecast fetched, for looking up what was
+	 * predicted in the past.
+	 *
+	 * @return	the archive, or null if it could not be opened
+	 */
+	public ForecastArchive getArchive() {
+		return mArchive;
+	}
+
+	/**
+	 * Gets the scheduler API requests go through, for queue depth, wait time
+	 * and quota headroom.
+	 *
+	 * @return	the request scheduler
+	 */
+	public RequestScheduler getRequestScheduler() {
+		return mGordon.getScheduler();
+	}
+
+	/**
+	 * Gets the time spent in each stage of the last refresh, in microseconds.
+	 * Stages are: network (blocked on the forecast download), firstEntry
+	 * (until the first forecast entry was decoded), decode, transform (icon
+	 * mapping, labelling and warnings), current (waiting for the current
+	 * weather after the forecast finished), assemble, save, archive, and
+	 * notify (telling subscribers what changed).
+	 * Empty if there has been no refresh yet.
+	 *
+	 * @return	map from stage name to time
+	 */
+	public Map<String, Long> getRefreshTimings() {
+		return mTimings;
+	}
+
+	/**
+	 * Gets the canonical form of a location, so that "cambridge,gb",
+	 * "Cambridge GB" and "Cambridge, GB" are cached and fetched as one.
+	 * See LocationCanonicaliser.
+	 *
+	 * @param	location	a location as a user might write it, or an openweathermap city ID
+	 * @return	the canonical location string
+	 */
+	public String canonicalise(String location) {
+		return mCanonical == null ? location.trim() : mCanonical.canonicalise(location);
+	}
+
+	/**
+	 * Gets a snapshot of any location, without changing the current location
+	 * or the cache file. A snapshot fetched within the last hour is reused;
+	 * otherwise the location is fetched at background priority. If that
+	 * fails, an older snapshot is used if there is one.
+	 * Concurrent requests for the same location share one fetch, however
+	 * the location is written.
+	 *
+	 * @param	location	location string, in the form "[city name], [ISO 3166 country code]"
+	 * @return	a future for the snapshot, failing with APIException if there is none
+	 */
+	public CompletableFuture<Snapshot> getSnapshot(String location) {
+		return getSnapshot(location, Priority.BACKGROUND);
+	}
 
-				String line = br.readLine();
-				mLastUpdated = LocalDateTime.parse(line);
+	/**
+	 * Gets a snapshot of any location, as above, fetching it at the given
+	 * priority if necessary.
+	 *
+	 * @param	query		location string, in any form canonicalise accepts
+	 * @param	priority	how urgently the snapshot is needed
+	 * @return	a future for the snapshot, failing with APIException if there is none
+	 */
+	public CompletableFuture<Snapshot> getSnapshot(String query, Priority priority) {
+		String location = canonicalise(query);
+		Snapshot known = mSnapshots.get(location);
 
-				line = br.readLine();
-				mLocation = line;
+		if (known != null && isRecent(known.getLastUpdated()))
+			return CompletableFuture.completedFuture(known);
 
-				// Load sunrise & sunset
+		return fetchSnapshot(location, known, priority);
+	}
 
-				line = br.readLine();
-				mSunrise = LocalDateTime.parse(line);
+	/**
+	 * Gets a snapshot of any location as getSnapshot does, encoded for
+	 * sending to clients. Snapshots are encoded once, when stored, so
+	 * requests for the same refresh share the same bytes and ETag.
+	 *
+	 * @param	query	location string, in any form canonicalise accepts
+	 * @return	a future for the encoded snapshot, failing with APIException if there is none
+	 */
+	public CompletableFuture<EncodedSnapshot> getEncoded(String query) {
+		return getSnapshot(query).thenApply(s -> {
+			EncodedSnapshot e = mEncoded.get(s.getLocation());
 
-				line = br.readLine();
-				mSunset = LocalDateTime.parse(line);
+			return e != null && e.getLastUpdated().equals(s.getLastUpdated()) ? e : new EncodedSnapshot(s);
+		});
+	}
 
-				br.readLine();	// Should be a blank line
+	// Fetches a location, sharing any fetch of it already under way
+	// If the fetch fails, falls back to the known snapshot if there is one
+	private CompletableFuture<Snapshot> fetchSnapshot(String location, Snapshot known, Priority priority) {
+		CompletableFuture<Snapshot> f = mFetching.computeIfAbsent(location, l -> CompletableFuture.supplyAsync(() -> {
+			try {
+				RefreshPipeline pipeline = new RefreshPipeline(l, mIconMap, known, mClock);
+				Snapshot s = fetch(pipeline, l, true, priority);
 
-				// Load weekly forecast
+				store(s);
 
-				mThisWeek = new ArrayList<>();
+				if (mArchive != null)
+					archive(s, pipeline);
 
-				List<Record> list = new ArrayList<>();
+				return s;
 
-				while (! (line = br.readLine()).equals("")) {
-					if (line.equals("___")) {
-						mThisWeek.add(list);
-						list = new ArrayList<>();
+			} catch (APIException e) {
+				if (known != null)
+					return known;
 
-					} else {
-						list.add(new Record(line));
-					}
-				}
+				throw new CompletionException(e);
+			}
+		}, mFetcher));
 
-				// Load daily summary
+		// Once done, the next request should start afresh
+		f.whenComplete((s, e) -> mFetching.remove(location, f));
 
-				line = br.readLine();
-				mSummary = new Record(line);
+		return f;
+	}
 
-				br.readLine();
+	/**
+	 * Saves a startup image of the cache as it is now, which start up loads
+	 * instead of rebuilding when the weatherapp.fastStart property is "true".
+	 *
+	 * @throws	CacheException	if the image can't be saved
+	 */
+	public void saveStartupImage() throws CacheException {
+		try {
+			synchronized (this) {
+				StartupImage.save(mImageFile, mCityListFile, mCacheFile, mIconMap, mSearchSug, mSnapshot);
+			}
 
-				// Load weather warnings
+		} catch (IOException e) {
+			throw new CacheException("Failed to save startup image");
+		}
+	}
 
-				mWarnings = new ArrayList<>();
+	/**
+	 * Gets the stored snapshot of a location, however old, without fetching.
+	 *
+	 * @param	location	location string, in the form "[city name], [ISO 3166 country code]"
+	 * @return	the snapshot, or null if the location hasn't been fetched
+	 */
+	Snapshot getStored(String location) {
+		return mSnapshots.get(location);
+	}
 
-				while ((line = br.readLine()) != null) {
-					if (! line.equals(""))
-						mWarnings.add(Warning.valueOf(line));
-				}
+	/**
+	 * Stores a snapshot fetched elsewhere, eg. handed over by another cluster
+	 * node, unless a newer one is already stored.
+	 *
+	 * @param	s	the snapshot
+	 */
+	void offer(Snapshot s) {
+		Snapshot known = mSnapshots.get(s.getLocation());
+
+		if (known == null || known.getLastUpdated().isBefore(s.getLastUpdated()))
+			store(s);
+	}
+
+	/**
+	 * Turns speculative prefetching on or off. When on, once search
+	 * suggestions narrow to 5 or fewer, the top 2 are fetched in the
+	 * background so that picking one is instant. At most 20 locations are
+	 * prefetched per session, and none while the rate limit has 10 or fewer
+	 * requests to spare.
+	 *
+	 * @param	on	true to prefetch
+	 */
+	public void setSpeculative(boolean on) {
+		if (! on) {
+			mPrefetcher = null;
+		} else if (mPrefetcher == null) {
+			mPrefetcher = new SpeculativePrefetcher(l -> getSnapshot(l, Priority.SPECULATIVE),
+					mGordon.getScheduler()::getHeadroom, 5, 2, 20, 10);
+		}
+	}
+
+	/**
+	 * Turns refresh-ahead on or off. When on, each location stored from then
+	 * on is refreshed in the background at a random point in the last
+	 * quarter of its data's life, so locations fetched together don't expire
+	 * together, and getters rarely wait for a refresh. See RefreshScheduler.
+	 * The weatherapp.refreshAhead property sets the rate at start up.
+	 *
+	 * @param	perMinute	the most refreshes a minute (each is up to 2 API calls), or 0 for off
+	 */
+	public void setRefreshAhead(int perMinute) {
+		RefreshScheduler r = mRefresher;
+
+		if (r != null)
+			r.stop();
+
+		mRefresher = perMinute <= 0 ? null : new RefreshScheduler(this::refreshAhead, 0.25, perMinute, mClock);
+	}
+
+	/**
+	 * Gets the refresh-ahead scheduler, for its metrics.
+	 *
+	 * @return	the scheduler, or null if refresh-ahead is off
+	 */
+	public RefreshScheduler getRefresher() {
+		return mRefresher;
+	}
+
+	// Fetches a location again before its data expire
+	// The current location goes through refresh, so its summary and
+	// subscribers are kept up to date too
+	private CompletableFuture<Snapshot> refreshAhead(String location) {
+		if (! location.equals(mLocation))
+			return fetchSnapshot(location, mSnapshots.get(location), Priority.BACKGROUND);
+
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				refresh(true);
+				return mSnapshot;
+
+			} catch (APIException | CacheException e) {
+				throw new CompletionException(e);
+			}
+		}, mFetcher);
+	}
+
+	// Every snapshot stored goes through here, to encode it for clients,
+	// update the overview and schedule its refresh
+	private void store(Snapshot s) {
+		mSnapshots.put(s);
+		mOverview.update(s);
+
+		// Unless a newer one was stored meanwhile
+		mEncoded.merge(s.getLocation(), new EncodedSnapshot(s),
+				(old, e) -> old.getLastUpdated().isAfter(e.getLastUpdated()) ? old : e);
+
+		RefreshScheduler r = mRefresher;
+
+		if (r != null)
+			r.scheduled(s.getLocation(), s.getLastUpdated(), mMaxAge);
+	}
+
+	/**
+	 * Gets the overview of every location stored, grouped by country, which
+	 * is kept up to date as locations are refreshed. Reading it never
+	 * triggers a refresh.
+	 *
+	 * @return	the overview
+	 */
+	public RegionOverview getOverview() {
+		return mOverview;
+	}
+
+	/**
+	 * Gets the speculative prefetcher, for its hit rate and other metrics.
+	 *
+	 * @return	the prefetcher, or null if speculation is off
+	 */
+	public SpeculativePrefetcher getPrefetcher() {
+		return mPrefetcher;
+	}
+
+	/**
+	 * Starts fetching a list of locations in the background, so that
+	 * switching to them later doesn't wait for the API. This happens
+	 * automatically at start up for the locations in data/watchList.txt.
+	 *
+	 * @param	locations	location strings, in the form "[city name], [ISO 3166 country code]"
+	 * @param	parallelism	the most locations fetched at once
+	 * @return	the warmer, for tracking progress
+	 */
+	public CacheWarmer warmUp(List<String> locations, int parallelism) {
+		mWarmer = new CacheWarmer(locations, this::getSnapshot, parallelism);
+
+		return mWarmer;
+	}
+
+	/**
+	 * Gets the last warm-up started, for tracking progress.
+	 *
+	 * @return	the warmer, or null if none has been started
+	 */
+	public CacheWarmer getWarmer() {
+		return mWarmer;
+	}
+
+	/**
+	 * Registers a listener to be told what changes at each refresh.
+	 * The listener won't be told about item changes; see the version with a
+	 * commute window for that.
+	 *
+	 * @param	listener	the listener
+	 */
+	public void subscribe(SnapshotListener listener) {
+		mSubscriptions.add(new Subscription(listener, null, null));
+	}
+
+	/**
+	 * Registers a listener to be told what changes at each refresh, including
+	 * changes to the items recommended for a commute window.
+	 *
+	 * @param	listener	the listener
+	 * @param	start		the start of the commute window
+	 * @param	fin			the end of the commute window
+	 */
+	public void subscribe(SnapshotListener listener, LocalTime start, LocalTime fin) {
+		mSubscriptions.add(new Subscription(listener, start, fin));
+	}
+
+	/**
+	 * Stops a listener being told about changes, under all its subscriptions.
+	 *
+	 * @param	listener	the listener
+	 */
+	public void unsubscribe(SnapshotListener listener) {
+		mSubscriptions.removeIf(sub -> sub.mListener == listener);
+	}
+
+	private boolean isFresh() {
+		if (mSnapshot == null)
+			return false;
+
+		return isRecent(mSnapshot.getLastUpdated());
+	}
+
+	// The summary is refreshed separately, so it has its own age
+	private boolean isSummaryFresh() {
+		if (mSnapshot == null || ! mSnapshot.getLocation().equals(mLocation))
+			return false;
+
+		return isRecent(mSnapshot.getSummary().getTimeStamp());
+	}
+
+	private boolean isRecent(LocalDateTime t) {
+		int comp = LocalDateTime.now(mClock).compareTo(t.plus(mMaxAge));
+
+		return comp < 0;
+	}
+
+	// Makes sure the data are fresh enough to serve
+	// If there is an older snapshot of this location to fall back on, waits
+	// at most the latency budget for a refresh (not at all while the circuit
+	// breaker is open), then serves the old snapshot and leaves the refresh
+	// running in the background
+	private void ensureFresh(boolean summary) throws APIException, CacheException {
+		if (isFresh() && (! summary || isSummaryFresh())) {
+			mStale = false;
+			return;
+		}
+
+		Snapshot s = mSnapshot;
+
+		if (s == null || ! s.getLocation().equals(mLocation)) {
+			refresh(summary);
+			return;
+		}
+
+		Future<?> f = refreshInBackground(summary);
+
+		long budget = mGordon.getBreaker().getState() == CircuitBreaker.State.CLOSED ? mLatencyBudget : 0;
+
+		try {
+			f.get(budget, TimeUnit.MILLISECONDS);
+			mStale = false;
+
+		} catch (TimeoutException | ExecutionException e) {
+			mStale = true;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			mStale = true;
+		}
+	}
+
+	// Starts a refresh on another thread, unless one is already running
+	// Doesn't lock the cache itself, which the running refresh holds
+	private Future<?> refreshInBackground(boolean summary) {
+		synchronized (mFetcher) {
+			if (mBackground == null || mBackground.isDone()) {
+				mBackground = mFetcher.submit(() -> {
+					refresh(summary);
+					return null;
+				});
+			}
 
-			} catch (DateTimeParseException e) {
+			return mBackground;
+		}
+	}
+
+	// For testing: how old data may be before being refreshed
+	void setMaxAge(Duration d) {
+		mMaxAge = d;
+	}
+
+	// For testing: how long getters wait for a refresh before serving old data
+	void setLatencyBudget(long millis) {
+		mLatencyBudget = millis;
+	}
+
+	private void loadFromDisk() throws CacheException {
+		File f = new File(mCacheFile);
+
+		if (f.isFile()) {
+			try (BufferedReader br = new BufferedReader(new FileReader(mCacheFile))) {
+				Snapshot s = SnapshotFormat.read(br, mClock.getZone());
+
+				mLocation = s.getLocation();
+				mSnapshot = s;
+				store(s);
+
+			} catch (CacheException e) {
 				throw new CacheException("Invalid cache file");
 
 			} catch (IOException e) {
@@ -432,218 +1079,286 @@ public class WeatherCache {
 		mIconMap.put(WeatherData.ConditionCode.HAIL, Icon.HAIL);
 	}
 
-	private Icon mapIcon(WeatherData.ConditionCode c, LocalDateTime t) {
-		LocalTime time = t.toLocalTime();
-		LocalTime rise = mSunrise.toLocalTime();
-		LocalTime set = mSunset.toLocalTime();
-
-		Icon i = mIconMap.get(c);
-
-		if (time.compareTo(rise) < 0 || time.compareTo(set) > 0) {
-			if (i == Icon.MIST_DAY)
-				i = Icon.MIST_NIGHT;
+	// Refreshes the forecast, and the current weather summary if asked to
+	// Skipping the current weather saves an API call
+	private synchronized void refresh(boolean summary) throws APIException, CacheException {
+		long time1 = System.nanoTime();
 
-			if (i == Icon.SUN)
-				i = Icon.MOON;
+		Snapshot previous = mSnapshot;
 
-			if (i == Icon.PARTLY_CLEAR_DAY)
-				i = Icon.PARTLY_CLEAR_NIGHT;
-		}
+		// Without a previous summary for this location, there is nothing to keep
+		summary = summary || previous == null || ! previous.getLocation().equals(mLocation);
 
-		return i;
-	}
+		RefreshPipeline pipeline = new RefreshPipeline(mLocation, mIconMap, previous, mClock);
 
-	private void refresh() throws APIException, CacheException {
-		long time1 = System.nanoTime();
+		// Publish
 
-		// API call
+		mSnapshot = fetch(pipeline, mLocation, summary, Priority.INTERACTIVE);
+		store(mSnapshot);
 
-		WeatherData data;
-		List<WeatherForecast> forecasts;
+		long time2 = System.nanoTime();
 
-		try {
-			data = mGordon.currentWeatherAtCity(mLocation);
-			forecasts = mGordon.forecastWeatherAtCity(mLocation);
+		saveToDisk(mSnapshot);
 
-		} catch (IOException e) {
-			throw new APIException(e.getMessage());
-		}
+		long time3 = System.nanoTime();
 
-		// Sunrise and sunset times
+		pipeline.time("save", time3 - time2);
 
-		int sr = data.getSunrise();
-		int ss = data.getSunset();
+		if (mFastStart && mSearchSug != null)
+			mFetcher.execute(this::saveImageQuietly);
 
-		mSunrise = LocalDateTime.ofInstant(Instant.ofEpochSecond(sr), ZoneId.systemDefault());
-		mSunset = LocalDateTime.ofInstant(Instant.ofEpochSecond(ss), ZoneId.systemDefault());
+		if (mArchive != null) {
+			archive(mSnapshot, pipeline);
 
-		// Current summary
+			long time4 = System.nanoTime();
+			pipeline.time("archive", time4 - time3);
+			time3 = time4;
+		}
 
-		LocalDateTime time = LocalDateTime.now();
+		if (! mSubscriptions.isEmpty()) {
+			notifySubscribers(previous, mSnapshot);
 
-		Icon i = mapIcon(data.getConditionCode(), time);
-		int temp = (int) Math.round(data.getTemperature());
+			long time4 = System.nanoTime();
+			pipeline.time("notify", time4 - time3);
+			time3 = time4;
+		}
 
-		mSummary = new Record(i, temp, time);
-		mSummary.setLabel("Current");
+		mTimings = Collections.unmodifiableMap(pipeline.getTimings());
 
-		// Weekly forecast
+		System.out.println("Data refreshed in " + (time3 - time1) / 1000000 + "ms (including saving to disk) " + mTimings);
+	}
 
-		mThisWeek = new ArrayList<>();
+	// Makes the API calls for a refresh, and assembles the snapshot
+	// The current weather is fetched in parallel with the forecast, and the
+	// forecast is transformed as it streams in
+	private Snapshot fetch(RefreshPipeline pipeline, String location, boolean summary, Priority priority) throws APIException {
+		long time1 = System.nanoTime();
 
-		List<Record> current = new ArrayList<>();
-		mThisWeek.add(current);
+		Future<WeatherData> current = null;
+		long network;
+		long streamed;
 
-		int count = 1;
+		// A city's ID is unambiguous, so is used when known; a location which
+		// is an ID needs no index
+		CityIndex index = mCityIndex == null ? null : mCityIndex.getNow(null);
+		CityIndex.City city = index == null ? null : index.get(location);
+		int id = city != null ? city.getId() : CityIndex.parseId(location);
 
-		for (WeatherForecast wf : forecasts) {
-			String[] s = wf.getDate().split(" ");
+		if (summary) {
+			current = mFetcher.submit(() -> id >= 0 ? mGordon.currentWeatherAtCity(id, priority)
+					: mGordon.currentWeatherAtCity(location, priority));
+		}
 
-			LocalDateTime t = LocalDateTime.parse(s[0] + "T" + s[1]);
+		try {
+			if (id >= 0)
+				network = mGordon.forecastWeatherAtCity(id, pipeline, priority);
+			else
+				network = mGordon.forecastWeatherAtCity(location, pipeline, priority);
+			streamed = System.nanoTime() - time1;
 
-			if (! t.toLocalDate().equals(time.toLocalDate())) {
-				current = new ArrayList<>();
-				mThisWeek.add(current);
+			pipeline.time("network", network);
 
-				count++;
+			if (current != null) {
+				pipeline.current(current.get());
+				pipeline.time("current", System.nanoTime() - time1 - streamed);
 			}
 
-			time = t;
+		} catch (IOException e) {
+			if (current != null)
+				current.cancel(true);
 
-			i = mapIcon(wf.getConditionCode(), time);
-			temp = (int) Math.round(wf.getTemperature());
+			throw new APIException(e.getMessage());
 
-			Record r = new Record(i, temp, time);
+		} catch (ExecutionException e) {
+			throw new APIException(e.getCause().getMessage());
 
-			switch (count) {
-				case 1: r.setLabel("Today");
-				break;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIException("Interrupted while fetching weather data");
+		}
 
-				case 2: r.setLabel("Tomorrow");
-				break;
+		Snapshot s = pipeline.finish();
 
-				default:
-					String label = time.getDayOfWeek().toString();
-					label = label.substring(0, 1) + label.substring(1).toLowerCase();
-					r.setLabel(label);
-			}
+		// Whatever the stream spent neither waiting nor transforming was decoding
+		long transform = pipeline.getTimings().get("transform") * 1000;
+		pipeline.time("decode", Math.max(0, streamed - network - transform));
 
-			current.add(r);
-		}
+		return s;
+	}
 
-		// Save time stamp
-		mLastUpdated = LocalDateTime.now();
+	private void archive(Snapshot s, RefreshPipeline pipeline) {
+		try {
+			mArchive.append(s.getLocation(), s.getLastUpdated(),
+					s.getIndex().first(Integer.MAX_VALUE), pipeline.getConditionCodes());
 
-		// Weather warnings
+		} catch (IOException e) {
+			System.out.println("Failed to archive forecast: " + e.getMessage());
+		}
+	}
 
-		mWarnings = new ArrayList<>();
+	// Works out the diff once, and item changes once per distinct commute
+	// window, however many subscribers share them
+	private void notifySubscribers(Snapshot previous, Snapshot next) {
+		SnapshotDiff diff = SnapshotDiff.between(previous, next);
+		Map<List<LocalTime>, SnapshotDiff> windows = new HashMap<>();
 
-		boolean ice = false;
-		boolean wet = false;
-		boolean vis = false;
-		boolean storm = false;
+		for (Subscription sub : mSubscriptions) {
+			SnapshotDiff d = diff;
 
-		for (Record r : get24Hours()) {
-			ice = ice || (r.getTemp() < 3);
+			if (sub.mStart != null)
+				d = windows.computeIfAbsent(Arrays.asList(sub.mStart, sub.mFin), w -> diff.forWindow(w.get(0), w.get(1)));
 
-			i = r.getIcon();
+			if (d.isEmpty())
+				continue;
 
-			vis = vis || (i == Icon.MIST || i == Icon.MIST_DAY || i == Icon.MIST_NIGHT);
+			try {
+				sub.mListener.changed(d);
 
-			storm = storm || (i == Icon.THUNDERSTORM);
-		
-			wet = wet || (i == Icon.HAIL) || (i == Icon.HEAVY_RAIN) || (i == Icon.HEAVY_SNOW) || (i == Icon.LIGHT_SNOW) || (i == Icon.SNOWFLAKE) || (i == Icon.THUNDERSTORM); 
+			} catch (RuntimeException e) {
+				// One broken listener shouldn't stop the others hearing
+				System.out.println("Snapshot listener failed: " + e);
+			}
 		}
+	}
 
-		if (ice)
-			mWarnings.add(Warning.ICY);
-
-		if (vis)
-			mWarnings.add(Warning.POOR_VISIBILITY);
+	private void saveToDisk(Snapshot s) throws CacheException {
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(mCacheFile))) {
+			SnapshotFormat.write(s, bw);
 
-		if (storm)
-			mWarnings.add(Warning.STORMY);
+		} catch (IOException e) {
+			throw new CacheException("Failed to save to cache file");
+		}	
 
-		if (wet)
-			mWarnings.add(Warning.WET_SURFACES);
+		if (mPicked) {
+			mPicked = false;
 
-		saveToDisk();
+			try {
+				mSearchSug.getPopularity().save(mPopularityFile);
 
-		long time2 = System.nanoTime();
-
-		System.out.println("Data refreshed in " + (time2 - time1) / 1000000 + "ms (including saving to disk)");
+			} catch (IOException e) {
+				// Suggestions still work, just unranked after a restart
+				System.out.println("Failed to save popularity: " + e.getMessage());
+			}
+		}
 	}
 
-	private void saveToDisk() throws CacheException {
-		try (BufferedWriter bw = new BufferedWriter(new FileWriter(mCacheFile))) {
+	/**
+	 * Finds the known city nearest a point, eg. a phone's GPS position.
+	 *
+	 * @param	lat	latitude in degrees
+	 * @param	lon	longitude in degrees
+	 * @return	location string, in the form "[city name], [ISO 3166 country code]", or the city ID if another city has the same name
+	 * @throws	CacheException	if there is no city index
+	 */
+	public String getNearestLocation(double lat, double lon) throws CacheException {
+		CityIndex index = mCityIndex == null ? null : mCityIndex.join();
 
-			// Save time stamp
+		if (index == null || index.size() == 0)
+			throw new CacheException("City index not present");
 
-			bw.write(mLastUpdated.toString());
-			bw.newLine();
+		return index.getLocation(index.nearest(lat, lon));
+	}
 
-			// Save location
+	/**
+	 * Gets a snapshot of the known city nearest a point, as getSnapshot does
+	 * for a location string. Everyone nearest the same city shares one
+	 * snapshot.
+	 *
+	 * @param	lat	latitude in degrees
+	 * @param	lon	longitude in degrees
+	 * @return	a future for the snapshot, failing with APIException if there is none, or CacheException if there is no city index
+	 */
+	public CompletableFuture<Snapshot> getSnapshot(double lat, double lon) {
+		try {
+			return getSnapshot(getNearestLocation(lat, lon));
 
-			bw.write(mLocation);
-			bw.newLine();
+		} catch (CacheException e) {
+			CompletableFuture<Snapshot> f = new CompletableFuture<>();
+			f.completeExceptionally(e);
+			return f;
+		}
+	}
 
-			// Sunrise & sunset
+	/**
+	 * Updates the location to the known city nearest a point, and fetches
+	 * weather data for it.
+	 *
+	 * @param	lat	latitude in degrees
+	 * @param	lon	longitude in degrees
+	 * @throws	APIException	if downloading weather data fails
+	 * @throws	CacheException	if there is no city index, or saving to disk fails
+	 */
+	public void setLocation(double lat, double lon) throws APIException, CacheException {
+		setLocation(getNearestLocation(lat, lon));
+	}
 
-			bw.write(mSunrise.toString());
-			bw.newLine();
+	/**
+	 * Updates the location and fetches weather data for that location.
+	 *
+	 * @param	l		location string, in any form canonicalise accepts
+	 * @throws	APIException	if downloading weather data fails
+	 * @throws	CacheException	if saving to disk fails
+	 */
+	public void setLocation(String l) throws APIException, CacheException {
+		l = canonicalise(l);
+		mLocation = l;
 
-			bw.write(mSunset.toString());
-			bw.newLine();
+		// So popular locations are suggested first
+		mSearchSug.recordPick(l);
+		mPicked = true;
 
-			// Blank line
+		SpeculativePrefetcher p = mPrefetcher;
 
-			bw.newLine();
+		if (p != null)
+			p.switched(l);
 
-			// Save weekly forecast
+		// Finish any fetch of this location already under way, rather than
+		// starting another
+		CompletableFuture<Snapshot> fetching = mFetching.get(l);
 
-			for (List<Record> entry : mThisWeek) {
-				for (Record r : entry) {
-					bw.write(r.toString());
-					bw.newLine();
-				}
+		if (fetching != null) {
+			try {
+				fetching.join();
 
-				bw.write("___");
-				bw.newLine();
+			} catch (CompletionException e) {
+				// Fall through to a refresh
 			}
+		}
 
-			bw.newLine();
+		// A snapshot fetched in the background saves waiting for the API
+		Snapshot known = mSnapshots.get(l);
 
-			// Save current summary
+		if (known != null && isRecent(known.getLastUpdated()) && isRecent(known.getSummary().getTimeStamp())) {
+			publish(known);
+			return;
+		}
 
-			bw.write(mSummary.toString());
-			bw.newLine();
+		refresh(true);
+	}
 
-			bw.newLine();
+	// Saves the start up image, printing rather than throwing if that fails
+	private void saveImageQuietly() {
+		try {
+			saveStartupImage();
 
-			// Save weather warnings
+		} catch (CacheException e) {
+			System.out.println(e.getMessage());
+		}
+	}
 
-			bw.newLine();
+	// Makes an already fetched snapshot the current one
+	private synchronized void publish(Snapshot s) throws CacheException {
+		Snapshot previous = mSnapshot;
 
-			for (Warning w : mWarnings) {
-				bw.write(w.toString());
-				bw.newLine();
-			}
+		mSnapshot = s;
 
-		} catch (IOException e) {
-			throw new CacheException("Failed to save to cache file");
-		}	
-	}
+		saveToDisk(s);
 
-	/**
-	 * Updates the location and fetches weather data for that location.
-	 *
-	 * @param	l		location string, in the form "[city name], [ISO 3166 country code]"
-	 * @throws	APIException	if downloading weather data fails
-	 * @throws	CacheException	if saving to disk fails
-	 */
-	public void setLocation(String l) throws APIException, CacheException {
-		mLocation = l;
+		// Not until start up has built everything the image holds
+		if (mFastStart && mSearchSug != null)
+			mFetcher.execute(this::saveImageQuietly);
 
-		refresh();
+		if (! mSubscriptions.isEmpty())
+			notifySubscribers(previous, s);
 	}
 }
@@ -101,12 +101,28 @@ public class WeatherData {
 	// Sunset time in unic UTC
 	private final int mSunset;
 	
+	// Location in degrees, NaN if the API didn't give it
+	private final double mLatitude;
+	private final double mLongitude;
+	
 	/**
 	 * Constructs a WeatherData object from a json object
 	 *
 	 * @param	json	the json data from an API call
 	 */
 	public WeatherData(JsonObject json) {
+		this(json, json.getAsJsonObject("coord"));
+	}
+	
+	/**
+	 * Constructs a WeatherData object from a json object, with the coordinates
+	 * given separately. Forecast documents give coordinates once for the whole
+	 * city, rather than in each entry.
+	 *
+	 * @param	json	the json data from an API call
+	 * @param	coord	the json coordinates of the location, or null if unknown
+	 */
+	protected WeatherData(JsonObject json, JsonObject coord) {
 		JsonObject jsonWeather = json.getAsJsonArray("weather").get(0).getAsJsonObject();
 		mCode = ConditionCode.valueof(jsonWeather.get("id").getAsInt());
 		mDescription = jsonWeather.get("description").getAsString();
@@ -129,6 +145,14 @@ public class WeatherData {
 			mSunrise = -1;
 			mSunset = -1;
 		}
+		
+		if (coord != null && coord.has("lat") && coord.has("lon")) {
+			mLatitude = coord.get("lat").getAsDouble();
+			mLongitude = coord.get("lon").getAsDouble();
+		} else {
+			mLatitude = Double.NaN;
+			mLongitude = Double.NaN;
+		}
 	}
 	
 	/**
@@ -204,4 +228,24 @@ public class WeatherData {
 		return mSunset;
 	}
 	
+	/**
+	 * Gets the latitude of the location, in degrees north.
+	 * This is NaN if the API didn't give coordinates.
+	 *
+	 * @return	latitude
+	 */
+	public double getLatitude() {
+		return mLatitude;
+	}
+	
+	/**
+	 * Gets the longitude of the location, in degrees east.
+	 * This is NaN if the API didn't give coordinates.
+	 *
+	 * @return	longitude
+	 */
+	public double getLongitude() {
+		return mLongitude;
+	}
+	
 }
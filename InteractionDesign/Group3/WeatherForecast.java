@@ -20,6 +20,18 @@ public class WeatherForecast extends WeatherData {
 		mDate = json.get("dt_txt").getAsString();
 	}
 	
+	/**
+	 * Constructs a WeatherForecast object from a json object, with the
+	 * coordinates of the city the forecast is for.
+	 *
+	 * @param	json	the json data for one entry of the forecast
+	 * @param	coord	the json coordinates of the city, or null if unknown
+	 */
+	public WeatherForecast(JsonObject json, JsonObject coord) {
+		super(json, coord);
+		mDate = json.get("dt_txt").getAsString();
+	}
+	
 	/**
 	 * Gets the time stamp, in a slightly different format from IEEE standard.
 	 * The format is YYYY-MM-DD 00:00:00
@@ -0,0 +1,188 @@
+package InteractionDesign.Group3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+
+/**
+ * An endpoint serving openweathermap-compatible weather data, eg.
+ * openweathermap itself, a mirror in another region, or a local stub.
+ * Keeps statistics of how long its responses take to start arriving, which
+ * APIClient uses to decide when to hedge a slow request to another provider.
+ */
+public class WeatherProvider {
+	// Latencies are kept for this many recent requests
+	private static final int WINDOW = 100;
+
+	// Timeouts in milliseconds, so a hung API can't hang us
+	private static final int CONNECT_TIMEOUT = 3000;
+	private static final int READ_TIMEOUT = 5000;
+
+	private final String mName;
+	private final String mURL;
+	private final String mKey;
+
+	private final long[] mLatencies = new long[WINDOW];		// In nanoseconds
+	private int mNext = 0;
+	private int mSamples = 0;
+
+	private long mRequests = 0;
+	private long mFailures = 0;
+	private long mWins = 0;
+
+	// Told the connection of a request as soon as it is opened
+	interface Opened {
+		void opened(HttpURLConnection conn);
+	}
+
+	/**
+	 * Constructs a provider.
+	 *
+	 * @param	name	a name for logging and metrics
+	 * @param	url		the start of every URL, eg. "http://api.openweathermap.org/data/2.5/"
+	 * @param	key		the API key, or null if none is needed
+	 */
+	public WeatherProvider(String name, String url, String key) {
+		mName = name;
+		mURL = url;
+		mKey = key;
+	}
+
+	/**
+	 * Opens a request, and waits for the response to start arriving.
+	 * The time taken is added to the provider's statistics.
+	 *
+	 * @param	subURL	the request, eg. "weather?q=London,GB"
+	 * @param	opened	told the connection as soon as it exists, so it can be cancelled
+	 * @return	the response body
+	 * @throws	IOException	if the request fails
+	 */
+	InputStream open(String subURL, Opened opened) throws IOException {
+		synchronized (this) {
+			mRequests++;
+		}
+
+		long t = System.nanoTime();
+
+		try {
+			URLConnection conn = new URL(mURL + subURL + (mKey == null ? "" : "&APPID=" + mKey)).openConnection();
+			conn.setConnectTimeout(CONNECT_TIMEOUT);
+			conn.setReadTimeout(READ_TIMEOUT);
+
+			if (opened != null && conn instanceof HttpURLConnection)
+				opened.opened((HttpURLConnection) conn);
+
+			InputStream in = conn.getInputStream();
+
+			record(System.nanoTime() - t);
+
+			return in;
+
+		} catch (IOException e) {
+			synchronized (this) {
+				mFailures++;
+			}
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Records the latency of a request which was cancelled before it
+	 * answered. This is a lower bound on how long it would have taken, but
+	 * without it a provider which always loses would look fast.
+	 *
+	 * @param	nanos	how long the request had been waiting, in nanoseconds
+	 */
+	void cancelled(long nanos) {
+		record(nanos);
+	}
+
+	/**
+	 * Records that this provider's answer was used.
+	 */
+	synchronized void won() {
+		mWins++;
+	}
+
+	/**
+	 * Gets a percentile of recent latencies, ie. time until the response
+	 * started arriving.
+	 *
+	 * @param	p	the percentile, between 0 and 1
+	 * @return	latency in milliseconds, or -1 if there are no samples yet
+	 */
+	public synchronized long getPercentile(double p) {
+		if (mSamples == 0)
+			return -1;
+
+		long[] sorted = Arrays.copyOf(mLatencies, mSamples);
+		Arrays.sort(sorted);
+
+		int i = (int) Math.min(mSamples - 1, Math.floor(p * mSamples));
+
+		return sorted[i] / 1000000;
+	}
+
+	/**
+	 * Gets the number of recent latencies the statistics are based on.
+	 *
+	 * @return	number of samples, at most 100
+	 */
+	public synchronized int getSamples() {
+		return mSamples;
+	}
+
+	/**
+	 * Gets the name of the provider.
+	 *
+	 * @return	the name
+	 */
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * Gets the number of requests made to this provider.
+	 *
+	 * @return	number of requests
+	 */
+	public synchronized long getRequests() {
+		return mRequests;
+	}
+
+	/**
+	 * Gets the number of requests which failed, including hedged requests
+	 * cancelled because another provider answered first.
+	 *
+	 * @return	number of failures
+	 */
+	public synchronized long getFailures() {
+		return mFailures;
+	}
+
+	/**
+	 * Gets the number of requests whose answer came from this provider, when
+	 * there was more than one provider to choose from.
+	 *
+	 * @return	number of wins
+	 */
+	public synchronized long getWins() {
+		return mWins;
+	}
+
+	public String toString() {
+		return mName + " (" + mURL + ")";
+	}
+
+	private synchronized void record(long nanos) {
+		mLatencies[mNext] = nanos;
+		mNext = (mNext + 1) % WINDOW;
+
+		if (mSamples < WINDOW)
+			mSamples++;
+	}
+}
@@ -0,0 +1,210 @@
+package InteractionDesign.Group3;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A class used for testing purposes only.
+ * Compares sending snapshots to clients as the cache file's text,
+ * serialised per request, with the binary encoding made once per refresh:
+ * the size of each, the cost per request, and, through a ForecastServer,
+ * how many polling clients are answered 304 rather than sent a body.
+ * Also checks every location survives encoding and decoding unchanged.
+ *
+ * Usage: WireBenchmark [locations] [requests]
+ */
+public class WireBenchmark {
+	private static final int CLIENTS = 4;
+	private static final long POLL_INTERVAL = 50;		// In milliseconds
+	private static final long POLL_TIME = 10000;
+	private static final Duration MAX_AGE = Duration.ofSeconds(2);
+
+	public static void main(String[] args) throws Exception {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+		List<String> all = Files.readAllLines(Paths.get("data/cityList.txt"));
+		List<String> cities = new ArrayList<>();
+
+		for (int i = 0; cities.size() < n && i < all.size(); i += Math.max(1, all.size() / n))
+			cities.add(all.get(i));
+
+		StubServer stub = new StubServer(0);
+		stub.start();
+
+		Path dir = Files.createTempDirectory("weatherapp");
+		Files.copy(Paths.get("data/cityList.txt"), dir.resolve("cityList.txt"));
+
+		APIClient client = new APIClient(stub.getURL(), new RequestScheduler(1000, 600000, 8),
+				new CircuitBreaker(50, 20, 0.5, 1000, 5000));
+
+		WeatherCache cache = new WeatherCache(client, dir.toString());
+
+		List<Snapshot> snapshots = new ArrayList<>();
+
+		for (String city : cities)
+			snapshots.add(cache.getSnapshot(city).get());
+
+		// Sizes, and whether decoding gives back the same snapshot
+
+		long text = 0;
+		long gzipped = 0;
+		long binary = 0;
+		int mismatches = 0;
+
+		for (Snapshot s : snapshots) {
+			byte[] t = text(s);
+			byte[] b = BinarySnapshotFormat.write(s);
+
+			text += t.length;
+			gzipped += gzip(t).length;
+			binary += b.length;
+
+			if (! new String(t, StandardCharsets.UTF_8).equals(new String(text(BinarySnapshotFormat.read(b, cache.getZone())),
+					StandardCharsets.UTF_8)))
+				mismatches++;
+		}
+
+		System.out.println("Mean size of " + snapshots.size() + " snapshots: text " + text / snapshots.size()
+				+ " bytes, gzipped text " + gzipped / snapshots.size() + ", binary " + binary / snapshots.size());
+		System.out.println("Snapshots changed by encoding and decoding: " + mismatches);
+
+		// Cost per request, warming up first
+
+		for (int round = 0; round < 2; round++) {
+			long t1 = System.nanoTime();
+			long textBytes = serveText(cache, cities, requests);
+			long t2 = System.nanoTime();
+			long binaryBytes = serveEncoded(cache, cities, requests);
+			long t3 = System.nanoTime();
+
+			if (round == 1)
+				System.out.println("Per request: text serialised " + (t2 - t1) / requests + "ns (" + textBytes / requests
+						+ " bytes), encoded once " + (t3 - t2) / requests + "ns (" + binaryBytes / requests + " bytes)");
+		}
+
+		// Polling clients, while locations are refreshed every few seconds
+
+		cache.setMaxAge(MAX_AGE);
+
+		ForecastServer server = new ForecastServer(cache, 0);
+		server.start();
+
+		List<Thread> threads = new ArrayList<>();
+		long deadline = System.currentTimeMillis() + POLL_TIME;
+
+		for (int i = 0; i < CLIENTS; i++) {
+			String city = cities.get(i % cities.size());
+
+			Thread t = new Thread(() -> poll(server.getURL(), city, deadline), "benchmark-client");
+			t.start();
+			threads.add(t);
+		}
+
+		for (Thread t : threads)
+			t.join();
+
+		long polls = server.getRequests();
+		long sent = polls - server.getNotModified();
+
+		System.out.println("Polling every " + POLL_INTERVAL + "ms, refreshing every " + MAX_AGE.toMillis() + "ms: "
+				+ polls + " requests, " + server.getNotModified() + " answered 304, " + sent + " sent "
+				+ server.getBytesSent() + " bytes (as text every time, about " + polls * text / snapshots.size()
+				+ " bytes)");
+
+		server.stop();
+		stub.stop();
+		System.exit(0);
+	}
+
+	// As a server re-serialising per request would
+	private static long serveText(WeatherCache cache, List<String> cities, int requests) throws Exception {
+		Random random = new Random(1);
+		long bytes = 0;
+
+		for (int i = 0; i < requests; i++)
+			bytes += text(cache.getSnapshot(cities.get(random.nextInt(cities.size()))).get()).length;
+
+		return bytes;
+	}
+
+	private static long serveEncoded(WeatherCache cache, List<String> cities, int requests) throws Exception {
+		Random random = new Random(1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		long bytes = 0;
+
+		for (int i = 0; i < requests; i++) {
+			out.reset();
+			cache.getEncoded(cities.get(random.nextInt(cities.size()))).get().writeTo(out);
+			bytes += out.size();
+		}
+
+		return bytes;
+	}
+
+	// Requests a location until the deadline, sending back the last ETag
+	private static void poll(String url, String city, long deadline) {
+		String eTag = null;
+
+		while (System.currentTimeMillis() < deadline) {
+			try {
+				HttpURLConnection conn = (HttpURLConnection) new URL(url + "?q="
+						+ URLEncoder.encode(city, "UTF-8")).openConnection();
+
+				if (eTag != null)
+					conn.setRequestProperty("If-None-Match", eTag);
+
+				if (conn.getResponseCode() == 200) {
+					eTag = conn.getHeaderField("ETag");
+
+					try (InputStream in = conn.getInputStream()) {
+						while (in.read() >= 0);
+					}
+				}
+
+				Thread.sleep(POLL_INTERVAL);
+
+			} catch (InterruptedException e) {
+				return;
+
+			} catch (IOException e) {
+				// Counted by the server
+			}
+		}
+	}
+
+	private static byte[] text(Snapshot s) throws IOException {
+		StringWriter sw = new StringWriter();
+
+		try (BufferedWriter bw = new BufferedWriter(sw)) {
+			SnapshotFormat.write(s, bw);
+		}
+
+		return sw.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+			gz.write(bytes);
+		}
+
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,16 @@
+#!/bin/sh
+# Prepares fast-start mode (needs JDK 13 or later)
+# Packages the app as a jar, then does a training run which saves a startup
+# image (data/startup.img) and an AppCDS archive of the classes loaded while
+# starting up (data/weatherapp.jsa)
+
+javac -cp . InteractionDesign/Group3/*.java
+jar cf weatherapp.jar com InteractionDesign/Group3/*.class
+
+rm -f data/weatherapp.jsa
+java -XX:ArchiveClassesAtExit=data/weatherapp.jsa -Dweatherapp.fastStart=true -cp weatherapp.jar InteractionDesign.Group3.StartupImage
+
+echo ""
+echo "Start the app with:"
+echo "	java -XX:SharedArchiveFile=data/weatherapp.jsa -Dweatherapp.fastStart=true -cp weatherapp.jar ..."
+echo "Run this again whenever the app is rebuilt"